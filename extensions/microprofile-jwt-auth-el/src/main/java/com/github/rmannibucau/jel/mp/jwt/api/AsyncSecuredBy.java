@@ -0,0 +1,53 @@
+package com.github.rmannibucau.jel.mp.jwt.api;
+
+import com.github.rmannibucau.jel.api.annotation.MetaJel;
+
+import javax.enterprise.util.Nonbinding;
+import javax.interceptor.InterceptorBinding;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.ElementType.TYPE;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * Same as {@link SecuredBy} but the expression returns a {@code CompletionStage<Boolean>}, for decisions needing I/O.
+ * A method returning a {@code CompletionStage} is chained on the decision without blocking the invoking thread,
+ * a synchronous method waits for it, both at most {@link #timeout()} milliseconds.
+ * The token must be read in the expression itself (calling thread), not in the asynchronous part.
+ */
+@MetaJel(
+        contextVariableName = "jwt",
+        contextType = "org.eclipse.microprofile.jwt.JsonWebToken",
+        returnType = "java.util.concurrent.CompletionStage",
+        evaluatorInterface = "com.github.rmannibucau.jel.mp.jwt.api.AsyncSecuredByEvaluator",
+        evaluatorClassNamePattern = "${class}$MpJwtAsyncSecuredBy",
+        evaluatorMethodNamePattern = "${class}_${method}$MpJwtAsyncSecuredBy",
+        imports = "java.util.concurrent.CompletableFuture",
+        deduplicate = true,
+        customMethods = "" +
+                "    private boolean exists(final JsonWebToken token) {\n" +
+                "        try {\n" +
+                "            return !token.getClaimNames().isEmpty();\n" +
+                "        } catch (final Exception e) {\n" +
+                "            return false;\n" +
+                "        }\n" +
+                "    }" +
+                "")
+@InterceptorBinding
+@Retention(RUNTIME)
+@Target({TYPE, METHOD})
+public @interface AsyncSecuredBy {
+    /**
+     * @return the expression returning the decision.
+     */
+    @Nonbinding
+    String value() default "";
+
+    /**
+     * @return the maximum duration in milliseconds to wait for the decision, the call is denied after it.
+     */
+    @Nonbinding
+    long timeout() default 30_000;
+}
@@ -0,0 +1,17 @@
+package com.github.rmannibucau.jel.mp.jwt.api;
+
+import org.eclipse.microprofile.jwt.JsonWebToken;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * The evaluators generated for {@link AsyncSecuredBy}.
+ */
+@FunctionalInterface
+public interface AsyncSecuredByEvaluator {
+    /**
+     * @param jwt the token of the current call.
+     * @return the decision, {@code true} to allow the call.
+     */
+    CompletionStage<Boolean> evaluate(JsonWebToken jwt);
+}
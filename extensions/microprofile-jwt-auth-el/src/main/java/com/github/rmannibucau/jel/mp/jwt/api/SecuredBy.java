@@ -4,6 +4,7 @@ import com.github.rmannibucau.jel.api.annotation.MetaJel;
 
 import javax.enterprise.util.Nonbinding;
 import javax.interceptor.InterceptorBinding;
+import java.lang.annotation.Inherited;
 import java.lang.annotation.Retention;
 import java.lang.annotation.Target;
 
@@ -13,10 +14,14 @@ import static java.lang.annotation.RetentionPolicy.RUNTIME;
 
 @MetaJel(
         contextVariableName = "jwt",
+        policyElementName = "policy",
         contextType = "org.eclipse.microprofile.jwt.JsonWebToken",
-        returnType = "Boolean",
+        returnType = "boolean",
         evaluatorClassNamePattern = "${class}$MpJwtSecuredBy",
         evaluatorMethodNamePattern = "${class}_${method}$MpJwtSecuredBy",
+        deduplicate = true,
+        bindParametersElementName = "bindParameters",
+        fuseClassExpression = true,
         customMethods = "" +
                 "    private boolean exists(final JsonWebToken token) {\n" +
                 "        try {\n" +
@@ -26,13 +31,39 @@ import static java.lang.annotation.RetentionPolicy.RUNTIME;
                 "        }\n" +
                 "    }" +
                 "")
+@Inherited
 @InterceptorBinding
 @Retention(RUNTIME)
 @Target({TYPE, METHOD})
 public @interface SecuredBy {
     /**
-     * @return the expression
+     * @return the expression, on methods the parameters can be used as variables with {@link #bindParameters()}.
      */
     @Nonbinding
-    String value();
+    String value() default "";
+
+    /**
+     * @return a policy used instead of the expression, for example
+     * {@code groups contains any('admin', 'ops') and claim('tenant') == 'x'}.
+     */
+    @Nonbinding
+    String policy() default "";
+
+    /**
+     * @return if {@code true} the parameters of the method the expression uses are variables of the expression.
+     */
+    @Nonbinding
+    boolean bindParameters() default false;
+
+    /**
+     * @return if {@code true} the decision is cached per token (its {@code jti} claim or a digest of the raw token) and evaluator.
+     */
+    @Nonbinding
+    boolean cacheable() default false;
+
+    /**
+     * @return the maximum duration of a cached decision in seconds, it never outlives the token expiration.
+     */
+    @Nonbinding
+    long cacheTtl() default 60;
 }
@@ -0,0 +1,117 @@
+package com.github.rmannibucau.jel.mp.jwt.impl;
+
+import com.github.rmannibucau.jel.mp.jwt.api.AsyncSecuredBy;
+import org.eclipse.microprofile.jwt.JsonWebToken;
+
+import javax.annotation.Priority;
+import javax.enterprise.context.control.RequestContextController;
+import javax.enterprise.inject.Instance;
+import javax.inject.Inject;
+import javax.interceptor.AroundInvoke;
+import javax.interceptor.Interceptor;
+import javax.interceptor.InvocationContext;
+import javax.ws.rs.ForbiddenException;
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// a CompletionStage method is chained on the decision so the invoking thread never waits, a synchronous method waits
+// for it on the invoking thread; no monitor is held while waiting so virtual threads are never pinned
+@AsyncSecuredBy
+@Interceptor
+@Priority(Interceptor.Priority.PLATFORM_BEFORE)
+public class AsyncSecuredByInterceptor implements Serializable {
+    @Inject
+    private EvaluatorFinder evaluatorFinder;
+
+    @Inject
+    private JsonWebToken token;
+
+    @Inject
+    private Instance<RequestContextController> requestContextControllers;
+
+    @AroundInvoke
+    public Object securedBy(final InvocationContext context) throws Exception {
+        final var evaluator = evaluatorFinder.lookupAsyncFor(context);
+        final var decision = evaluator.evaluate(token).toCompletableFuture();
+        if (isAsync(context.getMethod())) { // the copy times out, not the decision of the evaluator
+            return chain(context, decision.copy().orTimeout(evaluator.getTimeout(), TimeUnit.MILLISECONDS));
+        }
+
+        final Boolean allowed;
+        try { // returns immediately if the decision is already there
+            allowed = decision.get(evaluator.getTimeout(), TimeUnit.MILLISECONDS);
+        } catch (final TimeoutException te) { // a CompletableFuture can't interrupt the evaluation, its result is ignored
+            throw new ForbiddenException();
+        } catch (final ExecutionException ee) {
+            final var cause = ee.getCause();
+            throw cause instanceof Exception ? (Exception) cause : ee;
+        }
+        if (!Boolean.TRUE.equals(allowed)) {
+            throw new ForbiddenException();
+        }
+        return context.proceed();
+    }
+
+    // an already completed decision calls the method on the invoking thread, else the thread completing the decision
+    // calls it with the context of the call captured here: class loader and a request scope
+    private CompletionStage<?> chain(final InvocationContext context, final CompletableFuture<Boolean> decision) {
+        final var caller = Thread.currentThread();
+        final var loader = caller.getContextClassLoader();
+        return decision
+                .exceptionally(error -> {
+                    if (error instanceof TimeoutException) {
+                        return false;
+                    }
+                    throw error instanceof CompletionException ?
+                            (CompletionException) error : new CompletionException(error);
+                })
+                .thenCompose(allowed -> {
+                    if (!Boolean.TRUE.equals(allowed)) {
+                        throw new ForbiddenException();
+                    }
+                    return Thread.currentThread() == caller ? proceed(context) : proceed(context, loader);
+                });
+    }
+
+    private CompletionStage<Object> proceed(final InvocationContext context, final ClassLoader loader) {
+        final var thread = Thread.currentThread();
+        final var previousLoader = thread.getContextClassLoader();
+        thread.setContextClassLoader(loader);
+        final var controller = requestContextControllers == null || !requestContextControllers.isResolvable() ?
+                null : requestContextControllers.get();
+        final var activated = controller != null && controller.activate(); // false if the thread already has one
+        try {
+            return proceed(context);
+        } finally {
+            if (activated) {
+                controller.deactivate();
+            }
+            if (controller != null) {
+                requestContextControllers.destroy(controller);
+            }
+            thread.setContextClassLoader(previousLoader);
+        }
+    }
+
+    private CompletionStage<Object> proceed(final InvocationContext context) {
+        try {
+            return (CompletionStage<Object>) context.proceed();
+        } catch (final RuntimeException re) {
+            throw re;
+        } catch (final Exception e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    // the chained call returns a CompletableFuture so it must be assignable to the declared type
+    private boolean isAsync(final Method method) {
+        final var returnType = method.getReturnType();
+        return CompletionStage.class.isAssignableFrom(returnType) && returnType.isAssignableFrom(CompletableFuture.class);
+    }
+}
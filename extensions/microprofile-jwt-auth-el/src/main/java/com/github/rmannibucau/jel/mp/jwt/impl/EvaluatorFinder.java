@@ -1,69 +1,138 @@
 package com.github.rmannibucau.jel.mp.jwt.impl;
 
+import com.github.rmannibucau.jel.api.parameters.ParametersPredicate;
+import com.github.rmannibucau.jel.api.registry.Evaluators;
+import com.github.rmannibucau.jel.mp.jwt.api.AsyncSecuredBy;
+import com.github.rmannibucau.jel.mp.jwt.api.AsyncSecuredByEvaluator;
+import com.github.rmannibucau.jel.mp.jwt.api.SecuredBy;
 import org.eclipse.microprofile.jwt.JsonWebToken;
 
+import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
 import javax.interceptor.InvocationContext;
+import java.lang.annotation.Annotation;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.util.Map;
-import java.util.Objects;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.function.Function;
+import java.util.Optional;
+import java.util.function.Predicate;
 
 @ApplicationScoped
 public class EvaluatorFinder {
-    private final Map<Key, Function<JsonWebToken, Boolean>> cache = new ConcurrentHashMap<>();
+    @Inject
+    private SecuredByExtension extension;
 
-    public Function<JsonWebToken, Boolean> lookupFor(final InvocationContext context) {
-        final var key = new Key(context.getTarget().getClass(), context.getMethod());
-        return cache.computeIfAbsent(key, k -> {
-            final var evaluatorName = k.toEvaluatorName();
-            try {
-                return Thread.currentThread()
-                        .getContextClassLoader()
-                        .loadClass(evaluatorName)
-                        .asSubclass(Function.class)
-                        .getConstructor()
-                        .newInstance();
-            } catch (final InvocationTargetException ite) {
-                throw new IllegalStateException(ite.getTargetException());
-            } catch (final Exception e) {
-                throw new IllegalStateException("Didn't find " + evaluatorName);
-            }
-        });
+    private EvaluatorTable<Predicate<JsonWebToken>> table;
+    private EvaluatorTable<ParametersPredicate<JsonWebToken>> parametersTable;
+    private EvaluatorTable<TimedAsyncEvaluator> asyncTable;
+    private Evaluators evaluators;
+
+    public EvaluatorFinder() {
+        // no-op
     }
 
-    private static class Key {
-        private final Class<?> clazz;
-        private final Method method;
-        private final int hash;
+    EvaluatorFinder(final EvaluatorTable<Predicate<JsonWebToken>> table,
+                    final EvaluatorTable<ParametersPredicate<JsonWebToken>> parametersTable,
+                    final EvaluatorTable<TimedAsyncEvaluator> asyncTable, final Evaluators evaluators) {
+        this.table = table;
+        this.parametersTable = parametersTable;
+        this.asyncTable = asyncTable;
+        this.evaluators = evaluators;
+    }
 
-        private Key(final Class<?> clazz, final Method method) {
-            this.clazz = clazz;
-            this.method = method;
-            this.hash = Objects.hash(clazz, method);
+    @PostConstruct
+    private void init() {
+        table = extension.getTable();
+        parametersTable = extension.getParametersTable();
+        asyncTable = extension.getAsyncTable();
+        evaluators = extension.getEvaluators();
+        if (evaluators == null) {
+            evaluators = Evaluators.of(Thread.currentThread().getContextClassLoader());
         }
+    }
 
-        private String toEvaluatorName() {
-            return clazz.getName() + (method == null ? "" : ("_" + method.getName())) + "$MpJwtSecuredBy";
+    /**
+     * @param context the intercepted invocation.
+     * @return the evaluator of the method, a {@link Predicate} or a {@link ParametersPredicate} when the expression
+     * uses the method parameters (the caller passes the ones of the invocation so nothing is allocated per call).
+     */
+    public Object lookupFor(final InvocationContext context) {
+        final var type = context.getTarget().getClass();
+        final var method = context.getMethod();
+        final var evaluator = table.find(type, method);
+        if (evaluator != null) {
+            return evaluator;
         }
+        final var parametersEvaluator = parametersTable.find(type, method);
+        if (parametersEvaluator != null) {
+            return parametersEvaluator;
+        }
+        // not a bean seen at deployment time (programmatic bean for ex), resolve it lazily
+        final var resolved = resolve(evaluators, Thread.currentThread().getContextClassLoader(), type, method);
+        if (extension != null) {
+            return extension.register(type, method, resolved);
+        }
+        return resolved instanceof ParametersPredicate ?
+                parametersTable.put(type, method, (ParametersPredicate<JsonWebToken>) resolved) :
+                table.put(type, method, (Predicate<JsonWebToken>) resolved);
+    }
 
-        @Override
-        public boolean equals(final Object o) {
-            if (this == o) {
-                return true;
-            }
-            if (o == null || getClass() != o.getClass()) {
-                return false;
+    public TimedAsyncEvaluator lookupAsyncFor(final InvocationContext context) {
+        final var type = context.getTarget().getClass();
+        final var method = context.getMethod();
+        final var evaluator = asyncTable.find(type, method);
+        if (evaluator != null) {
+            return evaluator;
+        }
+        final var resolved = resolveAsync(evaluators, Thread.currentThread().getContextClassLoader(), type, method);
+        return asyncTable.put(
+                type, method, new TimedAsyncEvaluator(resolved, TimedAsyncEvaluator.timeout(type, method)));
+    }
+
+    // a Predicate or a ParametersPredicate when the expression uses the method parameters
+    static Object resolve(final Evaluators evaluators, final ClassLoader loader,
+                          final Class<?> clazz, final Method method) {
+        return evaluators
+                .create(Evaluators.key(SecuredBy.class, method))
+                .or(() -> createForClass(evaluators, SecuredBy.class, clazz))
+                .orElseGet(() -> loadEvaluator(
+                        loader, Object.class, clazz.getName() + "_" + method.getName() + "$MpJwtSecuredBy"));
+    }
+
+    static AsyncSecuredByEvaluator resolveAsync(final Evaluators evaluators, final ClassLoader loader,
+                                                final Class<?> clazz, final Method method) {
+        return evaluators
+                .<AsyncSecuredByEvaluator>create(Evaluators.key(AsyncSecuredBy.class, method))
+                .or(() -> createForClass(evaluators, AsyncSecuredBy.class, clazz))
+                .orElseGet(() -> loadEvaluator(loader, AsyncSecuredByEvaluator.class,
+                        clazz.getName() + "_" + method.getName() + "$MpJwtAsyncSecuredBy"));
+    }
+
+    // the annotations are @Inherited and the intercepted instance can be a container subclass,
+    // so the closest class evaluator applies
+    private static <T> Optional<T> createForClass(final Evaluators evaluators,
+                                                  final Class<? extends Annotation> marker, final Class<?> clazz) {
+        for (Class<?> current = clazz; current != null && current != Object.class; current = current.getSuperclass()) {
+            final Optional<T> evaluator = evaluators.create(Evaluators.key(marker, current));
+            if (evaluator.isPresent()) {
+                return evaluator;
             }
-            final Key key = Key.class.cast(o);
-            return clazz == key.clazz && Objects.equals(method, key.method);
         }
+        return Optional.empty();
+    }
 
-        @Override
-        public int hashCode() {
-            return hash;
+    // fallback for evaluators generated without registry
+    private static <T> T loadEvaluator(final ClassLoader loader, final Class<? super T> api, final String evaluatorName) {
+        try {
+            return (T) loader
+                    .loadClass(evaluatorName)
+                    .asSubclass(api)
+                    .getConstructor()
+                    .newInstance();
+        } catch (final InvocationTargetException ite) {
+            throw new IllegalStateException(ite.getTargetException());
+        } catch (final Exception e) {
+            throw new IllegalStateException("Didn't find " + evaluatorName);
         }
     }
 }
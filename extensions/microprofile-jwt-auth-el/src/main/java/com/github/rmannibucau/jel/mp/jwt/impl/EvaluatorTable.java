@@ -0,0 +1,82 @@
+package com.github.rmannibucau.jel.mp.jwt.impl;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+/**
+ * Evaluators indexed by bean class and method, the entries are stored on the bean class itself
+ * (through a {@link ClassValue}) so the table never keeps application classes - and their classloader - alive
+ * and lookups do not allocate. The bean class is part of the key since beans inheriting the same method
+ * can be secured by different class expressions.
+ *
+ * @param <T> the evaluator type.
+ */
+public class EvaluatorTable<T> {
+    private final ClassValue<Entries<T>> entries = new ClassValue<>() {
+        @Override
+        protected Entries<T> computeValue(final Class<?> type) {
+            return new Entries<>();
+        }
+    };
+
+    /**
+     * @param type   the bean class (intercepted instance class).
+     * @param method the secured method.
+     * @return the evaluator or {@code null} if not yet registered.
+     */
+    public T find(final Class<?> type, final Method method) {
+        return entries.get(type).find(method);
+    }
+
+    /**
+     * @param type      the bean class (intercepted instance class).
+     * @param method    the secured method.
+     * @param evaluator the evaluator of the method.
+     * @return the evaluator of the table for this method, the already registered one if any.
+     */
+    T put(final Class<?> type, final Method method, final T evaluator) {
+        return entries.get(type).add(method, evaluator);
+    }
+
+    // copy on write since entries are written at deployment time (or once for lazy beans) and read for each call
+    private static class Entries<T> {
+        private volatile Entry<T>[] values = new Entry[0];
+
+        private T find(final Method method) {
+            final var current = values;
+            for (final Entry<T> entry : current) {
+                if (entry.method == method) {
+                    return entry.evaluator;
+                }
+            }
+            for (final Entry<T> entry : current) { // Method instances can be copies
+                if (entry.method.equals(method)) {
+                    return entry.evaluator;
+                }
+            }
+            return null;
+        }
+
+        // no blocking call under the monitor so it does not pin virtual threads
+        private synchronized T add(final Method method, final T evaluator) {
+            final var existing = find(method);
+            if (existing != null) {
+                return existing;
+            }
+            final var newValues = Arrays.copyOf(values, values.length + 1);
+            newValues[values.length] = new Entry<>(method, evaluator);
+            values = newValues;
+            return evaluator;
+        }
+    }
+
+    private static class Entry<T> {
+        private final Method method;
+        private final T evaluator;
+
+        private Entry(final Method method, final T evaluator) {
+            this.method = method;
+            this.evaluator = evaluator;
+        }
+    }
+}
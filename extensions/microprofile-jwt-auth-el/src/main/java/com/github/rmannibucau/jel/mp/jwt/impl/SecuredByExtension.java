@@ -0,0 +1,283 @@
+package com.github.rmannibucau.jel.mp.jwt.impl;
+
+import com.github.rmannibucau.jel.api.parameters.ParametersPredicate;
+import com.github.rmannibucau.jel.api.registry.Evaluators;
+import com.github.rmannibucau.jel.mp.jwt.api.AsyncSecuredBy;
+import com.github.rmannibucau.jel.mp.jwt.api.AsyncSecuredByEvaluator;
+import com.github.rmannibucau.jel.mp.jwt.api.SecuredBy;
+import com.github.rmannibucau.jel.mp.jwt.impl.cache.CachingEvaluator;
+import com.github.rmannibucau.jel.mp.jwt.impl.cache.DecisionCache;
+import com.github.rmannibucau.jel.mp.jwt.impl.cache.RequestDecisions;
+import com.github.rmannibucau.jel.mp.jwt.impl.metrics.SecuredByMetrics;
+import org.eclipse.microprofile.jwt.JsonWebToken;
+
+import javax.enterprise.event.Observes;
+import javax.enterprise.inject.spi.AfterDeploymentValidation;
+import javax.enterprise.inject.spi.AnnotatedMethod;
+import javax.enterprise.inject.spi.BeanManager;
+import javax.enterprise.inject.spi.BeforeShutdown;
+import javax.enterprise.inject.spi.Extension;
+import javax.enterprise.inject.spi.ProcessAnnotatedType;
+import javax.enterprise.inject.spi.WithAnnotations;
+import javax.enterprise.inject.spi.ProcessManagedBean;
+import javax.interceptor.Interceptor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import static java.util.Optional.ofNullable;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Resolves all the {@link SecuredBy} and {@link AsyncSecuredBy} evaluators at deployment time to fail fast and avoid to load them under load.
+ */
+public class SecuredByExtension implements Extension {
+    public static final String CACHE_MAX_SIZE = "simplejel.securedby.cache.maxSize";
+    public static final String CACHE_STRIPES = "simplejel.securedby.cache.stripes";
+    public static final String SNAPSHOT = "simplejel.securedby.snapshot";
+
+    // bean class -> secured methods, an inherited method is secured by the class expression of each bean
+    private final Map<Class<?>, List<Method>> securedMethods = new HashMap<>();
+    private final Map<Class<?>, List<Method>> asyncSecuredMethods = new HashMap<>();
+    private Evaluators evaluators;
+    private final EvaluatorTable<Predicate<JsonWebToken>> table = new EvaluatorTable<>();
+    private final EvaluatorTable<ParametersPredicate<JsonWebToken>> parametersTable = new EvaluatorTable<>();
+    private final EvaluatorTable<TimedAsyncEvaluator> asyncTable = new EvaluatorTable<>();
+    private SecuredByMetrics metrics;
+    private RequestDecisions requestDecisions;
+    private DecisionCache decisionCache;
+
+    // a constant true expression does not need to be intercepted at all
+    void removeAlwaysAllowed(@Observes @WithAnnotations(SecuredBy.class)
+                             final ProcessAnnotatedType<?> processAnnotatedType) {
+        if (evaluators == null) {
+            evaluators = Evaluators.of(Thread.currentThread().getContextClassLoader());
+        }
+        // the type is only configured when something is removed since the configured copy does not reliably keep
+        // the interceptor bindings of inherited methods, a type inheriting secured methods keeps its always allowed
+        // methods intercepted (their evaluator is a constant)
+        final var type = processAnnotatedType.getAnnotatedType();
+        if (type.isAnnotationPresent(SecuredBy.class)) { // removing a method annotation would make the class one apply
+            if (isAlwaysAllowed(Evaluators.key(SecuredBy.class, type.getJavaClass()))) {
+                processAnnotatedType.configureAnnotatedType().remove(SecuredBy.class::isInstance);
+            }
+            return;
+        }
+        if (type.getMethods().stream().anyMatch(this::isAlwaysAllowed) && type.getMethods().stream()
+                .noneMatch(it -> it.getJavaMember().getDeclaringClass() != type.getJavaClass() &&
+                        (it.isAnnotationPresent(SecuredBy.class) || it.isAnnotationPresent(AsyncSecuredBy.class)))) {
+            processAnnotatedType.configureAnnotatedType()
+                    .filterMethods(this::isAlwaysAllowed)
+                    .forEach(it -> it.remove(SecuredBy.class::isInstance));
+        }
+    }
+
+    void collectSecuredMethods(@Observes final ProcessManagedBean<?> processManagedBean) {
+        final var type = processManagedBean.getAnnotatedBeanClass();
+        if (type.isAnnotationPresent(Interceptor.class)) {
+            return;
+        }
+        final var securedType = type.isAnnotationPresent(SecuredBy.class);
+        final var asyncSecuredType = type.isAnnotationPresent(AsyncSecuredBy.class);
+        for (final AnnotatedMethod<?> method : type.getMethods()) {
+            final var javaMethod = method.getJavaMember();
+            if (method.isAnnotationPresent(SecuredBy.class) || (securedType && isBusinessMethod(javaMethod))) {
+                securedMethods.computeIfAbsent(type.getJavaClass(), k -> new ArrayList<>()).add(javaMethod);
+            }
+            if (method.isAnnotationPresent(AsyncSecuredBy.class) || (asyncSecuredType && isBusinessMethod(javaMethod))) {
+                asyncSecuredMethods.computeIfAbsent(type.getJavaClass(), k -> new ArrayList<>()).add(javaMethod);
+            }
+        }
+    }
+
+    void resolveEvaluators(@Observes final AfterDeploymentValidation afterDeploymentValidation,
+                           final BeanManager beanManager) {
+        final var loader = Thread.currentThread().getContextClassLoader();
+        if (evaluators == null) {
+            evaluators = Evaluators.of(loader);
+        }
+        metrics = SecuredByMetrics.of(beanManager);
+        final var requestDecisionsBean = beanManager.createInstance().select(RequestDecisions.class);
+        requestDecisions = requestDecisionsBean.isResolvable() ? requestDecisionsBean.get() : null; // client proxy
+        if (securedMethods.isEmpty() && asyncSecuredMethods.isEmpty()) {
+            return;
+        }
+
+        for (final Resolution<Object> resolution : resolve(securedMethods, EvaluatorFinder::resolve, loader)) {
+            if (resolution.error != null) {
+                afterDeploymentValidation.addDeploymentProblem(resolution.error);
+            } else {
+                try {
+                    register(resolution.type, resolution.method, resolution.evaluator);
+                } catch (final IllegalArgumentException iae) {
+                    afterDeploymentValidation.addDeploymentProblem(iae);
+                }
+            }
+        }
+        for (final Resolution<AsyncSecuredByEvaluator> resolution :
+                resolve(asyncSecuredMethods, EvaluatorFinder::resolveAsync, loader)) {
+            if (resolution.error != null) {
+                afterDeploymentValidation.addDeploymentProblem(resolution.error);
+            } else {
+                asyncTable.put(resolution.type, resolution.method, new TimedAsyncEvaluator(
+                        resolution.evaluator, TimedAsyncEvaluator.timeout(resolution.type, resolution.method)));
+            }
+        }
+        securedMethods.clear();
+        asyncSecuredMethods.clear();
+    }
+
+    // parallel stream uses the common fork-join pool, the loader is passed explicitly since its threads can use another one
+    private <T> List<Resolution<T>> resolve(final Map<Class<?>, List<Method>> methods, final Resolver<T> resolver,
+                                            final ClassLoader loader) {
+        return methods.entrySet().parallelStream()
+                .flatMap(it -> it.getValue().stream().map(method -> {
+                    try {
+                        return new Resolution<>(
+                                method, it.getKey(), resolver.resolve(evaluators, loader, it.getKey(), method), null);
+                    } catch (final RuntimeException re) {
+                        return new Resolution<T>(method, it.getKey(), null, re);
+                    }
+                }))
+                .collect(toList());
+    }
+
+    void closeMetrics(@Observes final BeforeShutdown beforeShutdown) {
+        if (metrics != null) {
+            metrics.close();
+        }
+    }
+
+    /**
+     * Decorates the evaluator of a method and puts it in the table matching its flavor.
+     *
+     * @param type      the bean class.
+     * @param method    the secured method.
+     * @param evaluator a {@link Predicate} or a {@link ParametersPredicate} if the expression uses the parameters.
+     * @return the evaluator of the table, the already registered one if the method was registered concurrently.
+     * @throws IllegalArgumentException if the evaluator is not a {@link SecuredBy} one or its options can't apply.
+     */
+    public Object register(final Class<?> type, final Method method, final Object evaluator) {
+        if (evaluator instanceof ParametersPredicate) {
+            return parametersTable.put(
+                    type, method, decorate(type, method, (ParametersPredicate<JsonWebToken>) evaluator));
+        }
+        if (evaluator instanceof Predicate) {
+            return table.put(type, method, decorate(type, method, (Predicate<JsonWebToken>) evaluator));
+        }
+        throw new IllegalArgumentException(evaluator + " is not a SecuredBy evaluator of " + method);
+    }
+
+    /**
+     * Applies the options of the evaluator ({@code SecuredBy(cacheable = true)}, metrics),
+     * when none is enabled the evaluator itself is used.
+     *
+     * @param type      the bean class.
+     * @param method    the secured method.
+     * @param evaluator the evaluator.
+     * @return the evaluator to use for this method.
+     * @throws IllegalArgumentException if the options can't apply to the evaluator.
+     */
+    public Predicate<JsonWebToken> decorate(final Class<?> type, final Method method,
+                                            final Predicate<JsonWebToken> evaluator) {
+        final var config = config(type, method);
+        var decorated = evaluator;
+        if (config != null && config.cacheable()) {
+            decorated = new CachingEvaluator(
+                    decorated, TimeUnit.SECONDS.toMillis(config.cacheTtl()),
+                    decisionCache(), requestDecisions);
+        }
+        return metrics == null ? decorated : metrics.wrap(type, method, decorated);
+    }
+
+    /**
+     * Applies the metrics to an evaluator using the method parameters.
+     *
+     * @param type      the bean class.
+     * @param method    the secured method.
+     * @param evaluator the evaluator.
+     * @return the evaluator to use for this method.
+     * @throws IllegalArgumentException if the evaluator is {@code cacheable} since decisions are cached per token only.
+     */
+    public ParametersPredicate<JsonWebToken> decorate(final Class<?> type, final Method method,
+                                                      final ParametersPredicate<JsonWebToken> evaluator) {
+        final var config = config(type, method);
+        if (config != null && config.cacheable()) {
+            throw new IllegalArgumentException(
+                    "cacheable can't be used with an expression using the parameters of " + method);
+        }
+        return metrics == null ? evaluator : metrics.wrap(type, method, evaluator);
+    }
+
+    private SecuredBy config(final Class<?> type, final Method method) {
+        return ofNullable(method.getAnnotation(SecuredBy.class)).orElseGet(() -> type.getAnnotation(SecuredBy.class));
+    }
+
+    // a single cache for all the evaluators so its size is the memory bound of the decisions,
+    // created once the first cacheable evaluator is found (deployment time or lazy beans)
+    private synchronized DecisionCache decisionCache() {
+        if (decisionCache == null) {
+            decisionCache = new DecisionCache(Integer.getInteger(CACHE_MAX_SIZE, 10_000), Integer.getInteger(CACHE_STRIPES, 16));
+        }
+        return decisionCache;
+    }
+
+    public Evaluators getEvaluators() {
+        return evaluators;
+    }
+
+    public EvaluatorTable<Predicate<JsonWebToken>> getTable() {
+        return table;
+    }
+
+    public EvaluatorTable<ParametersPredicate<JsonWebToken>> getParametersTable() {
+        return parametersTable;
+    }
+
+    public EvaluatorTable<TimedAsyncEvaluator> getAsyncTable() {
+        return asyncTable;
+    }
+
+    public SecuredByMetrics getMetrics() {
+        return metrics;
+    }
+
+    private boolean isAlwaysAllowed(final AnnotatedMethod<?> method) {
+        return method.isAnnotationPresent(SecuredBy.class) &&
+                isAlwaysAllowed(Evaluators.key(SecuredBy.class, method.getJavaMember()));
+    }
+
+    private boolean isAlwaysAllowed(final String key) {
+        return evaluators.constant(key).map(Boolean.TRUE::equals).orElse(false);
+    }
+
+    private boolean isBusinessMethod(final Method method) {
+        final var modifiers = method.getModifiers();
+        return method.getDeclaringClass() != Object.class &&
+                !Modifier.isStatic(modifiers) && !Modifier.isPrivate(modifiers) && !Modifier.isFinal(modifiers);
+    }
+
+    private interface Resolver<T> {
+        T resolve(Evaluators evaluators, ClassLoader loader, Class<?> type, Method method);
+    }
+
+    private static class Resolution<T> {
+        private final Method method;
+        private final Class<?> type;
+        private final T evaluator;
+        private final RuntimeException error;
+
+        private Resolution(final Method method, final Class<?> type,
+                           final T evaluator, final RuntimeException error) {
+            this.method = method;
+            this.type = type;
+            this.evaluator = evaluator;
+            this.error = error;
+        }
+    }
+}
@@ -1,16 +1,19 @@
 package com.github.rmannibucau.jel.mp.jwt.impl;
 
+import com.github.rmannibucau.jel.api.parameters.ParametersPredicate;
 import com.github.rmannibucau.jel.mp.jwt.api.SecuredBy;
+import com.github.rmannibucau.jel.mp.jwt.impl.snapshot.RequestTokenSnapshot;
 import org.eclipse.microprofile.jwt.JsonWebToken;
 
 import javax.annotation.Priority;
+import javax.enterprise.context.ContextNotActiveException;
 import javax.inject.Inject;
 import javax.interceptor.AroundInvoke;
 import javax.interceptor.Interceptor;
 import javax.interceptor.InvocationContext;
 import javax.ws.rs.ForbiddenException;
 import java.io.Serializable;
-import java.util.function.Function;
+import java.util.function.Predicate;
 
 @SecuredBy("")
 @Interceptor
@@ -22,12 +25,39 @@ public class SecuredByInterceptor implements Serializable {
     @Inject
     private JsonWebToken token;
 
+    @Inject
+    private RequestTokenSnapshot snapshot;
+
+    private final boolean useSnapshot = Boolean.getBoolean(SecuredByExtension.SNAPSHOT);
+
     @AroundInvoke
     public Object securedBy(final InvocationContext context) throws Exception {
-        final Function<JsonWebToken, Boolean> evaluator = evaluatorFinder.lookupFor(context);
-        if (!evaluator.apply(token)) {
+        final var evaluator = evaluatorFinder.lookupFor(context);
+        final var jwt = useSnapshot ? snapshot() : token;
+        if (!isPresent(jwt) || !(evaluator instanceof ParametersPredicate ? // the expression uses the method parameters
+                ((ParametersPredicate<JsonWebToken>) evaluator).test(jwt, context.getParameters()) :
+                ((Predicate<JsonWebToken>) evaluator).test(jwt))) {
             throw new ForbiddenException();
         }
         return context.proceed();
     }
+
+    // the injected token throws an IllegalStateException on any access when the request has no JWT,
+    // it is only caught here so a failing evaluator is never mistaken for a missing token
+    private boolean isPresent(final JsonWebToken jwt) {
+        try {
+            jwt.getClaimNames();
+            return true;
+        } catch (final IllegalStateException ise) {
+            return false;
+        }
+    }
+
+    private JsonWebToken snapshot() {
+        try {
+            return snapshot.get(token);
+        } catch (final ContextNotActiveException cnae) { // no request
+            return token;
+        }
+    }
 }
@@ -0,0 +1,50 @@
+package com.github.rmannibucau.jel.mp.jwt.impl;
+
+import com.github.rmannibucau.jel.mp.jwt.api.AsyncSecuredBy;
+import com.github.rmannibucau.jel.mp.jwt.api.AsyncSecuredByEvaluator;
+import org.eclipse.microprofile.jwt.JsonWebToken;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * An {@link AsyncSecuredByEvaluator} with the {@link AsyncSecuredBy#timeout()} of its method,
+ * resolved once with the evaluator so calls do not read the annotations.
+ */
+public class TimedAsyncEvaluator implements AsyncSecuredByEvaluator {
+    private final AsyncSecuredByEvaluator delegate;
+    private final long timeout;
+
+    public TimedAsyncEvaluator(final AsyncSecuredByEvaluator delegate, final long timeout) {
+        this.delegate = delegate;
+        this.timeout = timeout;
+    }
+
+    @Override
+    public CompletionStage<Boolean> evaluate(final JsonWebToken jwt) {
+        return delegate.evaluate(jwt);
+    }
+
+    /**
+     * @return the maximum duration to wait for the decision in milliseconds.
+     */
+    public long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * @param type   the bean class.
+     * @param method the secured method.
+     * @return the timeout of the method annotation, else the bean class one, else the declaring class one.
+     */
+    static long timeout(final Class<?> type, final Method method) {
+        var config = method.getAnnotation(AsyncSecuredBy.class);
+        if (config == null) {
+            config = type.getAnnotation(AsyncSecuredBy.class);
+        }
+        if (config == null) {
+            config = method.getDeclaringClass().getAnnotation(AsyncSecuredBy.class);
+        }
+        return config == null ? 30_000L : config.timeout();
+    }
+}
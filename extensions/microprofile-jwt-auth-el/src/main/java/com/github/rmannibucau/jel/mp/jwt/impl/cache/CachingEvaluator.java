@@ -0,0 +1,114 @@
+package com.github.rmannibucau.jel.mp.jwt.impl.cache;
+
+import org.eclipse.microprofile.jwt.Claims;
+import org.eclipse.microprofile.jwt.JsonWebToken;
+
+import javax.enterprise.context.ContextNotActiveException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.function.Predicate;
+
+/**
+ * Memoizes the decision of a {@code SecuredBy(cacheable = true)} evaluator per token,
+ * a decision never outlives the token expiration ({@code exp} claim).
+ * Tokens are identified by their {@code iss} and {@code jti} claims or a digest of the raw token so credentials
+ * are not kept in memory.
+ */
+public class CachingEvaluator implements Predicate<JsonWebToken> {
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException e) { // required by the platform
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final Predicate<JsonWebToken> delegate;
+    private final long ttl;
+    private final DecisionCache cache;
+    private final RequestDecisions requestDecisions;
+
+    /**
+     * @param delegate         the actual evaluator.
+     * @param ttl              the maximum duration of a decision in milliseconds.
+     * @param cache            where decisions are stored, shared by all the evaluators.
+     * @param requestDecisions the request scoped decisions (client proxy), can be {@code null}.
+     */
+    public CachingEvaluator(final Predicate<JsonWebToken> delegate, final long ttl,
+                            final DecisionCache cache, final RequestDecisions requestDecisions) {
+        this.delegate = delegate;
+        this.ttl = ttl;
+        this.cache = cache;
+        this.requestDecisions = requestDecisions;
+    }
+
+    @Override
+    public boolean test(final JsonWebToken jwt) {
+        final var token = identity(jwt);
+        if (token == null) { // can't identify the token so can't cache the decision
+            return delegate.test(jwt);
+        }
+
+        final var inRequest = findInRequest(token);
+        if (inRequest != null) {
+            return inRequest;
+        }
+
+        final long now = System.currentTimeMillis();
+        var decision = cache.get(this, token, now);
+        if (decision == null) {
+            decision = delegate.test(jwt);
+            final long expiresAt = expiresAt(jwt, now);
+            if (expiresAt > now) {
+                cache.put(this, token, decision, expiresAt);
+            }
+        }
+        if (requestDecisions != null) {
+            try {
+                requestDecisions.put(this, token, decision);
+            } catch (final ContextNotActiveException cnae) {
+                // no request
+            }
+        }
+        return decision;
+    }
+
+    private Boolean findInRequest(final String token) {
+        if (requestDecisions == null) {
+            return null;
+        }
+        try {
+            return requestDecisions.get(this, token);
+        } catch (final ContextNotActiveException cnae) {
+            return null;
+        }
+    }
+
+    private long expiresAt(final JsonWebToken jwt, final long now) {
+        final Object exp = jwt.getClaim(Claims.exp.name());
+        final long expiresAt = now + ttl;
+        return Number.class.isInstance(exp) ? Math.min(expiresAt, Number.class.cast(exp).longValue() * 1000) : expiresAt;
+    }
+
+    private String identity(final JsonWebToken jwt) {
+        if (jwt == null) {
+            return null;
+        }
+        final Object id = jwt.getClaim(Claims.jti.name());
+        if (String.class.isInstance(id)) { // jti is only unique per issuer, the length prefix keeps the key unambiguous
+            final Object issuer = jwt.getClaim(Claims.iss.name());
+            final var iss = issuer == null ? "" : String.valueOf(issuer);
+            return iss.length() + ":" + iss + id;
+        }
+        final var raw = jwt.getRawToken();
+        if (raw == null) {
+            return null;
+        }
+        // a few bytes per entry instead of the whole bearer token, the digest is reused by the thread
+        final var digest = DIGEST.get();
+        digest.reset();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(digest.digest(raw.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,130 @@
+package com.github.rmannibucau.jel.mp.jwt.impl.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded decisions of the evaluators per token, a single cache is shared by all the evaluators so its size is the
+ * global bound. It is split in segments locked independently and each segment evicts its least recently used entries.
+ * Expired entries are dropped when read.
+ */
+public class DecisionCache {
+    private final Segment[] segments;
+    private final int mask;
+
+    /**
+     * @param maxSize the maximum number of cached decisions.
+     * @param stripes the number of segments, rounded to a power of two.
+     */
+    public DecisionCache(final int maxSize, final int stripes) {
+        int size = 1;
+        while (size < stripes) {
+            size <<= 1;
+        }
+        this.segments = new Segment[size];
+        this.mask = size - 1;
+        final int segmentSize = Math.max(1, maxSize / size);
+        for (int i = 0; i < size; i++) {
+            segments[i] = new Segment(segmentSize);
+        }
+    }
+
+    /**
+     * @param evaluator the evaluator owning the decision (compared by identity, one per secured method).
+     * @param token     the token identity.
+     * @param now       current time in milliseconds.
+     * @return the decision or {@code null} if not cached or expired.
+     */
+    public Boolean get(final Object evaluator, final String token, final long now) {
+        final var key = new Key(evaluator, token);
+        final var segment = segmentFor(key);
+        synchronized (segment) {
+            final var decision = segment.get(key);
+            if (decision == null) {
+                return null;
+            }
+            if (decision.expiresAt <= now) {
+                segment.remove(key);
+                return null;
+            }
+            return decision.allowed ? Boolean.TRUE : Boolean.FALSE;
+        }
+    }
+
+    public void put(final Object evaluator, final String token, final boolean allowed, final long expiresAt) {
+        final var key = new Key(evaluator, token);
+        final var segment = segmentFor(key);
+        final var decision = new Decision(allowed, expiresAt);
+        synchronized (segment) {
+            segment.put(key, decision);
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (final Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    private Segment segmentFor(final Key key) {
+        final int hash = key.hash;
+        return segments[(hash ^ (hash >>> 16)) & mask];
+    }
+
+    private static class Key {
+        private final Object evaluator;
+        private final String token;
+        private final int hash;
+
+        private Key(final Object evaluator, final String token) {
+            this.evaluator = evaluator;
+            this.token = token;
+            this.hash = 31 * System.identityHashCode(evaluator) + token.hashCode();
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!Key.class.isInstance(o)) {
+                return false;
+            }
+            final var other = Key.class.cast(o);
+            return evaluator == other.evaluator && token.equals(other.token);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static class Segment extends LinkedHashMap<Key, Decision> {
+        private final int maxSize;
+
+        private Segment(final int maxSize) {
+            super(16, .75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Key, Decision> eldest) {
+            return size() > maxSize;
+        }
+    }
+
+    private static class Decision {
+        private final boolean allowed;
+        private final long expiresAt;
+
+        private Decision(final boolean allowed, final long expiresAt) {
+            this.allowed = allowed;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.github.rmannibucau.jel.mp.jwt.impl.cache;
+
+import javax.enterprise.context.RequestScoped;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Decisions already taken in the current request, avoids to hit the shared cache for nested secured calls.
+ */
+@RequestScoped
+public class RequestDecisions {
+    private final Map<Object, Boolean> decisions = new IdentityHashMap<>();
+    private String token;
+
+    public Boolean get(final Object evaluator, final String token) {
+        return token.equals(this.token) ? decisions.get(evaluator) : null;
+    }
+
+    public void put(final Object evaluator, final String token, final Boolean decision) {
+        if (!token.equals(this.token)) {
+            decisions.clear();
+            this.token = token;
+        }
+        decisions.put(evaluator, decision);
+    }
+}
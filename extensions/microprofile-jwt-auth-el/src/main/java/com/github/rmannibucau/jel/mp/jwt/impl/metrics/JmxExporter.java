@@ -0,0 +1,39 @@
+package com.github.rmannibucau.jel.mp.jwt.impl.metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+class JmxExporter implements MetricsExporter {
+    private final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    private final List<ObjectName> names = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void export(final String name, final MeteredEvaluator evaluator) {
+        try {
+            final var objectName = new ObjectName(
+                    "com.github.rmannibucau.jel:type=SecuredBy,name=" + ObjectName.quote(name));
+            server.registerMBean(evaluator, objectName);
+            names.add(objectName);
+        } catch (final JMException e) {
+            Logger.getLogger(JmxExporter.class.getName()).log(Level.WARNING, "Can't register metrics of " + name, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        for (final ObjectName name : names) {
+            try {
+                server.unregisterMBean(name);
+            } catch (final JMException e) {
+                // already unregistered
+            }
+        }
+        names.clear();
+    }
+}
@@ -0,0 +1,70 @@
+package com.github.rmannibucau.jel.mp.jwt.impl.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram with fixed power of two buckets: bucket {@code i} counts durations
+ * in {@code [2^i, 2^(i+1))} nanoseconds, the last one everything above.
+ */
+public class LatencyHistogram {
+    static final int BUCKETS = 40;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder total = new LongAdder();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(final long nanos) {
+        buckets[nanos <= 0 ? 0 : Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(nanos))].increment();
+        total.add(nanos);
+    }
+
+    public long[] counts() {
+        final long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+        }
+        return counts;
+    }
+
+    public long count() {
+        long count = 0;
+        for (final LongAdder bucket : buckets) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    public double mean() {
+        final long count = count();
+        return count == 0 ? 0 : total.sum() / (double) count;
+    }
+
+    /**
+     * @param percentile the percentile between 0 and 1.
+     * @return the upper bound (nanoseconds) of the bucket containing the percentile, 0 if nothing was recorded.
+     */
+    public long percentile(final double percentile) {
+        final long[] counts = counts();
+        long count = 0;
+        for (final long value : counts) {
+            count += value;
+        }
+        if (count == 0) {
+            return 0;
+        }
+        final long threshold = (long) Math.ceil(count * percentile);
+        long current = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            current += counts[i];
+            if (current >= threshold && counts[i] > 0) {
+                return i == BUCKETS - 1 ? Long.MAX_VALUE : (1L << (i + 1)) - 1;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+}
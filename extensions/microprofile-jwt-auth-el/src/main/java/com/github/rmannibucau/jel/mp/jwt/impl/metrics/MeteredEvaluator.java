@@ -0,0 +1,48 @@
+package com.github.rmannibucau.jel.mp.jwt.impl.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// only used when metrics are enabled so evaluators are not wrapped otherwise,
+// the flavors keep the evaluator interface so the interceptor takes the same path with or without metrics
+public abstract class MeteredEvaluator implements SecuredByEvaluatorMXBean {
+    private final LongAdder denials = new LongAdder();
+    private final LatencyHistogram latencies = new LatencyHistogram();
+
+    protected boolean record(final long start, final boolean result) {
+        latencies.record(System.nanoTime() - start); // also the invocation count
+        if (!result) {
+            denials.increment();
+        }
+        return result;
+    }
+
+    @Override
+    public long getInvocations() {
+        return latencies.count();
+    }
+
+    @Override
+    public long getDenials() {
+        return denials.sum();
+    }
+
+    @Override
+    public double getMeanLatency() {
+        return latencies.mean();
+    }
+
+    @Override
+    public long getMedianLatency() {
+        return latencies.percentile(.5);
+    }
+
+    @Override
+    public long getLatency99thPercentile() {
+        return latencies.percentile(.99);
+    }
+
+    @Override
+    public long[] getLatencyHistogram() {
+        return latencies.counts();
+    }
+}
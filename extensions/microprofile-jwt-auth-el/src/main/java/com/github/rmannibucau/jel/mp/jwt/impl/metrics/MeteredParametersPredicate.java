@@ -0,0 +1,19 @@
+package com.github.rmannibucau.jel.mp.jwt.impl.metrics;
+
+import com.github.rmannibucau.jel.api.parameters.ParametersPredicate;
+import org.eclipse.microprofile.jwt.JsonWebToken;
+
+// for evaluators using the method parameters
+public class MeteredParametersPredicate extends MeteredEvaluator implements ParametersPredicate<JsonWebToken> {
+    private final ParametersPredicate<JsonWebToken> delegate;
+
+    public MeteredParametersPredicate(final ParametersPredicate<JsonWebToken> delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public boolean test(final JsonWebToken jwt, final Object[] parameters) {
+        final long start = System.nanoTime();
+        return record(start, delegate.test(jwt, parameters));
+    }
+}
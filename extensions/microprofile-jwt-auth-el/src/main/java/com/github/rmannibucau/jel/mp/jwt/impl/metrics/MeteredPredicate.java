@@ -0,0 +1,19 @@
+package com.github.rmannibucau.jel.mp.jwt.impl.metrics;
+
+import org.eclipse.microprofile.jwt.JsonWebToken;
+
+import java.util.function.Predicate;
+
+public class MeteredPredicate extends MeteredEvaluator implements Predicate<JsonWebToken> {
+    private final Predicate<JsonWebToken> delegate;
+
+    public MeteredPredicate(final Predicate<JsonWebToken> delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public boolean test(final JsonWebToken jwt) {
+        final long start = System.nanoTime();
+        return record(start, delegate.test(jwt));
+    }
+}
@@ -0,0 +1,8 @@
+package com.github.rmannibucau.jel.mp.jwt.impl.metrics;
+
+interface MetricsExporter extends AutoCloseable {
+    void export(String name, MeteredEvaluator evaluator);
+
+    @Override
+    void close();
+}
@@ -0,0 +1,53 @@
+package com.github.rmannibucau.jel.mp.jwt.impl.metrics;
+
+import org.eclipse.microprofile.metrics.Gauge;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricID;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.MetricType;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.Tag;
+
+import javax.enterprise.inject.spi.BeanManager;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// only loaded when MicroProfile Metrics is available, gauges read the evaluator counters so nothing is added to the hot path
+class MicroProfileMetricsExporter implements MetricsExporter {
+    private final MetricRegistry registry;
+    private final List<MetricID> ids = new CopyOnWriteArrayList<>();
+
+    MicroProfileMetricsExporter(final BeanManager beanManager) {
+        final var registries = beanManager.createInstance().select(MetricRegistry.class);
+        if (!registries.isResolvable()) {
+            throw new IllegalStateException("No MetricRegistry available");
+        }
+        this.registry = registries.get();
+    }
+
+    @Override
+    public void export(final String name, final MeteredEvaluator evaluator) {
+        final var tag = new Tag("evaluator", name);
+        register("invocations", MetricUnits.NONE, tag, evaluator::getInvocations);
+        register("denials", MetricUnits.NONE, tag, evaluator::getDenials);
+        register("latency.mean", MetricUnits.NANOSECONDS, tag, evaluator::getMeanLatency);
+        register("latency.median", MetricUnits.NANOSECONDS, tag, evaluator::getMedianLatency);
+        register("latency.p99", MetricUnits.NANOSECONDS, tag, evaluator::getLatency99thPercentile);
+    }
+
+    @Override
+    public void close() {
+        ids.forEach(registry::remove);
+        ids.clear();
+    }
+
+    private void register(final String name, final String unit, final Tag tag, final Gauge<?> gauge) {
+        final var metadata = Metadata.builder()
+                .withName("simplejel.securedby." + name)
+                .withType(MetricType.GAUGE)
+                .withUnit(unit)
+                .build();
+        registry.register(metadata, gauge, tag);
+        ids.add(new MetricID(metadata.getName(), tag));
+    }
+}
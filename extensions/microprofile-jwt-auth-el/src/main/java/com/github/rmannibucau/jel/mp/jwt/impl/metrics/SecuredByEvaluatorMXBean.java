@@ -0,0 +1,21 @@
+package com.github.rmannibucau.jel.mp.jwt.impl.metrics;
+
+/**
+ * Metrics of a {@code SecuredBy} evaluator, latencies are in nanoseconds.
+ */
+public interface SecuredByEvaluatorMXBean {
+    long getInvocations();
+
+    long getDenials();
+
+    double getMeanLatency();
+
+    long getMedianLatency();
+
+    long getLatency99thPercentile();
+
+    /**
+     * @return the count of evaluations per latency bucket, bucket {@code i} is {@code [2^i, 2^(i+1))} nanoseconds.
+     */
+    long[] getLatencyHistogram();
+}
@@ -0,0 +1,93 @@
+package com.github.rmannibucau.jel.mp.jwt.impl.metrics;
+
+import com.github.rmannibucau.jel.api.parameters.ParametersPredicate;
+import com.github.rmannibucau.jel.api.registry.Evaluators;
+import com.github.rmannibucau.jel.mp.jwt.api.SecuredBy;
+import org.eclipse.microprofile.jwt.JsonWebToken;
+
+import javax.enterprise.inject.spi.BeanManager;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Per evaluator metrics (invocations, denials and latencies) exposed through MicroProfile Metrics when available
+ * and JMX otherwise. They are enabled with the {@code simplejel.securedby.metrics} system property,
+ * when disabled evaluators are not wrapped at all so there is no cost.
+ */
+public class SecuredByMetrics implements AutoCloseable {
+    public static final String ENABLED = "simplejel.securedby.metrics";
+
+    private final Map<String, MeteredEvaluator> evaluators = new ConcurrentHashMap<>();
+    private final MetricsExporter exporter;
+
+    SecuredByMetrics(final MetricsExporter exporter) {
+        this.exporter = exporter;
+    }
+
+    public Predicate<JsonWebToken> wrap(final Class<?> type, final Method method,
+                                        final Predicate<JsonWebToken> evaluator) {
+        final var metered = new MeteredPredicate(evaluator);
+        register(name(type, method), metered);
+        return metered;
+    }
+
+    public ParametersPredicate<JsonWebToken> wrap(final Class<?> type, final Method method,
+                                                  final ParametersPredicate<JsonWebToken> evaluator) {
+        final var metered = new MeteredParametersPredicate(evaluator);
+        register(name(type, method), metered);
+        return metered;
+    }
+
+    // each evaluator gets its own wrapper, only the export is shared if a lazy bean registers its evaluator twice
+    // (the evaluator table keeps the first one too)
+    private void register(final String name, final MeteredEvaluator metered) {
+        if (evaluators.putIfAbsent(name, metered) == null) {
+            exporter.export(name, metered);
+        }
+    }
+
+    // the bean class and the signature since beans can inherit the same method and methods can be overloaded
+    private static String name(final Class<?> type, final Method method) {
+        return Evaluators.key(SecuredBy.class.getName(), type.getName(), method.getName(),
+                Stream.of(method.getParameterTypes()).map(Class::getTypeName).toArray(String[]::new));
+    }
+
+    public Map<String, ? extends SecuredByEvaluatorMXBean> getEvaluators() {
+        return evaluators;
+    }
+
+    @Override
+    public void close() {
+        exporter.close();
+        evaluators.clear();
+    }
+
+    /**
+     * @param beanManager the bean manager to lookup MicroProfile Metrics registry.
+     * @return the metrics or {@code null} if disabled.
+     */
+    public static SecuredByMetrics of(final BeanManager beanManager) {
+        if (!Boolean.getBoolean(ENABLED)) {
+            return null;
+        }
+        return new SecuredByMetrics(findExporter(beanManager));
+    }
+
+    static SecuredByMetrics jmx() {
+        return new SecuredByMetrics(new JmxExporter());
+    }
+
+    private static MetricsExporter findExporter(final BeanManager beanManager) {
+        try {
+            Thread.currentThread().getContextClassLoader().loadClass("org.eclipse.microprofile.metrics.MetricRegistry");
+            return new MicroProfileMetricsExporter(beanManager);
+        } catch (final ClassNotFoundException | NoClassDefFoundError | IllegalStateException e) {
+            Logger.getLogger(SecuredByMetrics.class.getName()).fine(() -> "Using JMX for metrics: " + e.getMessage());
+            return new JmxExporter();
+        }
+    }
+}
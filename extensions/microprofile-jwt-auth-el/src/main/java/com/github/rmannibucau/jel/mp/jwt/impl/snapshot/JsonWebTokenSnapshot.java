@@ -0,0 +1,151 @@
+package com.github.rmannibucau.jel.mp.jwt.impl.snapshot;
+
+import org.eclipse.microprofile.jwt.Claims;
+import org.eclipse.microprofile.jwt.JsonWebToken;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static java.util.Collections.unmodifiableSet;
+
+/**
+ * A {@link JsonWebToken} resolving each claim of the delegate at most once, it is bound to a single request
+ * (not thread safe) so evaluators of nested secured calls do not go through the token proxy again.
+ * Groups are interned (fast {@code equals} against the string literals of the expressions)
+ * and the time claims are kept as primitives.
+ */
+public class JsonWebTokenSnapshot implements JsonWebToken {
+    private static final Object MISSING = new Object();
+
+    private final JsonWebToken delegate;
+    private final Map<String, Object> claims = new HashMap<>();
+
+    private String name;
+    private boolean nameResolved;
+    private Set<String> groups;
+    private boolean groupsResolved;
+    private Set<String> claimNames;
+    private long expirationTime;
+    private boolean expirationTimeResolved;
+    private long issuedAtTime;
+    private boolean issuedAtTimeResolved;
+
+    public JsonWebTokenSnapshot(final JsonWebToken delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public String getName() {
+        if (!nameResolved) {
+            name = delegate.getName();
+            nameResolved = true;
+        }
+        return name;
+    }
+
+    @Override
+    public Set<String> getGroups() {
+        if (!groupsResolved) {
+            final var raw = delegate.getGroups();
+            if (raw != null) {
+                final var interned = new HashSet<String>(raw.size() * 4 / 3 + 1);
+                for (final String group : raw) {
+                    interned.add(group == null ? null : group.intern());
+                }
+                groups = unmodifiableSet(interned);
+            }
+            groupsResolved = true;
+        }
+        return groups;
+    }
+
+    @Override
+    public long getExpirationTime() {
+        if (!expirationTimeResolved) {
+            expirationTime = delegate.getExpirationTime();
+            expirationTimeResolved = true;
+        }
+        return expirationTime;
+    }
+
+    @Override
+    public long getIssuedAtTime() {
+        if (!issuedAtTimeResolved) {
+            issuedAtTime = delegate.getIssuedAtTime();
+            issuedAtTimeResolved = true;
+        }
+        return issuedAtTime;
+    }
+
+    @Override
+    public Set<String> getClaimNames() {
+        if (claimNames == null) {
+            claimNames = delegate.getClaimNames();
+        }
+        return claimNames;
+    }
+
+    @Override
+    public String getRawToken() {
+        return resolve(Claims.raw_token.name());
+    }
+
+    @Override
+    public String getIssuer() {
+        return resolve(Claims.iss.name());
+    }
+
+    @Override
+    public Set<String> getAudience() {
+        return resolve(Claims.aud.name());
+    }
+
+    @Override
+    public String getSubject() {
+        return resolve(Claims.sub.name());
+    }
+
+    @Override
+    public String getTokenID() {
+        return resolve(Claims.jti.name());
+    }
+
+    @Override
+    public <T> T getClaim(final String claimName) {
+        return resolve(claimName);
+    }
+
+    private <T> T resolve(final String claim) {
+        var value = claims.get(claim);
+        if (value == null) {
+            value = load(claim);
+            claims.put(claim, value == null ? MISSING : value);
+        }
+        return value == MISSING ? null : (T) value;
+    }
+
+    // use the dedicated accessors when they exist since the delegate can override them
+    private Object load(final String claim) {
+        switch (claim) {
+            case "raw_token":
+                return delegate.getRawToken();
+            case "iss":
+                return delegate.getIssuer();
+            case "aud":
+                return delegate.getAudience();
+            case "sub":
+                return delegate.getSubject();
+            case "jti":
+                return delegate.getTokenID();
+            default:
+                return delegate.getClaim(claim);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "JsonWebTokenSnapshot{" + delegate + '}';
+    }
+}
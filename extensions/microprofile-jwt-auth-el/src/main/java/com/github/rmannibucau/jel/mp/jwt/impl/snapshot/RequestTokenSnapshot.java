@@ -0,0 +1,24 @@
+package com.github.rmannibucau.jel.mp.jwt.impl.snapshot;
+
+import org.eclipse.microprofile.jwt.JsonWebToken;
+
+import javax.enterprise.context.RequestScoped;
+
+/**
+ * The {@link JsonWebTokenSnapshot} of the current request, shared by all the secured calls of the request.
+ */
+@RequestScoped
+public class RequestTokenSnapshot {
+    private JsonWebTokenSnapshot snapshot;
+
+    /**
+     * @param token the token of the request (client proxy).
+     * @return the snapshot of the token, created at the first call.
+     */
+    public JsonWebToken get(final JsonWebToken token) {
+        if (snapshot == null) {
+            snapshot = new JsonWebTokenSnapshot(token);
+        }
+        return snapshot;
+    }
+}
@@ -0,0 +1,180 @@
+package com.github.rmannibucau.jel.mp.jwt.impl;
+
+import com.github.rmannibucau.jel.api.registry.Evaluators;
+import org.junit.jupiter.api.Test;
+
+import javax.interceptor.InvocationContext;
+import javax.ws.rs.ForbiddenException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AsyncSecuredByInterceptorTest {
+    @Test
+    void stageDoesNotBlock() throws Exception {
+        final var decision = new CompletableFuture<Boolean>();
+        final var service = new Service();
+        final var method = Service.class.getMethod("stage");
+        final var interceptor = interceptor(method, decision, 30_000L);
+
+        final var thread = Thread.currentThread();
+        final var previousLoader = thread.getContextClassLoader();
+        final var loader = new URLClassLoader(new URL[0], previousLoader);
+        final CompletableFuture<?> result;
+        thread.setContextClassLoader(loader);
+        try {
+            result = CompletionStage.class.cast(interceptor.securedBy(new StubContext(service, method)))
+                    .toCompletableFuture();
+        } finally {
+            thread.setContextClassLoader(previousLoader);
+        }
+
+        // the invoking thread got the stage back while the decision is pending, the method was not called
+        assertFalse(result.isDone());
+        assertEquals(0, service.calls);
+
+        // the thread completing the decision calls the method with the context of the call
+        ForkJoinPool.commonPool().execute(() -> decision.complete(true));
+        assertEquals("stage", result.get(1, SECONDS));
+        assertEquals(1, service.calls);
+        assertNotSame(thread, service.thread);
+        assertSame(loader, service.loader);
+    }
+
+    @Test
+    void stageDenied() throws Exception {
+        final var method = Service.class.getMethod("stage");
+        final var service = new Service();
+        final var interceptor = interceptor(method, CompletableFuture.completedFuture(false), 30_000L);
+        final var result = CompletionStage.class.cast(interceptor.securedBy(new StubContext(service, method)))
+                .toCompletableFuture();
+        final var error = assertThrows(ExecutionException.class, () -> result.get(1, SECONDS));
+        assertTrue(error.getCause() instanceof ForbiddenException, error::toString);
+        assertEquals(0, service.calls);
+    }
+
+    @Test
+    void stageTimeout() throws Exception {
+        final var method = Service.class.getMethod("stage");
+        final var service = new Service();
+        final var decision = new CompletableFuture<Boolean>();
+        final var result = CompletionStage.class.cast(interceptor(method, decision, 10L)
+                .securedBy(new StubContext(service, method))).toCompletableFuture();
+        final var error = assertThrows(ExecutionException.class, () -> result.get(1, SECONDS));
+        assertTrue(error.getCause() instanceof ForbiddenException, error::toString);
+        assertFalse(decision.isDone()); // only the chained copy timed out
+        assertEquals(0, service.calls);
+    }
+
+    @Test
+    void blockingWaitsForTheDecision() throws Exception {
+        final var method = Service.class.getMethod("blocking");
+        final var service = new Service();
+        final var decision = new CompletableFuture<Boolean>();
+        ForkJoinPool.commonPool().execute(() -> decision.complete(true));
+        assertEquals("blocking", interceptor(method, decision, 30_000L).securedBy(new StubContext(service, method)));
+        assertSame(Thread.currentThread(), service.thread);
+
+        assertThrows(ForbiddenException.class, () -> interceptor(method, new CompletableFuture<>(), 10L)
+                .securedBy(new StubContext(service, method)));
+        assertEquals(1, service.calls);
+    }
+
+    private static AsyncSecuredByInterceptor interceptor(final Method method, final CompletableFuture<Boolean> decision,
+                                                         final long timeout) throws Exception {
+        final var asyncTable = new EvaluatorTable<TimedAsyncEvaluator>();
+        asyncTable.put(Service.class, method, new TimedAsyncEvaluator(jwt -> decision, timeout));
+        final var interceptor = new AsyncSecuredByInterceptor();
+        final var finder = AsyncSecuredByInterceptor.class.getDeclaredField("evaluatorFinder");
+        finder.setAccessible(true);
+        finder.set(interceptor, new EvaluatorFinder(new EvaluatorTable<>(), new EvaluatorTable<>(), asyncTable,
+                Evaluators.of(Thread.currentThread().getContextClassLoader())));
+        return interceptor;
+    }
+
+    public static class Service {
+        private int calls;
+        private Thread thread;
+        private ClassLoader loader;
+
+        public CompletionStage<String> stage() {
+            called();
+            return CompletableFuture.completedFuture("stage");
+        }
+
+        public String blocking() {
+            called();
+            return "blocking";
+        }
+
+        private void called() {
+            calls++;
+            thread = Thread.currentThread();
+            loader = thread.getContextClassLoader();
+        }
+    }
+
+    private static class StubContext implements InvocationContext {
+        private final Object target;
+        private final Method method;
+
+        private StubContext(final Object target, final Method method) {
+            this.target = target;
+            this.method = method;
+        }
+
+        @Override
+        public Object getTarget() {
+            return target;
+        }
+
+        @Override
+        public Object getTimer() {
+            return null;
+        }
+
+        @Override
+        public Method getMethod() {
+            return method;
+        }
+
+        @Override
+        public Constructor<?> getConstructor() {
+            return null;
+        }
+
+        @Override
+        public Object[] getParameters() {
+            return new Object[0];
+        }
+
+        @Override
+        public void setParameters(final Object[] params) {
+            // no-op
+        }
+
+        @Override
+        public Map<String, Object> getContextData() {
+            return Map.of();
+        }
+
+        @Override
+        public Object proceed() throws Exception {
+            return method.invoke(target);
+        }
+    }
+}
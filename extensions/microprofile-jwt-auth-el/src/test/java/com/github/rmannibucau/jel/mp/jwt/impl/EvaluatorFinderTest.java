@@ -0,0 +1,128 @@
+package com.github.rmannibucau.jel.mp.jwt.impl;
+
+import com.github.rmannibucau.jel.api.parameters.ParametersPredicate;
+import com.github.rmannibucau.jel.api.registry.Evaluators;
+import org.eclipse.microprofile.jwt.JsonWebToken;
+import org.junit.jupiter.api.Test;
+
+import javax.interceptor.InvocationContext;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EvaluatorFinderTest {
+    @Test
+    void lookupDoesNotAllocate() throws NoSuchMethodException {
+        final Predicate<JsonWebToken> evaluator = jwt -> true;
+        final var method = Service.class.getMethod("call");
+        final var table = new EvaluatorTable<Predicate<JsonWebToken>>();
+        table.put(Service.class, method, evaluator);
+        table.put(Service.class, Service.class.getMethod("other"), jwt -> false);
+        final var finder = new EvaluatorFinder(
+                table, new EvaluatorTable<>(), new EvaluatorTable<>(),
+                Evaluators.of(Thread.currentThread().getContextClassLoader()));
+        // getMethod() returns a copy, as some containers do
+        final var context = new StubContext(new Service(), Service.class.getMethod("call"));
+
+        for (int i = 0; i < 1_000_000; i++) { // warmup
+            assertSame(evaluator, finder.lookupFor(context));
+        }
+
+        final var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final var threadId = Thread.currentThread().getId();
+        final var measurementOverhead = -threads.getThreadAllocatedBytes(threadId) + threads.getThreadAllocatedBytes(threadId);
+        final var before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 100_000; i++) {
+            if (finder.lookupFor(context) != evaluator) {
+                throw new IllegalStateException("wrong evaluator");
+            }
+        }
+        final var allocated = threads.getThreadAllocatedBytes(threadId) - before - measurementOverhead;
+        assertEquals(0, allocated);
+    }
+
+    @Test
+    void lazyParametersEvaluator() throws NoSuchMethodException {
+        final var table = new EvaluatorTable<Predicate<JsonWebToken>>();
+        final var parametersTable = new EvaluatorTable<ParametersPredicate<JsonWebToken>>();
+        final var finder = new EvaluatorFinder(
+                table, parametersTable, new EvaluatorTable<>(),
+                Evaluators.of(Thread.currentThread().getContextClassLoader()));
+        final var owned = SecuredByInterceptorTest.Endpoint.class.getMethod("owned", String.class);
+        final var context = new StubContext(new SecuredByInterceptorTest.Endpoint(), owned);
+
+        // the evaluator itself is returned, the caller passes the parameters of the invocation
+        final var evaluator = finder.lookupFor(context);
+        assertTrue(evaluator instanceof ParametersPredicate);
+        assertSame(parametersTable.find(SecuredByInterceptorTest.Endpoint.class, owned), evaluator);
+        assertSame(evaluator, finder.lookupFor(context));
+        assertNull(table.find(SecuredByInterceptorTest.Endpoint.class, owned));
+    }
+
+    public static class Service {
+        public String call() {
+            return "called";
+        }
+
+        public String other() {
+            return "other";
+        }
+    }
+
+    private static class StubContext implements InvocationContext {
+        private final Object target;
+        private final Method method;
+
+        private StubContext(final Object target, final Method method) {
+            this.target = target;
+            this.method = method;
+        }
+
+        @Override
+        public Object getTarget() {
+            return target;
+        }
+
+        @Override
+        public Object getTimer() {
+            return null;
+        }
+
+        @Override
+        public Method getMethod() {
+            return method;
+        }
+
+        @Override
+        public Constructor<?> getConstructor() {
+            return null;
+        }
+
+        @Override
+        public Object[] getParameters() {
+            return new Object[0];
+        }
+
+        @Override
+        public void setParameters(final Object[] params) {
+            // no-op
+        }
+
+        @Override
+        public Map<String, Object> getContextData() {
+            return Map.of();
+        }
+
+        @Override
+        public Object proceed() {
+            return null;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.github.rmannibucau.jel.mp.jwt.impl;
 
+import com.github.rmannibucau.jel.mp.jwt.api.AsyncSecuredBy;
 import com.github.rmannibucau.jel.mp.jwt.api.SecuredBy;
 import org.apache.geronimo.microprofile.impl.jwtauth.cdi.GeronimoJwtAuthExtension;
 import org.apache.meecrowave.Meecrowave;
@@ -11,6 +12,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.context.RequestScoped;
 import javax.inject.Inject;
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
@@ -21,18 +23,26 @@ import javax.servlet.annotation.WebFilter;
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.ForbiddenException;
 import javax.ws.rs.GET;
+import javax.ws.rs.InternalServerErrorException;
 import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.Invocation;
 import java.io.IOException;
 import java.lang.reflect.Proxy;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 import static java.util.Optional.ofNullable;
 import static javax.ws.rs.core.MediaType.TEXT_PLAIN;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 @MeecrowaveConfig(
@@ -45,6 +55,9 @@ class SecuredByInterceptorTest {
     @Inject
     private Meecrowave.Builder config;
 
+    @Inject
+    private SecuredByExtension extension;
+
     @BeforeEach
     void init() {
         client = ClientBuilder.newClient();
@@ -72,7 +85,125 @@ class SecuredByInterceptorTest {
         assertThrows(ForbiddenException.class, () -> target.header("Authorization", "Bearer wrong").get(String.class));
     }
 
-    @WebFilter("/SecuredByInterceptorTest")
+    @Test
+    void failingEvaluator() {
+        final var failing = client
+                .target("http://localhost:" + config.getHttpPort())
+                .path("SecuredByInterceptorTest/failing");
+        // only a missing token is a forbidden call, a bug of the evaluator is not hidden
+        assertThrows(InternalServerErrorException.class, () -> failing
+                .request(TEXT_PLAIN).header("Authorization", "Bearer ok").get(String.class));
+        assertThrows(ForbiddenException.class, () -> failing.request(TEXT_PLAIN).get(String.class));
+    }
+
+    @Test
+    void alwaysAllowed() throws NoSuchMethodException {
+        assertEquals("open", client
+                .target("http://localhost:" + config.getHttpPort())
+                .path("SecuredByInterceptorTest/open")
+                .request(TEXT_PLAIN)
+                .get(String.class));
+        assertNull(extension.getTable().find(Endpoint.class, Endpoint.class.getMethod("open")));
+    }
+
+    @Test
+    void alwaysAllowedOverload() throws NoSuchMethodException {
+        final var base = client
+                .target("http://localhost:" + config.getHttpPort())
+                .path("SecuredByInterceptorTest/overloaded");
+        assertEquals("overloaded", base.request(TEXT_PLAIN).header("Authorization", "Bearer ok").get(String.class));
+        // the always allowed overload does not remove the check of the other one
+        assertThrows(ForbiddenException.class, () -> base.path("1")
+                .request(TEXT_PLAIN).header("Authorization", "Bearer ok").get(String.class));
+        assertNull(extension.getTable().find(Endpoint.class, Endpoint.class.getMethod("overloaded")));
+        assertNotNull(extension.getTable().find(Endpoint.class, Endpoint.class.getMethod("overloaded", String.class)));
+    }
+
+    @Test
+    void alwaysAllowedWithInheritedMethod() throws NoSuchMethodException {
+        final var base = client
+                .target("http://localhost:" + config.getHttpPort())
+                .path("SecuredByInterceptorTest/mixed");
+        assertEquals("open", base.path("open").request(TEXT_PLAIN).header("Authorization", "Bearer ok").get(String.class));
+        assertThrows(ForbiddenException.class, () -> base.path("denied")
+                .request(TEXT_PLAIN).header("Authorization", "Bearer ok").get(String.class));
+        // the type is not configured so the inherited method keeps its binding, the open one stays intercepted
+        assertNotNull(extension.getTable().find(Mixed.class, DeniedBase.class.getMethod("denied")));
+        assertNotNull(extension.getTable().find(Mixed.class, Mixed.class.getMethod("open")));
+    }
+
+    @Test
+    void policy() {
+        final var policy = client
+                .target("http://localhost:" + config.getHttpPort())
+                .path("SecuredByInterceptorTest/policy");
+        assertEquals("policy", policy.request(TEXT_PLAIN).header("Authorization", "Bearer ok").get(String.class));
+        assertThrows(ForbiddenException.class, () -> policy.request(TEXT_PLAIN).get(String.class));
+    }
+
+    @Test
+    void parameters() throws NoSuchMethodException {
+        final var base = client
+                .target("http://localhost:" + config.getHttpPort())
+                .path("SecuredByInterceptorTest/owned");
+        assertEquals("mine-1", base.path("mine-1").request(TEXT_PLAIN).header("Authorization", "Bearer ok").get(String.class));
+        assertThrows(ForbiddenException.class, () -> base.path("other")
+                .request(TEXT_PLAIN).header("Authorization", "Bearer ok").get(String.class));
+        assertThrows(ForbiddenException.class, () -> base.path("mine-1").request(TEXT_PLAIN).get(String.class));
+
+        final var owned = Endpoint.class.getMethod("owned", String.class);
+        assertNotNull(extension.getParametersTable().find(Endpoint.class, owned));
+        assertNull(extension.getTable().find(Endpoint.class, owned));
+    }
+
+    @Test
+    void async() throws NoSuchMethodException {
+        final var base = client
+                .target("http://localhost:" + config.getHttpPort())
+                .path("SecuredByInterceptorTest/async");
+        for (final String path : List.of("stage", "blocking")) {
+            assertEquals(path, base.path(path).request(TEXT_PLAIN).header("Authorization", "Bearer ok").get(String.class));
+            assertThrows(ForbiddenException.class, () -> base.path(path).request(TEXT_PLAIN).get(String.class));
+        }
+        assertEquals(30_000L, extension.getAsyncTable().find(Endpoint.class, Endpoint.class.getMethod("stage")).getTimeout());
+        assertEquals(5_000L, extension.getAsyncTable().find(Endpoint.class, Endpoint.class.getMethod("blocking")).getTimeout());
+    }
+
+    @Test
+    void fusedClassExpression() throws NoSuchMethodException {
+        final var base = client
+                .target("http://localhost:" + config.getHttpPort())
+                .path("SecuredByInterceptorTest/fused");
+        for (final String path : List.of("method", "type")) {
+            assertEquals(path, base.path(path).request(TEXT_PLAIN).header("Authorization", "Bearer ok").get(String.class));
+            // the inherited class expression is evaluated even if the method one always allows the call
+            assertThrows(ForbiddenException.class, () -> base.path(path).request(TEXT_PLAIN).get(String.class));
+        }
+        assertNotNull(extension.getTable().find(FusedEndpoint.class, FusedEndpoint.class.getMethod("method")));
+    }
+
+    @Test
+    void inheritedMethod() throws NoSuchMethodException {
+        final var base = client
+                .target("http://localhost:" + config.getHttpPort())
+                .path("SecuredByInterceptorTest");
+        // both beans inherit the same method but each of them is secured by its own class expression
+        assertEquals("inherited", base.path("allow").request(TEXT_PLAIN).header("Authorization", "Bearer ok").get(String.class));
+        assertThrows(ForbiddenException.class, () -> base.path("deny")
+                .request(TEXT_PLAIN).header("Authorization", "Bearer ok").get(String.class));
+
+        final var inherited = InheritedBase.class.getMethod("inherited");
+        assertNotNull(extension.getTable().find(Deny.class, inherited));
+        assertNotNull(extension.getTable().find(Allow.class, inherited));
+        assertNotSame(extension.getTable().find(Deny.class, inherited), extension.getTable().find(Allow.class, inherited));
+    }
+
+    @Test
+    void resolvedAtDeployment() throws NoSuchMethodException {
+        assertNotNull(extension.getTable().find(Endpoint.class, Endpoint.class.getMethod("call")));
+    }
+
+    @WebFilter(urlPatterns = "/SecuredByInterceptorTest/*", asyncSupported = true)
     public static class JwtMock implements Filter {
         @Inject
         private GeronimoJwtAuthExtension extension;
@@ -95,14 +226,156 @@ class SecuredByInterceptorTest {
         }
     }
 
+    @RequestScoped
+    public static class RequestValue {
+        public String get() {
+            return "stage";
+        }
+    }
+
     @ApplicationScoped
     @Path("SecuredByInterceptorTest")
     public static class Endpoint {
+        @Inject
+        private RequestValue requestValue;
+
         @GET
         @Produces(TEXT_PLAIN)
         @SecuredBy("return exists(jwt)")
         public String call() {
             return "was called property";
         }
+
+        @GET
+        @Path("open")
+        @Produces(TEXT_PLAIN)
+        @SecuredBy("return true")
+        public String open() {
+            return "open";
+        }
+
+        @GET
+        @Path("overloaded")
+        @Produces(TEXT_PLAIN)
+        @SecuredBy("return true")
+        public String overloaded() {
+            return "overloaded";
+        }
+
+        @GET
+        @Path("overloaded/{id}")
+        @Produces(TEXT_PLAIN)
+        @SecuredBy("return jwt == null;")
+        public String overloaded(@PathParam("id") final String id) {
+            return id;
+        }
+
+        @GET
+        @Path("policy")
+        @Produces(TEXT_PLAIN)
+        @SecuredBy(policy = "groups contains any('sub', 'admin') and claim('tenant') contains 'sub'")
+        public String policy() {
+            return "policy";
+        }
+
+        @GET
+        @Path("failing")
+        @Produces(TEXT_PLAIN)
+        @SecuredBy("return exists(jwt) && " +
+                "java.util.Optional.empty().orElseThrow(() -> new IllegalStateException(\"broken\")) != null")
+        public String failing() {
+            return "failing";
+        }
+
+        @GET
+        @Path("owned/{id}")
+        @Produces(TEXT_PLAIN)
+        @SecuredBy(value = "return exists(jwt) && id.startsWith(\"mine-\")", bindParameters = true)
+        public String owned(@PathParam("id") final String id) {
+            return id;
+        }
+
+        @GET
+        @Path("async/stage")
+        @Produces(TEXT_PLAIN)
+        @AsyncSecuredBy("final boolean exists = exists(jwt);\n" +
+                "return CompletableFuture.supplyAsync(() -> exists);")
+        public CompletionStage<String> stage() { // can run in the pool completing the decision, with a request scope
+            return CompletableFuture.completedFuture(requestValue.get());
+        }
+
+        @GET
+        @Path("async/blocking")
+        @Produces(TEXT_PLAIN)
+        @AsyncSecuredBy(value = "final boolean exists = exists(jwt);\n" +
+                "return CompletableFuture.supplyAsync(() -> exists);", timeout = 5_000)
+        public String blocking() {
+            return "blocking";
+        }
+    }
+
+    @SecuredBy("return exists(jwt)")
+    public abstract static class SecuredBase {
+    }
+
+    @ApplicationScoped
+    @Path("SecuredByInterceptorTest/fused")
+    public static class FusedEndpoint extends SecuredBase {
+        @GET
+        @Path("method")
+        @Produces(TEXT_PLAIN)
+        @SecuredBy("return true")
+        public String method() {
+            return "method";
+        }
+
+        @GET
+        @Path("type")
+        @Produces(TEXT_PLAIN)
+        public String type() {
+            return "type";
+        }
+    }
+
+    public abstract static class InheritedBase {
+        @GET
+        @Produces(TEXT_PLAIN)
+        public String inherited() {
+            return "inherited";
+        }
+    }
+
+    @ApplicationScoped
+    @Path("SecuredByInterceptorTest/deny")
+    @SecuredBy("return jwt == null;")
+    public static class Deny extends InheritedBase {
+    }
+
+    @ApplicationScoped
+    @Path("SecuredByInterceptorTest/allow")
+    @SecuredBy("return jwt != null;")
+    public static class Allow extends InheritedBase {
+    }
+
+    public abstract static class DeniedBase {
+        @GET
+        @Path("denied")
+        @Produces(TEXT_PLAIN)
+        @SecuredBy("return jwt == null;")
+        public String denied() {
+            return "denied";
+        }
+    }
+
+    @ApplicationScoped
+    @Path("SecuredByInterceptorTest/mixed")
+    public static class Mixed extends DeniedBase {
+        @GET
+        @Path("open")
+        @Produces(TEXT_PLAIN)
+        @SecuredBy("return true")
+        public String open() {
+            return "open";
+        }
     }
 }
@@ -0,0 +1,129 @@
+package com.github.rmannibucau.jel.mp.jwt.impl.cache;
+
+import org.eclipse.microprofile.jwt.Claims;
+import org.eclipse.microprofile.jwt.JsonWebToken;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CachingEvaluatorTest {
+    private final AtomicInteger evaluations = new AtomicInteger();
+
+    @Test
+    void cachePerToken() {
+        final var evaluator = new CachingEvaluator(
+                jwt -> evaluations.incrementAndGet() > 0 && "admin".equals(jwt.getClaim(Claims.sub.name())),
+                60_000, new DecisionCache(100, 4), null);
+        final var exp = System.currentTimeMillis() / 1000 + 3600;
+        final var admin = token(Map.of(Claims.jti.name(), "1", Claims.sub.name(), "admin", Claims.exp.name(), exp));
+        final var user = token(Map.of(Claims.jti.name(), "2", Claims.sub.name(), "user", Claims.exp.name(), exp));
+        for (int i = 0; i < 3; i++) {
+            assertTrue(evaluator.test(admin));
+            assertFalse(evaluator.test(user));
+        }
+        assertEquals(2, evaluations.get());
+    }
+
+    @Test
+    void jtiIsScopedByIssuer() {
+        final var evaluator = new CachingEvaluator(
+                jwt -> evaluations.incrementAndGet() > 0 && "trusted".equals(jwt.getClaim(Claims.iss.name())),
+                60_000, new DecisionCache(100, 4), null);
+        final var trusted = token(Map.of(Claims.jti.name(), "1", Claims.iss.name(), "trusted"));
+        final var other = token(Map.of(Claims.jti.name(), "1", Claims.iss.name(), "other"));
+        assertTrue(evaluator.test(trusted));
+        assertFalse(evaluator.test(other));
+        assertTrue(evaluator.test(trusted));
+        assertEquals(2, evaluations.get());
+    }
+
+    @Test
+    void neverOutliveTokenExpiration() {
+        final var evaluator = new CachingEvaluator(
+                jwt -> evaluations.incrementAndGet() > 0, 60_000, new DecisionCache(100, 4), null);
+        final var expired = token(Map.of(
+                Claims.jti.name(), "1", Claims.exp.name(), System.currentTimeMillis() / 1000 - 1));
+        assertTrue(evaluator.test(expired));
+        assertTrue(evaluator.test(expired));
+        assertEquals(2, evaluations.get());
+    }
+
+    @Test
+    void rawTokenWhenNoId() {
+        final var evaluator = new CachingEvaluator(
+                jwt -> evaluations.incrementAndGet() > 0, 60_000, new DecisionCache(100, 4), null);
+        final var token = token(Map.of(Claims.raw_token.name(), "header.payload.signature"));
+        assertTrue(evaluator.test(token));
+        assertTrue(evaluator.test(token));
+        assertEquals(1, evaluations.get());
+    }
+
+    @Test
+    void rawTokenIsNotKept() {
+        final var cache = new DecisionCache(100, 4) {
+            @Override
+            public void put(final Object evaluator, final String token, final boolean allowed, final long expiresAt) {
+                assertFalse(token.contains("signature"), token);
+                super.put(evaluator, token, allowed, expiresAt);
+            }
+        };
+        final var evaluator = new CachingEvaluator(jwt -> evaluations.incrementAndGet() > 0, 60_000, cache, null);
+        final var token = token(Map.of(Claims.raw_token.name(), "header.payload.signature"));
+        assertTrue(evaluator.test(token));
+        assertTrue(evaluator.test(token));
+        assertTrue(evaluator.test(token(Map.of(Claims.raw_token.name(), "header.payload.signatur3"))));
+        assertEquals(2, evaluations.get());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void sharedBetweenEvaluators() {
+        final var cache = new DecisionCache(100, 4);
+        final var allowing = new CachingEvaluator(jwt -> true, 60_000, cache, null);
+        final var denying = new CachingEvaluator(jwt -> false, 60_000, cache, null);
+        final var token = token(Map.of(Claims.jti.name(), "1"));
+        for (int i = 0; i < 2; i++) {
+            assertTrue(allowing.test(token));
+            assertFalse(denying.test(token));
+        }
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void bounded() {
+        final var cache = new DecisionCache(16, 4);
+        final var expiresAt = System.currentTimeMillis() + 60_000;
+        final var evaluator = new Object();
+        for (int i = 0; i < 100; i++) {
+            cache.put(i % 2 == 0 ? evaluator : this, Integer.toString(i), true, expiresAt);
+        }
+        assertTrue(cache.size() <= 16, () -> Integer.toString(cache.size()));
+        assertEquals(Boolean.TRUE, cache.get(this, "99", System.currentTimeMillis()));
+        assertNull(cache.get(evaluator, "99", System.currentTimeMillis()));
+        assertNull(cache.get(this, "99", expiresAt));
+    }
+
+    private JsonWebToken token(final Map<String, Object> claims) {
+        return JsonWebToken.class.cast(Proxy.newProxyInstance(
+                Thread.currentThread().getContextClassLoader(), new Class<?>[]{JsonWebToken.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getClaim":
+                            return claims.get(String.valueOf(args[0]));
+                        case "getRawToken":
+                            return claims.get(Claims.raw_token.name());
+                        case "getClaimNames":
+                            return claims.keySet();
+                        default:
+                            return null;
+                    }
+                }));
+    }
+}
@@ -0,0 +1,101 @@
+package com.github.rmannibucau.jel.mp.jwt.impl.metrics;
+
+import com.github.rmannibucau.jel.api.parameters.ParametersPredicate;
+import org.eclipse.microprofile.jwt.JsonWebToken;
+import org.junit.jupiter.api.Test;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Proxy;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SecuredByMetricsTest {
+    @Test
+    void jmx() throws Exception {
+        final var server = ManagementFactory.getPlatformMBeanServer();
+        final var method = Secured.class.getMethod("call");
+        final var name = name(Secured.class);
+        try (final var metrics = SecuredByMetrics.jmx()) {
+            final Predicate<JsonWebToken> evaluator = metrics.wrap(Secured.class, method, jwt -> jwt != null);
+            // a bean inheriting the method has its own evaluator so its own metrics
+            final Predicate<JsonWebToken> inherited = metrics.wrap(Inheriting.class, method, jwt -> jwt == null);
+            assertNotSame(evaluator, inherited);
+            assertTrue(inherited.test(null));
+            assertEquals(1L, server.getAttribute(name(Inheriting.class), "Invocations"));
+
+            assertFalse(evaluator.test(null));
+            for (int i = 0; i < 9; i++) {
+                assertTrue(evaluator.test(JsonWebToken.class.cast(Proxy.newProxyInstance(
+                        Thread.currentThread().getContextClassLoader(), new Class<?>[]{JsonWebToken.class},
+                        (proxy, m, args) -> null))));
+            }
+
+            assertEquals(10L, server.getAttribute(name, "Invocations"));
+            assertEquals(1L, server.getAttribute(name, "Denials"));
+            assertTrue(Long.class.cast(server.getAttribute(name, "Latency99thPercentile")) > 0);
+        }
+        assertFalse(server.isRegistered(name));
+    }
+
+    @Test
+    void keepsEvaluatorFlavor() throws Exception {
+        try (final var metrics = new SecuredByMetrics(new MetricsExporter() {
+            @Override
+            public void export(final String name, final MeteredEvaluator evaluator) {
+                // no-op
+            }
+
+            @Override
+            public void close() {
+                // no-op
+            }
+        })) {
+            // evaluators using the parameters are not predicates, metrics must not change it
+            // the same method is used for both flavors, each evaluator keeps its own wrapper
+            final var method = SecuredByMetricsTest.class.getDeclaredMethod("jmx");
+            final Predicate<JsonWebToken> plain = jwt -> true;
+            assertFalse(metrics.wrap(SecuredByMetricsTest.class, method, plain) instanceof ParametersPredicate);
+
+            final ParametersPredicate<JsonWebToken> bound = (jwt, parameters) -> parameters.length == 1;
+            final Object parameters = metrics.wrap(SecuredByMetricsTest.class, method, bound);
+            assertFalse(parameters instanceof Predicate);
+            assertTrue(ParametersPredicate.class.cast(parameters).test(null, new Object[]{"p"}));
+            assertEquals(1, MeteredEvaluator.class.cast(parameters).getInvocations());
+        }
+    }
+
+    @Test
+    void histogram() {
+        final var histogram = new LatencyHistogram();
+        for (int i = 0; i < 99; i++) {
+            histogram.record(100); // [64, 128)
+        }
+        histogram.record(5_000); // [4096, 8192)
+        assertEquals(100, histogram.count());
+        assertEquals(127, histogram.percentile(.5));
+        assertEquals(127, histogram.percentile(.99));
+        assertEquals(8191, histogram.percentile(1));
+        assertEquals(149, histogram.mean());
+        assertEquals(99, histogram.counts()[6]);
+    }
+
+    private static ObjectName name(final Class<?> type) throws MalformedObjectNameException {
+        return new ObjectName("com.github.rmannibucau.jel:type=SecuredBy,name=" + ObjectName.quote(
+                "com.github.rmannibucau.jel.mp.jwt.api.SecuredBy:" + type.getName() + "#call()"));
+    }
+
+    public static class Secured {
+        public void call() {
+            // no-op
+        }
+    }
+
+    public static class Inheriting extends Secured {
+    }
+}
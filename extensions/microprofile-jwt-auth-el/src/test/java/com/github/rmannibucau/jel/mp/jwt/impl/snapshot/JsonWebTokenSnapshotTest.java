@@ -0,0 +1,72 @@
+package com.github.rmannibucau.jel.mp.jwt.impl.snapshot;
+
+import org.eclipse.microprofile.jwt.Claims;
+import org.eclipse.microprofile.jwt.JsonWebToken;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JsonWebTokenSnapshotTest {
+    private final Map<String, Integer> calls = new HashMap<>();
+
+    @Test
+    void resolveOnce() {
+        final var snapshot = new JsonWebTokenSnapshot(token(Map.of(
+                Claims.sub.name(), "admin", Claims.exp.name(), 1234L, "tenant", "x")));
+        for (int i = 0; i < 3; i++) {
+            assertEquals("admin", snapshot.getSubject());
+            assertEquals("x", snapshot.getClaim("tenant"));
+            assertNull(snapshot.getClaim("missing"));
+            assertEquals(1234L, snapshot.getExpirationTime());
+            assertTrue(snapshot.getClaimNames().contains("tenant"));
+        }
+        assertEquals(Map.of(
+                "getSubject", 1, "getClaim:tenant", 1, "getClaim:missing", 1,
+                "getExpirationTime", 1, "getClaimNames", 1), calls);
+    }
+
+    @Test
+    void internedGroups() {
+        final var snapshot = new JsonWebTokenSnapshot(token(Map.of(
+                Claims.groups.name(), Set.of(new String("admin".toCharArray()), new String("ops".toCharArray())))));
+        final var groups = snapshot.getGroups();
+        assertEquals(Set.of("admin", "ops"), groups);
+        assertSame("admin", groups.stream().filter("admin"::equals).findFirst().orElseThrow());
+        assertSame(groups, snapshot.getGroups());
+        assertEquals(Map.of("getGroups", 1), calls);
+    }
+
+    private JsonWebToken token(final Map<String, Object> claims) {
+        return JsonWebToken.class.cast(Proxy.newProxyInstance(
+                Thread.currentThread().getContextClassLoader(), new Class<?>[]{JsonWebToken.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getClaim":
+                            calls.merge(method.getName() + ':' + args[0], 1, Integer::sum);
+                            return claims.get(String.valueOf(args[0]));
+                        case "getSubject":
+                            calls.merge(method.getName(), 1, Integer::sum);
+                            return claims.get(Claims.sub.name());
+                        case "getGroups":
+                            calls.merge(method.getName(), 1, Integer::sum);
+                            return claims.get(Claims.groups.name());
+                        case "getExpirationTime":
+                            calls.merge(method.getName(), 1, Integer::sum);
+                            return claims.get(Claims.exp.name());
+                        case "getClaimNames":
+                            calls.merge(method.getName(), 1, Integer::sum);
+                            return claims.keySet();
+                        default:
+                            return null;
+                    }
+                }));
+    }
+}
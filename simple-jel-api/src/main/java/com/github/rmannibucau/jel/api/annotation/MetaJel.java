@@ -24,18 +24,38 @@ public @interface MetaJel {
      */
     String evaluatorMethodNamePattern() default "${class}$${method}$SimpleJelEvaluator";
 
+    /**
+     * @return if not empty, the evaluators are generated as methods of aggregate classes instead of one class
+     * per element, {@code ${package}} being the package of the element and {@code ${marker}} the simple name of
+     * the annotation (for example {@code ${package}.${marker}SimpleJelEvaluators} for one class per package
+     * or {@code com.company.SecurityEvaluators} for a single class). Aggregated evaluators are only reachable
+     * through the registry, it is ignored when the registry is skipped, with {@link #batch()},
+     * {@link #bindParameters()}, for elements binding parameters and for policies.
+     */
+    String aggregateClassNamePattern() default "";
+
     /**
      * @return the annotation member containing the expression.
      */
     String expressionElementName() default "value";
 
+    /**
+     * @return the annotation member containing an optional policy, if set and not empty on an element it is used
+     * instead of the expression. A policy is a compact syntax for contexts exposing {@code getGroups()} and
+     * {@code getClaim(String)} (like a {@code JsonWebToken}), for example
+     * {@code groups contains any('admin', 'ops') and claim('tenant') == 'x'}, compiled to Java at build time.
+     */
+    String policyElementName() default "";
+
     /**
      * @return the name of the context for the expression.
      */
     String contextVariableName() default "context";
 
     /**
-     * @return some additional methods/helpers to add to evaluator impl.
+     * @return some additional methods/helpers to add to evaluator impl. They are generated once per marker in an
+     * abstract class extended by the evaluators (private members become protected) unless they declare a mutable
+     * static field or the registry is skipped.
      */
     String customMethods() default "";
 
@@ -49,6 +69,14 @@ public @interface MetaJel {
      */
     String returnType() default "";
 
+    /**
+     * @return the functional interface the evaluator implements, it must have a single abstract method taking the context.
+     * If not set it is deduced from the return type: {@code java.util.function.Predicate} for {@code boolean},
+     * {@code java.util.function.ToIntFunction} for {@code int}, {@code java.util.function.ToLongFunction} for {@code long},
+     * {@code java.util.function.ToDoubleFunction} for {@code double} and {@code java.util.function.Function} otherwise.
+     */
+    String evaluatorInterface() default "";
+
     /**
      * @return list of annotations to put on the evaluator.
      */
@@ -58,4 +86,48 @@ public @interface MetaJel {
      * @return list of forced imports to put on the evaluator.
      */
     String[] imports() default {};
+
+    /**
+     * @return if {@code true} elements with the same expression share a single generated evaluator.
+     * It is named after the first element using it and the other elements are only reachable through the registry.
+     * Ignored when the registry is skipped.
+     */
+    boolean deduplicate() default false;
+
+    /**
+     * @return if {@code true} evaluators also implement {@code BatchPredicate} (boolean return type)
+     * or {@code BatchFunction} (object return type) to evaluate arrays of contexts in a single call,
+     * see {@code BatchEvaluation}. Only supported with the default evaluator interfaces.
+     */
+    boolean batch() default false;
+
+    /**
+     * @return if {@code true} the parameters of annotated methods are variables of the expression (with their
+     * declared type), the evaluators of methods whose expression uses some of them then implement
+     * {@code ParametersPredicate} (boolean return type) or {@code ParametersFunction} (object return type) taking
+     * the context and the parameter values instead of the evaluator interface. Only the parameters the expression
+     * references are bound, a parameter named like the context is not. Only supported with the default evaluator
+     * interfaces and not combinable with {@link #batch()}.
+     */
+    boolean bindParameters() default false;
+
+    /**
+     * @return the annotation member (a {@code boolean}) enabling {@link #bindParameters()} per element when the
+     * marker does not enable it for all of them, ignored if blank.
+     */
+    String bindParametersElementName() default "";
+
+    /**
+     * @return if {@code true} evaluators record a JFR {@code EvaluationEvent} (registry key of the element, result
+     * and duration) for each evaluation. The event is disabled by default and the evaluation only checks it is
+     * enabled when JFR does not record it. Evaluators are then not aggregated nor deduplicated.
+     */
+    boolean recordEvents() default false;
+
+    /**
+     * @return if {@code true} the evaluators of methods declared in a type carrying the marker (directly or inherited
+     * when the marker is {@code @Inherited}) evaluate the type expression then the method one in a single
+     * short-circuiting evaluator, so only the method evaluator is needed. Only supported with boolean evaluators.
+     */
+    boolean fuseClassExpression() default false;
 }
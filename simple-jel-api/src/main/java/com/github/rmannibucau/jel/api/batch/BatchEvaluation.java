@@ -0,0 +1,151 @@
+package com.github.rmannibucau.jel.api.batch;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Evaluates batch evaluators over large inputs, inputs bigger than the threshold are split
+ * over the common {@link ForkJoinPool}.
+ */
+public final class BatchEvaluation {
+    /**
+     * System property overriding the default threshold.
+     */
+    public static final String THRESHOLD = "simplejel.batch.threshold";
+
+    private static final int DEFAULT_THRESHOLD = Integer.getInteger(THRESHOLD, 8192);
+
+    private BatchEvaluation() {
+        // no-op
+    }
+
+    /**
+     * @param evaluator the evaluator.
+     * @param in        the contexts.
+     * @param <T>       the context type.
+     * @return the result of each context (same index).
+     */
+    public static <T> boolean[] testAll(final BatchPredicate<T> evaluator, final T[] in) {
+        return testAll(evaluator, in, DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * @param evaluator the evaluator.
+     * @param in        the contexts.
+     * @param threshold the maximum number of contexts evaluated by a single task.
+     * @param <T>       the context type.
+     * @return the result of each context (same index).
+     */
+    public static <T> boolean[] testAll(final BatchPredicate<T> evaluator, final T[] in, final int threshold) {
+        final var out = new boolean[in.length];
+        run((from, to) -> evaluator.testAll(in, from, to, out), in.length, threshold);
+        return out;
+    }
+
+    /**
+     * @param evaluator the evaluator.
+     * @param in        the contexts.
+     * @param threshold the maximum number of contexts evaluated by a single task.
+     * @param <T>       the context type.
+     * @return the indices of the matching contexts.
+     */
+    public static <T> BitSet matches(final BatchPredicate<T> evaluator, final T[] in, final int threshold) {
+        final var results = testAll(evaluator, in, threshold);
+        final var matches = new BitSet(results.length);
+        for (int i = 0; i < results.length; i++) {
+            if (results[i]) {
+                matches.set(i);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * @param evaluator the evaluator.
+     * @param in        the contexts.
+     * @param <T>       the context type.
+     * @return the matching contexts in their original order.
+     */
+    public static <T> List<T> filter(final BatchPredicate<T> evaluator, final T[] in) {
+        return filter(evaluator, in, DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * @param evaluator the evaluator.
+     * @param in        the contexts.
+     * @param threshold the maximum number of contexts evaluated by a single task.
+     * @param <T>       the context type.
+     * @return the matching contexts in their original order.
+     */
+    public static <T> List<T> filter(final BatchPredicate<T> evaluator, final T[] in, final int threshold) {
+        final var results = testAll(evaluator, in, threshold);
+        final var matching = new ArrayList<T>();
+        for (int i = 0; i < results.length; i++) {
+            if (results[i]) {
+                matching.add(in[i]);
+            }
+        }
+        return matching;
+    }
+
+    /**
+     * @param evaluator the evaluator.
+     * @param in        the contexts.
+     * @param out       where to store the results, at least as big as the input.
+     * @param threshold the maximum number of contexts evaluated by a single task.
+     * @param <T>       the context type.
+     * @param <R>       the result type.
+     * @return {@code out}.
+     */
+    public static <T, R> R[] applyAll(final BatchFunction<T, R> evaluator, final T[] in, final R[] out,
+                                      final int threshold) {
+        if (out.length < in.length) {
+            throw new IllegalArgumentException("Output too small: " + out.length + " < " + in.length);
+        }
+        run((from, to) -> evaluator.applyAll(in, from, to, out), in.length, threshold);
+        return out;
+    }
+
+    private static void run(final Range range, final int length, final int threshold) {
+        if (threshold <= 0) {
+            throw new IllegalArgumentException("Invalid threshold: " + threshold);
+        }
+        if (length <= threshold) {
+            range.run(0, length);
+        } else {
+            ForkJoinPool.commonPool().invoke(new Split(range, 0, length, threshold));
+        }
+    }
+
+    private interface Range {
+        void run(int from, int to);
+    }
+
+    // each task writes a distinct slice of the output, the join publishes the results
+    private static class Split extends RecursiveAction {
+        private final Range range;
+        private final int from;
+        private final int to;
+        private final int threshold;
+
+        private Split(final Range range, final int from, final int to, final int threshold) {
+            this.range = range;
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= threshold) {
+                range.run(from, to);
+                return;
+            }
+            final int middle = (from + to) >>> 1;
+            invokeAll(new Split(range, from, middle, threshold), new Split(range, middle, to, threshold));
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.github.rmannibucau.jel.api.batch;
+
+import java.util.function.Function;
+
+/**
+ * A function evaluating a range of contexts at once, generated evaluators override {@link #applyAll}
+ * with a loop calling the expression directly (no interface dispatch per element).
+ *
+ * @param <T> the context type.
+ * @param <R> the result type.
+ */
+public interface BatchFunction<T, R> extends Function<T, R> {
+    /**
+     * @param in   the contexts.
+     * @param from the first index to evaluate (inclusive).
+     * @param to   the last index to evaluate (exclusive).
+     * @param out  the results, {@code out[i]} is the result of {@code in[i]}.
+     */
+    default void applyAll(final T[] in, final int from, final int to, final R[] out) {
+        for (int i = from; i < to; i++) {
+            out[i] = apply(in[i]);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.github.rmannibucau.jel.api.batch;
+
+import java.util.function.Predicate;
+
+/**
+ * A predicate evaluating a range of contexts at once, generated evaluators override {@link #testAll}
+ * with a loop calling the expression directly (no interface dispatch per element).
+ *
+ * @param <T> the context type.
+ */
+public interface BatchPredicate<T> extends Predicate<T> {
+    /**
+     * @param in   the contexts.
+     * @param from the first index to evaluate (inclusive).
+     * @param to   the last index to evaluate (exclusive).
+     * @param out  the results, {@code out[i]} is the result of {@code in[i]}.
+     */
+    default void testAll(final T[] in, final int from, final int to, final boolean[] out) {
+        for (int i = from; i < to; i++) {
+            out[i] = test(in[i]);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.github.rmannibucau.jel.api.event;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event recorded by the evaluators of markers with {@code recordEvents}, its duration is the evaluation time.
+ * It is disabled by default, enable {@value #NAME} in the recording settings to get it.
+ */
+@Name(EvaluationEvent.NAME)
+@Label("Expression Evaluation")
+@Category("Simple JEL")
+@Description("Evaluation of a generated evaluator.")
+@Enabled(false)
+@StackTrace(false)
+public class EvaluationEvent extends Event {
+    /**
+     * The name of the event type.
+     */
+    public static final String NAME = "com.github.rmannibucau.jel.Evaluation";
+
+    @Label("Key")
+    @Description("The registry key of the annotated element.")
+    private String key;
+
+    @Label("Result")
+    private String result;
+
+    /**
+     * Ends the event and commits it if it passes the recording settings (threshold).
+     *
+     * @param key    the registry key of the annotated element.
+     * @param result the result of the evaluation.
+     */
+    public void complete(final String key, final Object result) {
+        end();
+        if (shouldCommit()) {
+            this.key = key;
+            this.result = String.valueOf(result);
+            commit();
+        }
+    }
+}
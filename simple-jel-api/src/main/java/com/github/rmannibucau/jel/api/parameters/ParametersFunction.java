@@ -0,0 +1,19 @@
+package com.github.rmannibucau.jel.api.parameters;
+
+/**
+ * A function whose expression uses the parameters of the annotated method, generated evaluators
+ * cast the values to the declared parameter types and evaluate the expression without any reflection.
+ * It is not a {@link java.util.function.Function} since the expression can't be evaluated without the parameters.
+ *
+ * @param <T> the context type.
+ * @param <R> the result type.
+ */
+@FunctionalInterface
+public interface ParametersFunction<T, R> {
+    /**
+     * @param context    the context.
+     * @param parameters the parameter values in declaration order.
+     * @return the result of the expression.
+     */
+    R apply(T context, Object[] parameters);
+}
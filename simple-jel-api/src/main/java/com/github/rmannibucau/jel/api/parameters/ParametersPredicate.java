@@ -0,0 +1,18 @@
+package com.github.rmannibucau.jel.api.parameters;
+
+/**
+ * A predicate whose expression uses the parameters of the annotated method, generated evaluators
+ * cast the values to the declared parameter types and evaluate the expression without any reflection.
+ * It is not a {@link java.util.function.Predicate} since the expression can't be evaluated without the parameters.
+ *
+ * @param <T> the context type.
+ */
+@FunctionalInterface
+public interface ParametersPredicate<T> {
+    /**
+     * @param context    the context.
+     * @param parameters the parameter values in declaration order.
+     * @return the result of the expression.
+     */
+    boolean test(T context, Object[] parameters);
+}
@@ -0,0 +1,40 @@
+package com.github.rmannibucau.jel.api.registry;
+
+import java.lang.invoke.MethodHandle;
+import java.util.Collection;
+
+/**
+ * Generated by the annotation processor (one per module) and registered as a {@link java.util.ServiceLoader} provider.
+ * It enables to instantiate evaluators without any reflection, see {@link Evaluators} for the runtime lookup.
+ */
+public interface EvaluatorRegistry {
+    /**
+     * @return the keys of the evaluators this registry can create,
+     * see {@link Evaluators#key(String, String, String, String...)}.
+     */
+    Collection<String> keys();
+
+    /**
+     * @param key the evaluator key.
+     * @return an evaluator instance or {@code null} if the key is not handled by this registry,
+     * stateless evaluators are shared.
+     */
+    Object create(String key);
+
+    /**
+     * @param key the evaluator key.
+     * @return a handle on the static method evaluating the expression (taking the context and returning the value)
+     * or {@code null} if the evaluator is not stateless.
+     */
+    default MethodHandle handle(final String key) {
+        return null;
+    }
+
+    /**
+     * @param key the evaluator key.
+     * @return the value of the evaluator if its expression does not depend on the context, {@code null} otherwise.
+     */
+    default Object constant(final String key) {
+        return null;
+    }
+}
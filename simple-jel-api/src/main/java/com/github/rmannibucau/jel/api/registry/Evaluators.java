@@ -0,0 +1,107 @@
+package com.github.rmannibucau.jel.api.registry;
+
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.ServiceLoader;
+import java.util.stream.Stream;
+
+import static java.util.Optional.ofNullable;
+
+/**
+ * Merged view of all the {@link EvaluatorRegistry} visible from a classloader.
+ * It is intended to be created once per application and reused since it loads all registries.
+ */
+public final class Evaluators {
+    private final Map<String, EvaluatorRegistry> registries;
+
+    private Evaluators(final Map<String, EvaluatorRegistry> registries) {
+        this.registries = registries;
+    }
+
+    /**
+     * @return the keys of all the evaluators available.
+     */
+    public Collection<String> keys() {
+        return registries.keySet();
+    }
+
+    /**
+     * @param key the evaluator key, see {@link #key(String, String, String, String...)}.
+     * @param <T> the expected evaluator type.
+     * @return an evaluator instance if the key is known (shared for stateless evaluators).
+     */
+    public <T> Optional<T> create(final String key) {
+        return ofNullable(registries.get(key)).map(it -> (T) it.create(key));
+    }
+
+    /**
+     * Enables to bind the evaluation to a constant call site (a {@code static final} field for example)
+     * instead of calling the evaluator interface.
+     *
+     * @param key the evaluator key, see {@link #key(String, String, String, String...)}.
+     * @return a handle on the static evaluation method if the evaluator is stateless.
+     */
+    public Optional<MethodHandle> handle(final String key) {
+        return ofNullable(registries.get(key)).map(it -> it.handle(key));
+    }
+
+    /**
+     * @param key the evaluator key, see {@link #key(String, String, String, String...)}.
+     * @return the value of the evaluator if its expression does not depend on the context.
+     */
+    public Optional<Object> constant(final String key) {
+        return ofNullable(registries.get(key)).map(it -> it.constant(key));
+    }
+
+    /**
+     * @param loader the classloader to use to find the registries.
+     * @return the merged evaluators for this loader.
+     */
+    public static Evaluators of(final ClassLoader loader) {
+        final var registries = new HashMap<String, EvaluatorRegistry>();
+        for (final EvaluatorRegistry registry : ServiceLoader.load(EvaluatorRegistry.class, loader)) {
+            for (final String key : registry.keys()) {
+                registries.putIfAbsent(key, registry);
+            }
+        }
+        return new Evaluators(Map.copyOf(registries));
+    }
+
+    /**
+     * @param marker the annotation marked with {@code @MetaJel}.
+     * @param type   the annotated class.
+     * @return the key of the class evaluator.
+     */
+    public static String key(final Class<? extends Annotation> marker, final Class<?> type) {
+        return key(marker.getName(), type.getName(), null);
+    }
+
+    /**
+     * @param marker the annotation marked with {@code @MetaJel}.
+     * @param method the annotated method.
+     * @return the key of the method evaluator.
+     */
+    public static String key(final Class<? extends Annotation> marker, final Method method) {
+        return key(marker.getName(), method.getDeclaringClass().getName(), method.getName(),
+                Stream.of(method.getParameterTypes()).map(Class::getTypeName).toArray(String[]::new));
+    }
+
+    /**
+     * @param marker         the binary name of the annotation marked with {@code @MetaJel}.
+     * @param type           the binary name of the annotated class or of the class declaring the annotated method.
+     * @param method         the annotated method name or {@code null} for a class evaluator.
+     * @param parameterTypes the erased parameter types of the method (binary names, {@code []} suffix for arrays),
+     *                       they distinguish overloads.
+     * @return the key identifying the evaluator in the registries.
+     */
+    public static String key(final String marker, final String type, final String method,
+                             final String... parameterTypes) {
+        return marker + ':' + type +
+                (method == null ? "" : ('#' + method + '(' + String.join(",", parameterTypes) + ')'));
+    }
+}
@@ -0,0 +1,74 @@
+package com.github.rmannibucau.jel.benchmark;
+
+import com.github.rmannibucau.jel.api.batch.BatchEvaluation;
+import com.github.rmannibucau.jel.api.batch.BatchPredicate;
+import com.github.rmannibucau.jel.api.registry.Evaluators;
+import com.github.rmannibucau.jel.benchmark.model.Order;
+import com.github.rmannibucau.jel.benchmark.model.OrderRule;
+import com.github.rmannibucau.jel.benchmark.model.OrderRules;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Filters a large array of orders with a rule, per element through a stream or with the batch API.
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class BatchFilterBenchmark {
+    @Param("1000000")
+    private int size;
+
+    private Order[] orders;
+    private BatchPredicate<Order> rule;
+
+    @Setup
+    public void setup() throws NoSuchMethodException {
+        final var random = new Random(1234);
+        orders = new Order[size];
+        for (int i = 0; i < size; i++) {
+            orders[i] = new Order(random.nextInt(200), random.nextBoolean() ? "FR" : "US");
+        }
+        rule = Evaluators.of(Thread.currentThread().getContextClassLoader())
+                .<BatchPredicate<Order>>create(Evaluators.key(OrderRule.class, OrderRules.class.getMethod("discount")))
+                .orElseThrow(() -> new IllegalStateException("No generated evaluator"));
+    }
+
+    @Benchmark
+    public List<Order> stream() {
+        final Predicate<Order> predicate = rule;
+        return Arrays.stream(orders).filter(predicate).collect(toList());
+    }
+
+    @Benchmark
+    public boolean[] batch() {
+        final var out = new boolean[orders.length];
+        rule.testAll(orders, 0, orders.length, out);
+        return out;
+    }
+
+    @Benchmark
+    public List<Order> batchFilter() {
+        return BatchEvaluation.filter(rule, orders);
+    }
+}
@@ -0,0 +1,39 @@
+package com.github.rmannibucau.jel.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler (allocation rate per operation) and a JSON result file
+ * ({@code jmh-result.json} by default) so runs of different releases can be compared.
+ * Any JMH command line option can be passed and overrides these defaults.
+ */
+public final class BenchmarkRunner {
+    private BenchmarkRunner() {
+        // no-op
+    }
+
+    public static void main(final String... args) throws CommandLineOptionException, RunnerException {
+        final var commandLine = new CommandLineOptions(args);
+        if (commandLine.shouldHelp() || commandLine.shouldList()) { // delegate to the default main
+            try {
+                org.openjdk.jmh.Main.main(args);
+            } catch (final Exception e) {
+                throw new IllegalStateException(e);
+            }
+            return;
+        }
+        new Runner(new OptionsBuilder()
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(commandLine.getResultFormat().orElse(ResultFormatType.JSON))
+                .result(commandLine.getResult().orElse("jmh-result.json"))
+                .build())
+                .run();
+    }
+}
@@ -0,0 +1,85 @@
+package com.github.rmannibucau.jel.benchmark;
+
+import com.github.rmannibucau.jel.api.registry.Evaluators;
+import com.github.rmannibucau.jel.benchmark.model.Order;
+import com.github.rmannibucau.jel.benchmark.model.OrderRule;
+import com.github.rmannibucau.jel.benchmark.model.OrderRules;
+import jakarta.el.ELContext;
+import jakarta.el.ELManager;
+import jakarta.el.ELProcessor;
+import jakarta.el.ValueExpression;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Compares the generated evaluator of a rule (through its interface and its static method handle)
+ * with the Jakarta EL interpretation of the same rule.
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class ExpressionEvaluationBenchmark {
+    private static final String EL_EXPRESSION = "order.amount > 100 && order.country == 'FR'";
+
+    // a static final handle is a constant for the JIT, it is how a generated glue code would bind the evaluator
+    private static final MethodHandle HANDLE = Evaluators.of(ExpressionEvaluationBenchmark.class.getClassLoader())
+            .handle(Evaluators.key(OrderRule.class.getName(), OrderRules.class.getName(), "discount"))
+            .orElseThrow(() -> new IllegalStateException("No generated evaluator handle"));
+
+    private final Order order = new Order(150, "FR");
+
+    private Predicate<Order> generated;
+    private ELProcessor processor;
+    private ELContext elContext;
+    private ValueExpression compiled;
+
+    @Setup
+    public void setup() throws NoSuchMethodException {
+        generated = Evaluators.of(Thread.currentThread().getContextClassLoader())
+                .<Predicate<Order>>create(Evaluators.key(OrderRule.class, OrderRules.class.getMethod("discount")))
+                .orElseThrow(() -> new IllegalStateException("No generated evaluator"));
+
+        processor = new ELProcessor();
+        processor.defineBean("order", order);
+        elContext = processor.getELManager().getELContext();
+        compiled = ELManager.getExpressionFactory()
+                .createValueExpression(elContext, "${" + EL_EXPRESSION + "}", Boolean.class);
+    }
+
+    @Benchmark
+    public boolean generated() {
+        return generated.test(order);
+    }
+
+    @Benchmark
+    public boolean generatedHandle() throws Throwable {
+        return (boolean) HANDLE.invokeExact(order);
+    }
+
+    // expression parsed once, only the interpretation is measured
+    @Benchmark
+    public Object elCompiled() {
+        return compiled.getValue(elContext);
+    }
+
+    // what most runtime integrations do: evaluate the string each time (the parser caches the AST)
+    @Benchmark
+    public Object elEval() {
+        return processor.eval(EL_EXPRESSION);
+    }
+}
@@ -0,0 +1,151 @@
+package com.github.rmannibucau.jel.benchmark;
+
+import com.github.rmannibucau.jel.proc.SimpleJelAnnotationProcessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Compiles a synthetic source tree with and without the processor to track the overhead it adds to javac.
+ */
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class ProcessorCompilationBenchmark {
+    @Param("10000")
+    private int classes;
+
+    // one annotated method every x classes, others are plain classes the processor must skip cheaply
+    @Param("10")
+    private int annotatedRatio;
+
+    @Param({"none", "simple-jel"})
+    private String processor;
+
+    private Path sources;
+    private Path output;
+    private List<Path> sourceFiles;
+
+    @Setup(Level.Trial)
+    public void createSources() throws IOException {
+        sources = Files.createTempDirectory("simple-jel-benchmark-sources_");
+        final var markerPackage = Files.createDirectories(sources.resolve("bench"));
+        Files.writeString(markerPackage.resolve("Rule.java"), "" +
+                "package bench;\n" +
+                "\n" +
+                "import com.github.rmannibucau.jel.api.annotation.MetaJel;\n" +
+                "\n" +
+                "@MetaJel(contextType = \"java.lang.String\", returnType = \"boolean\")\n" +
+                "public @interface Rule {\n" +
+                "    String value();\n" +
+                "}\n", UTF_8);
+
+        sourceFiles = new ArrayList<>(classes + 1);
+        sourceFiles.add(markerPackage.resolve("Rule.java"));
+        for (int i = 0; i < classes; i++) {
+            final var pkg = Files.createDirectories(sources.resolve("bench/p" + (i % 100)));
+            final var file = pkg.resolve("Service" + i + ".java");
+            Files.writeString(file, "" +
+                    "package bench.p" + (i % 100) + ";\n" +
+                    "\n" +
+                    "public class Service" + i + " {\n" +
+                    "    private String name = \"service" + i + "\";\n" +
+                    "\n" +
+                    (i % annotatedRatio == 0 ? "    @bench.Rule(\"return context.length() > " + (i % 7) + "\")\n" : "") +
+                    "    public String call(final String in) {\n" +
+                    "        return name + in;\n" +
+                    "    }\n" +
+                    "\n" +
+                    "    @Override\n" +
+                    "    public String toString() {\n" +
+                    "        return name;\n" +
+                    "    }\n" +
+                    "}\n", UTF_8);
+            sourceFiles.add(file);
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void createOutput() throws IOException {
+        output = Files.createTempDirectory("simple-jel-benchmark-output_");
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteOutput() {
+        delete(output);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteSources() {
+        delete(sources);
+    }
+
+    @Benchmark
+    public boolean compile() throws IOException {
+        final var compiler = ToolProvider.getSystemJavaCompiler();
+        try (final StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, UTF_8)) {
+            final Iterable<? extends JavaFileObject> units = fileManager.getJavaFileObjectsFromPaths(sourceFiles);
+            final var options = new ArrayList<>(List.of(
+                    "-d", output.toString(),
+                    "-s", output.toString(),
+                    "-classpath", System.getProperty("java.class.path"),
+                    "-implicit:none"));
+            if ("none".equals(processor)) {
+                options.add("-proc:none");
+            }
+            final var task = compiler.getTask(null, fileManager, null, options, null, units);
+            if (!"none".equals(processor)) {
+                task.setProcessors(List.of(new SimpleJelAnnotationProcessor()));
+            }
+            if (!task.call()) {
+                throw new IllegalStateException("Compilation failed");
+            }
+            return true;
+        }
+    }
+
+    private static void delete(final Path root) {
+        if (root == null || !Files.exists(root)) {
+            return;
+        }
+        try (final Stream<Path> files = Files.walk(root)) {
+            files.sorted(Comparator.reverseOrder()).forEach(it -> {
+                try {
+                    Files.delete(it);
+                } catch (final IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.github.rmannibucau.jel.benchmark;
+
+import com.github.rmannibucau.jel.api.registry.Evaluators;
+import com.github.rmannibucau.jel.benchmark.model.SecuredService;
+import com.github.rmannibucau.jel.benchmark.model.StubInvocationContext;
+import com.github.rmannibucau.jel.benchmark.model.StubJsonWebToken;
+import com.github.rmannibucau.jel.mp.jwt.impl.EvaluatorFinder;
+import com.github.rmannibucau.jel.mp.jwt.impl.EvaluatorTable;
+import com.github.rmannibucau.jel.mp.jwt.impl.SecuredByInterceptor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the {@code SecuredBy} interceptor path without any container, injections are done by reflection.
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class SecuredByBenchmark {
+    private Evaluators evaluators;
+    private StubInvocationContext context;
+    private EvaluatorFinder finder;
+    private SecuredByInterceptor interceptor;
+
+    @Setup
+    public void setup() throws Exception {
+        evaluators = Evaluators.of(Thread.currentThread().getContextClassLoader());
+        context = new StubInvocationContext(new SecuredService(), SecuredService.class.getMethod("call"));
+
+        finder = newFinder(evaluators);
+        finder.lookupFor(context); // resolve it once, it is what deployment time resolution does
+
+        interceptor = new SecuredByInterceptor();
+        inject(interceptor, "evaluatorFinder", finder);
+        inject(interceptor, "token", new StubJsonWebToken("bench", Set.of("admin", "user")));
+    }
+
+    @Benchmark
+    public Object lookupHit() {
+        return finder.lookupFor(context);
+    }
+
+    // first call for a method unknown at deployment time
+    @Benchmark
+    public Object lookupMiss(final MissState miss) {
+        return miss.finder.lookupFor(context);
+    }
+
+    @Benchmark
+    public Object securedBy() throws Exception {
+        return interceptor.securedBy(context);
+    }
+
+    @State(Scope.Thread)
+    public static class MissState {
+        private EvaluatorFinder finder;
+
+        @Setup(Level.Invocation)
+        public void setup(final SecuredByBenchmark benchmark) throws Exception {
+            finder = newFinder(benchmark.evaluators);
+        }
+    }
+
+    private static EvaluatorFinder newFinder(final Evaluators evaluators) throws Exception {
+        final var finder = new EvaluatorFinder();
+        inject(finder, "table", new EvaluatorTable());
+        inject(finder, "parametersTable", new EvaluatorTable());
+        inject(finder, "evaluators", evaluators);
+        return finder;
+    }
+
+    private static void inject(final Object instance, final String name, final Object value) throws Exception {
+        final var field = instance.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(instance, value);
+    }
+}
@@ -0,0 +1,49 @@
+package com.github.rmannibucau.jel.benchmark;
+
+import com.github.rmannibucau.jel.proc.EvaluatorTemplate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the evaluator source generation, built as a string or streamed to the writer of the filer.
+ * The allocations per operation show the gain of the streaming flavor.
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class SourceGenerationBenchmark {
+    private static final String NAME = "com.company.app.service.OrderService$discount$SimpleJelEvaluator";
+    private static final String EXPRESSION = "order.getTotal() > 100 && order.getCustomer().isPremium()";
+
+    private final EvaluatorTemplate template = new EvaluatorTemplate(
+            "java.util.function.Predicate", "Predicate<Order>", "test", "boolean", "Order",
+            "order", "com.company.app.model.Order", "", "", List.of(), List.of());
+
+    @Benchmark
+    public String generate() {
+        return template.generate(NAME, EXPRESSION);
+    }
+
+    @Benchmark
+    public void write() throws IOException {
+        try (final Writer writer = Writer.nullWriter()) {
+            template.write(NAME, EXPRESSION, "", Map.of(), writer);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.github.rmannibucau.jel.benchmark;
+
+import com.github.rmannibucau.jel.proc.Substitutor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Throughput of the evaluator name computation done for each annotated element.
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class SubstitutorBenchmark {
+    private final Function<String, String> placeholders = key -> {
+        switch (key) {
+            case "class":
+                return "com.company.app.service.OrderService";
+            case "method":
+                return "discount";
+            default:
+                return null;
+        }
+    };
+    private final Substitutor substitutor = new Substitutor(placeholders);
+    private final Substitutor.Template classTemplate = Substitutor.compile("${class}$SimpleJelEvaluator");
+    private final Substitutor.Template methodTemplate = Substitutor.compile("${class}$${method}$SimpleJelEvaluator");
+
+    @Benchmark
+    public String classPattern() {
+        return substitutor.replace("${class}$SimpleJelEvaluator");
+    }
+
+    @Benchmark
+    public String methodPattern() {
+        return substitutor.replace("${class}$${method}$SimpleJelEvaluator");
+    }
+
+    @Benchmark
+    public String compiledClassPattern() {
+        return classTemplate.replace(placeholders);
+    }
+
+    @Benchmark
+    public String compiledMethodPattern() {
+        return methodTemplate.replace(placeholders);
+    }
+}
@@ -0,0 +1,19 @@
+package com.github.rmannibucau.jel.benchmark.model;
+
+public class Order {
+    private final int amount;
+    private final String country;
+
+    public Order(final int amount, final String country) {
+        this.amount = amount;
+        this.country = country;
+    }
+
+    public int getAmount() {
+        return amount;
+    }
+
+    public String getCountry() {
+        return country;
+    }
+}
@@ -0,0 +1,18 @@
+package com.github.rmannibucau.jel.benchmark.model;
+
+import com.github.rmannibucau.jel.api.annotation.MetaJel;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+@Retention(RUNTIME)
+@Target(METHOD)
+@MetaJel(
+        contextVariableName = "order", contextType = "com.github.rmannibucau.jel.benchmark.model.Order",
+        returnType = "boolean", batch = true)
+public @interface OrderRule {
+    String value();
+}
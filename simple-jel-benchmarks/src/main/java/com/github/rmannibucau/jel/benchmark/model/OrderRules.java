@@ -0,0 +1,9 @@
+package com.github.rmannibucau.jel.benchmark.model;
+
+public class OrderRules {
+    // same rule as the EL one of ExpressionEvaluationBenchmark
+    @OrderRule("return order.getAmount() > 100 && \"FR\".equals(order.getCountry());")
+    public void discount() {
+        // no-op
+    }
+}
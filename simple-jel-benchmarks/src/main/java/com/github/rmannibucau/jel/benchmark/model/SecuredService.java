@@ -0,0 +1,15 @@
+package com.github.rmannibucau.jel.benchmark.model;
+
+import com.github.rmannibucau.jel.mp.jwt.api.SecuredBy;
+
+public class SecuredService {
+    @SecuredBy("return jwt.getGroups().contains(\"admin\");")
+    public String call() {
+        return "called";
+    }
+
+    @SecuredBy("return jwt.getGroups().contains(\"user\");")
+    public String other() {
+        return "other";
+    }
+}
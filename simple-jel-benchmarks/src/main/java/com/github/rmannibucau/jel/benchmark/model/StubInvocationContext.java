@@ -0,0 +1,59 @@
+package com.github.rmannibucau.jel.benchmark.model;
+
+import javax.interceptor.InvocationContext;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.Map;
+
+// mimics what the container passes to the interceptor without the container overhead
+public class StubInvocationContext implements InvocationContext {
+    private static final Object[] NO_PARAMETER = new Object[0];
+
+    private final Object target;
+    private final Method method;
+
+    public StubInvocationContext(final Object target, final Method method) {
+        this.target = target;
+        this.method = method;
+    }
+
+    @Override
+    public Object getTarget() {
+        return target;
+    }
+
+    @Override
+    public Object getTimer() {
+        return null;
+    }
+
+    @Override
+    public Method getMethod() {
+        return method;
+    }
+
+    @Override
+    public Constructor<?> getConstructor() {
+        return null;
+    }
+
+    @Override
+    public Object[] getParameters() {
+        return NO_PARAMETER;
+    }
+
+    @Override
+    public void setParameters(final Object[] params) {
+        // no-op
+    }
+
+    @Override
+    public Map<String, Object> getContextData() {
+        return Map.of();
+    }
+
+    @Override
+    public Object proceed() {
+        return target; // the business method is not part of the measured overhead
+    }
+}
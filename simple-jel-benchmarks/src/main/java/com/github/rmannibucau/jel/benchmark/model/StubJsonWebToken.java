@@ -0,0 +1,30 @@
+package com.github.rmannibucau.jel.benchmark.model;
+
+import org.eclipse.microprofile.jwt.Claims;
+import org.eclipse.microprofile.jwt.JsonWebToken;
+
+import java.util.Map;
+import java.util.Set;
+
+public class StubJsonWebToken implements JsonWebToken {
+    private final Map<String, Object> claims;
+
+    public StubJsonWebToken(final String subject, final Set<String> groups) {
+        this.claims = Map.of(Claims.sub.name(), subject, Claims.groups.name(), groups);
+    }
+
+    @Override
+    public String getName() {
+        return getSubject();
+    }
+
+    @Override
+    public Set<String> getClaimNames() {
+        return claims.keySet();
+    }
+
+    @Override
+    public <T> T getClaim(final String claimName) {
+        return (T) claims.get(claimName);
+    }
+}
@@ -0,0 +1,32 @@
+package com.github.rmannibucau.jel.proc;
+
+import javax.lang.model.element.Element;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// the evaluators of a marker generated in a single class, written with the registry
+class Aggregate {
+    final Marker marker;
+    final List<String> expressions = new ArrayList<>();
+    final List<Element> elements = new ArrayList<>();
+    private final Map<String, Integer> indices = new HashMap<>();
+
+    Aggregate(final Marker marker) {
+        this.marker = marker;
+    }
+
+    // returns the index of the evaluator in the aggregate, deduplicated expressions share their index
+    int add(final String expression, final Element element) {
+        elements.add(element);
+        if (marker.deduplicate) { // same marker so the expression is the whole signature
+            final var existing = indices.putIfAbsent(expression, expressions.size());
+            if (existing != null) {
+                return existing;
+            }
+        }
+        expressions.add(expression);
+        return expressions.size() - 1;
+    }
+}
@@ -0,0 +1,59 @@
+package com.github.rmannibucau.jel.proc;
+
+import com.sun.source.tree.BinaryTree;
+import com.sun.source.tree.ConditionalExpressionTree;
+import com.sun.source.tree.ExpressionTree;
+import com.sun.source.tree.ParenthesizedTree;
+import com.sun.source.tree.ReturnTree;
+import com.sun.source.tree.UnaryTree;
+
+// checks with the compiler tree API that an expression only combines literals, it is then evaluated once in a
+// static initializer so it must not have side effects nor be able to fail the class initialization
+final class ConstantFolder {
+    private ConstantFolder() {
+        // no-op
+    }
+
+    static boolean isLiteralOnly(final String expression) {
+        final var statements = ExpressionTrees.parse("return " + expression + ";");
+        return statements != null && statements.size() == 1 && ReturnTree.class.isInstance(statements.get(0)) &&
+                isLiteralOnly(ReturnTree.class.cast(statements.get(0)).getExpression());
+    }
+
+    private static boolean isLiteralOnly(final ExpressionTree tree) {
+        if (tree == null) {
+            return false;
+        }
+        switch (tree.getKind()) {
+            case INT_LITERAL:
+            case LONG_LITERAL:
+            case FLOAT_LITERAL:
+            case DOUBLE_LITERAL:
+            case BOOLEAN_LITERAL:
+            case CHAR_LITERAL:
+            case STRING_LITERAL:
+                return true;
+            case PARENTHESIZED:
+                return isLiteralOnly(ParenthesizedTree.class.cast(tree).getExpression());
+            case UNARY_PLUS:
+            case UNARY_MINUS:
+            case LOGICAL_COMPLEMENT:
+            case BITWISE_COMPLEMENT:
+                return isLiteralOnly(UnaryTree.class.cast(tree).getExpression());
+            case DIVIDE: // can throw ArithmeticException
+            case REMAINDER:
+                return false;
+            case CONDITIONAL_EXPRESSION:
+                final var conditional = ConditionalExpressionTree.class.cast(tree);
+                return isLiteralOnly(conditional.getCondition()) &&
+                        isLiteralOnly(conditional.getTrueExpression()) &&
+                        isLiteralOnly(conditional.getFalseExpression());
+            default:
+                if (BinaryTree.class.isInstance(tree)) { // arithmetic, comparison, logical and bitwise operators
+                    final var binary = BinaryTree.class.cast(tree);
+                    return isLiteralOnly(binary.getLeftOperand()) && isLiteralOnly(binary.getRightOperand());
+                }
+                return false;
+        }
+    }
+}
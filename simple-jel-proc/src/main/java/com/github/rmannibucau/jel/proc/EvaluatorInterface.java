@@ -0,0 +1,19 @@
+package com.github.rmannibucau.jel.proc;
+
+// the functional interface implemented by an evaluator, types are the ones to use in the generated source
+class EvaluatorInterface {
+    final String name;
+    final String simpleName;
+    final String method;
+    final String returnType;
+    final String parameterType;
+
+    EvaluatorInterface(final String name, final String simpleName, final String method,
+                       final String returnType, final String parameterType) {
+        this.name = name;
+        this.simpleName = simpleName;
+        this.method = method;
+        this.returnType = returnType;
+        this.parameterType = parameterType;
+    }
+}
@@ -0,0 +1,732 @@
+package com.github.rmannibucau.jel.proc;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntFunction;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.joining;
+
+/**
+ * The source of a generated evaluator, shared by the annotation processor and the runtime compilation
+ * to ensure an expression behaves the same whatever the way it is compiled.
+ */
+public class EvaluatorTemplate {
+    private static final Pattern TEXT_LITERAL = Pattern.compile("\"(?:[^\"\\\\]|\\\\.)*\"|'(?:[^'\\\\]|\\\\.)*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile(
+            "(?<![\\w$.])(?:0[xX][0-9a-fA-F_]+|0[bB][01_]+|(?:\\d[\\d_]*)?\\.?\\d[\\d_]*(?:[eE][+-]?\\d+)?)[lLfFdD]?(?![\\w$])");
+    private static final Pattern BOOLEAN_LITERAL = Pattern.compile("\\b(?:true|false)\\b");
+    private static final Pattern CONSTANT = Pattern.compile("[0\\s()+\\-*/%!<>=&|^~?:]*");
+    private static final Pattern STATIC = Pattern.compile("\\bstatic\\b");
+    private static final Pattern FINAL = Pattern.compile("\\bfinal\\b");
+    private static final Pattern UNINDENTED_LINE = Pattern.compile("\n(?=\\S)");
+    private static final Set<String> PRIMITIVES = Set.of(
+            "boolean", "byte", "char", "short", "int", "long", "float", "double", "void");
+    private static final Pattern GENERICS = Pattern.compile("<.*>");
+    private static final String PREDICATE = "java.util.function.Predicate";
+    private static final String FUNCTION = "java.util.function.Function";
+    private static final String BATCH_PACKAGE = "com.github.rmannibucau.jel.api.batch.";
+    private static final int AGGREGATE_CHUNK_SIZE = 256;
+    private static final String PARAMETERS_PACKAGE = "com.github.rmannibucau.jel.api.parameters.";
+    private static final String EVENT = "com.github.rmannibucau.jel.api.event.EvaluationEvent";
+
+    private final String interfaceSimpleName;
+    private final String method;
+    private final String methodReturnType;
+    private final String parameterType;
+    private final String contextName;
+    private final String contextType;
+    private final String returnType;
+    private final String customMethods;
+    private final String staticCustomMethods; // custom methods of a stateless evaluator made static, null if impossible
+    private final String imports;
+    private final String annotations;
+    private final boolean stateless;
+    private final boolean batch;
+    private final String parametersInterface;
+    private final String baseClass; // holds the custom methods, null if they are in each evaluator
+    private final String baseMembers; // the custom methods of the base class (protected instead of private)
+
+    /**
+     * @param interfaceName       the fully qualified name of the implemented functional interface.
+     * @param interfaceSimpleName the simple name of the interface with its generics.
+     * @param method              the name of the interface method.
+     * @param methodReturnType    the return type of the interface method as written in the source.
+     * @param parameterType       the parameter type of the interface method as written in the source.
+     * @param contextName         the variable name of the context in the expression.
+     * @param contextType         the fully qualified context type, imported if not blank.
+     * @param returnType          the fully qualified return type, imported if not blank.
+     * @param customMethods       methods added to the evaluator.
+     * @param evaluatorMarkers    annotations put on the evaluator.
+     * @param imports             additional imports.
+     */
+    public EvaluatorTemplate(final String interfaceName, final String interfaceSimpleName, final String method,
+                             final String methodReturnType, final String parameterType,
+                             final String contextName, final String contextType, final String returnType,
+                             final String customMethods, final List<String> evaluatorMarkers,
+                             final List<String> imports) {
+        this(interfaceName, interfaceSimpleName, method, methodReturnType, parameterType, contextName, contextType,
+                returnType, customMethods, evaluatorMarkers, imports, false);
+    }
+
+    /**
+     * @param interfaceName       the fully qualified name of the implemented functional interface.
+     * @param interfaceSimpleName the simple name of the interface with its generics.
+     * @param method              the name of the interface method.
+     * @param methodReturnType    the return type of the interface method as written in the source.
+     * @param parameterType       the parameter type of the interface method as written in the source.
+     * @param contextName         the variable name of the context in the expression.
+     * @param contextType         the fully qualified context type, imported if not blank.
+     * @param returnType          the fully qualified return type, imported if not blank.
+     * @param customMethods       methods added to the evaluator.
+     * @param evaluatorMarkers    annotations put on the evaluator.
+     * @param imports             additional imports.
+     * @param batch               if the evaluator implements the batch flavor of its interface,
+     *                            see {@link #supportsBatch(String)}.
+     */
+    public EvaluatorTemplate(final String interfaceName, final String interfaceSimpleName, final String method,
+                             final String methodReturnType, final String parameterType,
+                             final String contextName, final String contextType, final String returnType,
+                             final String customMethods, final List<String> evaluatorMarkers,
+                             final List<String> imports, final boolean batch) {
+        if (batch && !supportsBatch(interfaceName)) {
+            throw new IllegalArgumentException("No batch flavor for " + interfaceName);
+        }
+        this.batch = batch;
+        this.interfaceSimpleName = batch ? "Batch" + interfaceSimpleName : interfaceSimpleName;
+        this.parametersInterface = supportsParameters(interfaceName) ?
+                PARAMETERS_PACKAGE + "Parameters" + interfaceSimpleName : null;
+        this.method = method;
+        this.methodReturnType = methodReturnType;
+        this.parameterType = parameterType;
+        this.contextName = contextName;
+        this.contextType = contextType;
+        this.returnType = returnType;
+        this.customMethods = customMethods;
+        this.stateless = topLevelFields(customMethods).stream().allMatch(it -> STATIC.matcher(it).find());
+        this.staticCustomMethods = stateless && !customMethods.isBlank() ?
+                ExpressionTrees.staticMethods(customMethods) : null;
+        this.baseClass = null;
+        this.baseMembers = null;
+        this.annotations = evaluatorMarkers.stream()
+                .map(it -> '@' + it.substring(it.lastIndexOf('.') + 1))
+                .collect(joining("\n", "\n", "\n")).trim();
+        final var implemented = batch ? BATCH_PACKAGE + "Batch" + simpleName(interfaceName) : interfaceName;
+        this.imports = Stream.concat(
+                Stream.of(implemented, contextType, returnType),
+                Stream.concat(imports.stream(), evaluatorMarkers.stream()))
+                .filter(it -> !it.isBlank() && it.contains("."))
+                .sorted()
+                .map(it -> "import " + it + ";\n")
+                .collect(joining("\n"));
+    }
+
+    private EvaluatorTemplate(final EvaluatorTemplate template, final String baseClass, final String baseMembers) {
+        this.interfaceSimpleName = template.interfaceSimpleName;
+        this.method = template.method;
+        this.methodReturnType = template.methodReturnType;
+        this.parameterType = template.parameterType;
+        this.contextName = template.contextName;
+        this.contextType = template.contextType;
+        this.returnType = template.returnType;
+        this.customMethods = template.customMethods;
+        this.staticCustomMethods = template.staticCustomMethods;
+        this.imports = template.imports;
+        this.annotations = template.annotations;
+        this.stateless = template.stateless;
+        this.batch = template.batch;
+        this.parametersInterface = template.parametersInterface;
+        this.baseClass = baseClass;
+        this.baseMembers = baseMembers;
+    }
+
+    /**
+     * @return {@code true} if the custom methods can be generated once in a base class of the evaluators,
+     * it is not the case without custom methods, when they have a mutable static field since it would be shared
+     * or when their private members can't all be made protected (they must be visible from the evaluators).
+     */
+    public boolean canShareCustomMethods() {
+        return sharedCustomMethods() != null;
+    }
+
+    /**
+     * @param baseClass the fully qualified name of the class holding the custom methods,
+     *                  see {@link #writeBase(String, Writer)}.
+     * @return a template generating evaluators extending the base class instead of holding the custom methods.
+     */
+    public EvaluatorTemplate extending(final String baseClass) {
+        final var members = sharedCustomMethods();
+        if (members == null) {
+            throw new IllegalStateException("Custom methods can't be shared: " + customMethods);
+        }
+        return new EvaluatorTemplate(this, baseClass, members);
+    }
+
+    /**
+     * Writes the abstract class holding the custom methods, private members become protected for the evaluators.
+     *
+     * @param name   the fully qualified name of the base class.
+     * @param writer where to write the source of the base class.
+     * @throws IOException if the writer fails.
+     * @throws IllegalStateException if the custom methods can't be shared, see {@link #canShareCustomMethods()}.
+     */
+    public void writeBase(final String name, final Writer writer) throws IOException {
+        final var members = baseMembers != null ? baseMembers : sharedCustomMethods();
+        if (members == null) {
+            throw new IllegalStateException("Custom methods can't be shared: " + customMethods);
+        }
+        final var lastDot = name.lastIndexOf('.');
+        if (lastDot > 0) {
+            writer.write("package " + name.substring(0, lastDot) + ";\n\n");
+        }
+        if (!imports.isBlank()) {
+            writer.write(imports + "\n\n");
+        }
+        writer.write("public abstract class " + name.substring(lastDot + 1) + " {\n" + members + "\n}\n");
+    }
+
+    // the custom methods of the base class, null if they can't be shared
+    private String sharedCustomMethods() {
+        if (customMethods.isBlank() || topLevelFields(customMethods).stream()
+                .anyMatch(it -> STATIC.matcher(it).find() && !FINAL.matcher(it).find())) {
+            return null;
+        }
+        return ExpressionTrees.protectPrivateMembers(ownCustomMethods());
+    }
+
+    // the custom methods as generated, static when the evaluators can evaluate expressions without their instance
+    private String ownCustomMethods() {
+        return staticCustomMethods != null ? staticCustomMethods : customMethods;
+    }
+
+    /**
+     * @return {@code true} if evaluators do not have any instance field, they then expose a shared {@code INSTANCE}.
+     */
+    public boolean isStateless() {
+        return stateless;
+    }
+
+    /**
+     * @param expression the expression.
+     * @param members    the members specific to the evaluator of the expression, can be empty.
+     * @return {@code true} if the evaluator of the expression is stateless and evaluates it in static methods,
+     * it is the case when the expression and the custom methods do not need the instance ({@code this}, instance
+     * methods), the registry can then expose a method handle on the static method.
+     */
+    public boolean isStatic(final String expression, final String members) {
+        if (!stateless) {
+            return false;
+        }
+        if (customMethods.isBlank() || constantValue(expression) != null) {
+            return true;
+        }
+        return staticCustomMethods != null && ExpressionTrees.isStatic(body(expression),
+                members.isBlank() ? staticCustomMethods : staticCustomMethods + "\n" + members);
+    }
+
+    /**
+     * @return the name of the static method evaluating the expression, only generated for stateless evaluators.
+     */
+    public String getStaticMethod() {
+        return "evaluate".equals(method) ? "doEvaluate" : "evaluate";
+    }
+
+    /**
+     * @return the {@code MethodType} of the static method as a source expression using fully qualified types.
+     */
+    public String getStaticMethodType() {
+        return "java.lang.invoke.MethodType.methodType(" +
+                qualified(methodReturnType) + ".class, " + qualified(parameterType) + ".class)";
+    }
+
+    /**
+     * @param expression the expression.
+     * @return {@code true} if the expression does not depend on the context (literals only),
+     * its value is then exposed as a {@code VALUE} constant.
+     */
+    public boolean isConstant(final String expression) {
+        return constantValue(expression) != null;
+    }
+
+    /**
+     * Only the parameters the expression references are variables of the expression, a parameter named like
+     * the context is never bound, evaluators binding parameters implement the parameters flavor of the interface.
+     *
+     * @param expression the expression.
+     * @param parameters the parameters of the method (name to type in declaration order).
+     * @return {@code true} if the evaluator of the expression binds some of the parameters.
+     */
+    public boolean bindsParameters(final String expression, final Map<String, String> parameters) {
+        return !bound(expression, parameters).isEmpty();
+    }
+
+    /**
+     * @param name       the fully qualified name of the evaluator.
+     * @param expression the expression, i.e. the body of the evaluator method.
+     * @return the source of the evaluator.
+     */
+    public String generate(final String name, final String expression) {
+        return generate(name, expression, "");
+    }
+
+    /**
+     * @param name       the fully qualified name of the evaluator.
+     * @param expression the expression, i.e. the body of the evaluator method.
+     * @param members    static members specific to this evaluator (precomputed constants for example).
+     * @return the source of the evaluator.
+     */
+    public String generate(final String name, final String expression, final String members) {
+        return generate(name, expression, members, Map.of());
+    }
+
+    /**
+     * @param name       the fully qualified name of the evaluator.
+     * @param expression the expression, i.e. the body of the evaluator method.
+     * @param members    static members specific to this evaluator (precomputed constants for example).
+     * @param parameters the parameters of the method (name to type in declaration order), can be empty,
+     *                   see {@link #bindsParameters(String, Map)} and {@link #supportsParameters(String)}.
+     * @return the source of the evaluator.
+     */
+    public String generate(final String name, final String expression, final String members,
+                           final Map<String, String> parameters) {
+        final var writer = new StringWriter();
+        try {
+            write(name, expression, members, parameters, writer);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return writer.toString();
+    }
+
+    /**
+     * @param name       the fully qualified name of the evaluator.
+     * @param expression the expression, i.e. the body of the evaluator method.
+     * @param members    static members specific to this evaluator, can be empty.
+     * @param parameters the parameters of the method (name to type in declaration order), can be empty.
+     * @param writer     where to write the source of the evaluator.
+     * @throws IOException if the writer fails.
+     */
+    public void write(final String name, final String expression, final String members,
+                      final Map<String, String> parameters, final Writer writer) throws IOException {
+        write(name, expression, members, parameters, null, writer);
+    }
+
+    /**
+     * @param name       the fully qualified name of the evaluator.
+     * @param expression the expression, i.e. the body of the evaluator method.
+     * @param members    static members specific to this evaluator, can be empty.
+     * @param parameters the parameters of the method (name to type in declaration order), can be empty.
+     * @param eventKey   the key recorded in the JFR evaluation events, {@code null} to not record any event.
+     * @param writer     where to write the source of the evaluator.
+     * @throws IOException if the writer fails.
+     */
+    public void write(final String name, final String expression, final String members,
+                      final Map<String, String> parameters, final String eventKey,
+                      final Writer writer) throws IOException {
+        final var bound = bound(expression, parameters);
+        if (!bound.isEmpty() && (batch || parametersInterface == null)) {
+            throw new IllegalArgumentException("Parameters can't be bound to " + interfaceSimpleName + " evaluators");
+        }
+        final var simpleName = writeHeader(name, writer);
+        final var constant = constantValue(expression);
+        writer.write("public class " + simpleName + (baseClass == null ? "" : " extends " + baseClass) +
+                " implements " + (bound.isEmpty() ? interfaceSimpleName : parametersInterface) + " {\n");
+        if (stateless) {
+            writer.write("    public static final " + simpleName + " INSTANCE = new " + simpleName + "();\n");
+        }
+        if (constant != null) {
+            writer.write("    public static final " + methodReturnType + " VALUE = " + constant + ";\n");
+        }
+        if (stateless || constant != null) {
+            writer.write("\n");
+        }
+        if (!members.isBlank()) {
+            writer.write(members + "\n");
+        }
+        // a recorded evaluator wraps the expression, moved to its own method, in an event
+        final var recorded = eventKey != null && constant == null;
+        final var signature = methodReturnType + " %s(final " + parameterType + " " + contextName + ")";
+        final var staticMethod = getStaticMethod();
+        final var isStatic = isStatic(expression, members);
+        final var body = constant != null ? "return VALUE;" :
+                recorded ? record(eventKey, staticMethod + "Expression(" + contextName + ")") : body(expression);
+        if (!bound.isEmpty()) {
+            writeBound(expression, eventKey, new ArrayList<>(parameters.keySet()), bound, isStatic, writer);
+        } else if (stateless) {
+            // the static method holds the expression unless it or the custom methods need the instance
+            writer.write("" +
+                    "    public static " + String.format(signature, staticMethod) + " {\n" +
+                    "        " + (isStatic ? body : "return INSTANCE." + method + "(" + contextName + ");") + "\n" +
+                    "    }\n" +
+                    "\n" +
+                    "    @Override\n" +
+                    "    public " + String.format(signature, method) + " {\n" +
+                    "        " + (isStatic ? "return " + staticMethod + "(" + contextName + ");" : body) + "\n" +
+                    "    }\n");
+        } else {
+            writer.write("" +
+                    "    @Override\n" +
+                    "    public " + String.format(signature, method) + " {\n" +
+                    "        " + body + "\n" +
+                    "    }\n");
+        }
+        if (recorded && bound.isEmpty()) {
+            writer.write("" +
+                    "\n" +
+                    "    private " + (isStatic ? "static " : "") + methodReturnType + " " +
+                    staticMethod + "Expression(final " + parameterType + " " + contextName + ") {\n" +
+                    "        " + body(expression) + "\n" +
+                    "    }\n");
+        }
+        if (batch) {
+            // the loop calls the expression directly so it can be inlined and unrolled
+            final var predicate = "test".equals(method);
+            writer.write("" +
+                    "\n" +
+                    "    @Override\n" +
+                    "    public void " + (predicate ? "testAll" : "applyAll") + "(final " + parameterType + "[] in, " +
+                    "final int from, final int to, final " + (predicate ? "boolean" : methodReturnType) + "[] out) {\n" +
+                    "        for (int i = from; i < to; i++) {\n" +
+                    "            out[i] = " + (stateless ? staticMethod : method) + "(in[i]);\n" +
+                    "        }\n" +
+                    "    }\n");
+        }
+        writer.write((customMethods.isBlank() || baseClass != null ? "" : ("\n" + ownCustomMethods() + "\n")) + "}\n");
+    }
+
+    /**
+     * Generates a single class for a set of expressions, each expression is a method and an instance selects
+     * its expression with an index ({@code evaluator(int)} factory) so there is a single class to load.
+     *
+     * @param name        the fully qualified name of the aggregate.
+     * @param expressions the expressions, their index is the evaluator index.
+     * @return the source of the aggregate.
+     */
+    public String generateAggregate(final String name, final List<String> expressions) {
+        final var writer = new StringWriter();
+        try {
+            writeAggregate(name, expressions, writer);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return writer.toString();
+    }
+
+    /**
+     * @param name        the fully qualified name of the aggregate.
+     * @param expressions the expressions, their index is the evaluator index.
+     * @param writer      where to write the source of the aggregate.
+     * @throws IOException if the writer fails.
+     */
+    public void writeAggregate(final String name, final List<String> expressions,
+                               final Writer writer) throws IOException {
+        if (batch) {
+            throw new IllegalArgumentException("Batch evaluators can't be aggregated");
+        }
+        final var simpleName = writeHeader(name, writer);
+        writer.write("public final class " + simpleName + (baseClass == null ? "" : " extends " + baseClass) +
+                " implements " + interfaceSimpleName + " {\n");
+        if (stateless) {
+            writer.write("    private static final " + simpleName + "[] INSTANCES = new " + simpleName +
+                    "[" + expressions.size() + "];\n\n");
+        }
+        writer.write("" +
+                "    private final int index;\n" +
+                "\n" +
+                "    private " + simpleName + "(final int index) {\n" +
+                "        this.index = index;\n" +
+                "    }\n" +
+                "\n" +
+                "    public static " + simpleName + " evaluator(final int index) {\n");
+        if (stateless) { // benign race, instances are immutable
+            writer.write("" +
+                    "        " + simpleName + " evaluator = INSTANCES[index];\n" +
+                    "        if (evaluator == null) {\n" +
+                    "            evaluator = new " + simpleName + "(index);\n" +
+                    "            INSTANCES[index] = evaluator;\n" +
+                    "        }\n" +
+                    "        return evaluator;\n");
+        } else {
+            writer.write("        return new " + simpleName + "(index);\n");
+        }
+        writer.write("    }\n\n");
+
+        // switches stay small enough to be JIT compiled and inlined: index -> chunk -> expression
+        final var signature = methodReturnType + " %s(final " + parameterType + " " + contextName + ")";
+        final var staticMethod = getStaticMethod();
+        final int chunks = (expressions.size() + AGGREGATE_CHUNK_SIZE - 1) / AGGREGATE_CHUNK_SIZE;
+        writer.write("" +
+                "    @Override\n" +
+                "    public " + String.format(signature, method) + " {\n");
+        if (chunks <= 1) {
+            writeSwitch("index", 0, expressions.size(), i -> staticMethod + i, writer);
+        } else {
+            writeSwitch("index / " + AGGREGATE_CHUNK_SIZE, 0, chunks, i -> method + "Chunk" + i, writer);
+        }
+        writer.write("    }\n");
+        for (int chunk = 0; chunks > 1 && chunk < chunks; chunk++) {
+            writer.write("" +
+                    "\n" +
+                    "    private " + String.format(signature, method + "Chunk" + chunk) + " {\n");
+            writeSwitch("index", chunk * AGGREGATE_CHUNK_SIZE,
+                    Math.min(expressions.size(), (chunk + 1) * AGGREGATE_CHUNK_SIZE), i -> staticMethod + i, writer);
+            writer.write("    }\n");
+        }
+
+        // static when possible so the registry can expose method handles
+        final var modifiers = expressions.stream().allMatch(it -> isStatic(it, "")) ? "public static " : "private ";
+        for (int i = 0; i < expressions.size(); i++) {
+            final var expression = expressions.get(i);
+            final var constant = constantValue(expression);
+            writer.write("" +
+                    "\n" +
+                    "    " + modifiers + String.format(signature, staticMethod + i) + " {\n" +
+                    "        " + (constant != null ? "return " + constant + ";" : body(expression)) + "\n" +
+                    "    }\n");
+        }
+        writer.write((customMethods.isBlank() || baseClass != null ? "" : ("\n" + ownCustomMethods() + "\n")) + "}\n");
+    }
+
+    private void writeSwitch(final String selector, final int from, final int to, final IntFunction<String> target,
+                             final Writer writer) throws IOException {
+        writer.write("        switch (" + selector + ") {\n");
+        for (int i = from; i < to; i++) {
+            writer.write("            case " + i + ": return " + target.apply(i) + "(" + contextName + ");\n");
+        }
+        writer.write("" +
+                "            default: throw new IllegalStateException(\"Unknown evaluator: \" + index);\n" +
+                "        }\n");
+    }
+
+    // package, imports and annotations, returns the simple name of the class
+    private String writeHeader(final String name, final Writer writer) throws IOException {
+        final var lastDot = name.lastIndexOf('.');
+        if (lastDot > 0) {
+            writer.write("package " + name.substring(0, lastDot) + ";\n\n");
+        }
+        if (!imports.isBlank()) {
+            writer.write(imports + "\n\n");
+        }
+        if (!annotations.isBlank()) {
+            writer.write(annotations + "\n");
+        }
+        return name.substring(lastDot + 1);
+    }
+
+    // multi-line expressions are usually written without indentation, their lines are aligned on the first one
+    private String body(final String expression) {
+        final var indented = UNINDENTED_LINE.matcher(expression).replaceAll("\n        ");
+        return indented.endsWith(";") || indented.endsWith("}") ? indented : indented + ";";
+    }
+
+    // the locals can't clash with bound parameters: the event is recorded around the call of the expression method
+    private String record(final String eventKey, final String expression) {
+        return "final " + EVENT + " event = new " + EVENT + "();\n" +
+                "        if (!event.isEnabled()) {\n" +
+                "            return " + expression + ";\n" +
+                "        }\n" +
+                "        event.begin();\n" +
+                "        final " + methodReturnType + " result = " + expression + ";\n" +
+                "        event.complete(\"" + eventKey.replace("\\", "\\\\").replace("\"", "\\\"") + "\", result);\n" +
+                "        return result;";
+    }
+
+    // the expression gets typed parameters, the interface method taking the raw parameters casts (unboxes) them
+    private void writeBound(final String expression, final String eventKey, final List<String> declared,
+                            final Map<String, String> bound, final boolean isStatic,
+                            final Writer writer) throws IOException {
+        final var typed = bound.entrySet().stream()
+                .map(it -> "final " + it.getValue() + " " + it.getKey())
+                .collect(joining(", "));
+        final var casts = bound.entrySet().stream()
+                .map(it -> "(" + it.getValue() + ") parameters[" + declared.indexOf(it.getKey()) + "]")
+                .collect(joining(", "));
+        final var signature = methodReturnType + " %s(final " + parameterType + " " + contextName + "%s)";
+        final var staticMethod = getStaticMethod();
+        final var call = staticMethod + "(" + contextName + ", " + casts + ")";
+        writer.write("" +
+                "    public " + (isStatic ? "static " : "") +
+                String.format(signature, staticMethod, ", " + typed) + " {\n" +
+                "        " + body(expression) + "\n" +
+                "    }\n" +
+                "\n" +
+                "    @Override\n" +
+                "    public " + String.format(signature, method, ", final Object[] parameters") + " {\n" +
+                "        " + (eventKey == null ? "return " + call + ";" : record(eventKey, call)) + "\n" +
+                "    }\n");
+    }
+
+    // the parameters referenced by the expression, all of them (but the context) if it can't be parsed
+    private Map<String, String> bound(final String expression, final Map<String, String> parameters) {
+        if (parameters.isEmpty()) {
+            return Map.of();
+        }
+        final var identifiers = ExpressionTrees.identifiers(body(expression));
+        final var bound = new LinkedHashMap<String, String>();
+        parameters.forEach((name, type) -> {
+            if (!name.equals(contextName) && (identifiers == null || identifiers.contains(name))) {
+                bound.put(name, type);
+            }
+        });
+        return bound;
+    }
+
+    // fully qualified erased type usable as a class literal out of the evaluator source
+    private String qualified(final String sourceType) {
+        final var type = GENERICS.matcher(sourceType).replaceAll("").trim();
+        if (type.contains(".") || PRIMITIVES.contains(type)) {
+            return type;
+        }
+        if (!contextType.isBlank() && type.equals(simpleName(contextType))) {
+            return contextType;
+        }
+        if (!returnType.isBlank() && type.equals(simpleName(returnType))) {
+            return returnType;
+        }
+        return "java.lang." + type;
+    }
+
+    // "return <literals and operators>", the value is computed once (and inlined by javac for primitives and strings),
+    // the patterns only reject quickly the expressions which are obviously not constant, the parser decides
+    private static String constantValue(final String expression) {
+        var value = expression.trim();
+        if (!value.startsWith("return") || value.length() == "return".length() ||
+                Character.isJavaIdentifierPart(value.charAt("return".length()))) {
+            return null;
+        }
+        value = value.substring("return".length()).trim();
+        if (value.endsWith(";")) {
+            value = value.substring(0, value.length() - 1).trim();
+        }
+        if (value.isEmpty()) {
+            return null;
+        }
+        final var literals = TEXT_LITERAL.matcher(value).replaceAll("0");
+        final var operators = BOOLEAN_LITERAL.matcher(NUMBER_LITERAL.matcher(literals).replaceAll("0")).replaceAll("0");
+        return CONSTANT.matcher(operators).matches() && ConstantFolder.isLiteralOnly(value) ? value : null;
+    }
+
+    // the field declarations at the top level of the custom methods (method bodies and literals are skipped)
+    private static List<String> topLevelFields(final String customMethods) {
+        final var fields = new ArrayList<String>();
+        int depth = 0;
+        var member = new StringBuilder();
+        for (int i = 0; i < customMethods.length(); i++) {
+            final char c = customMethods.charAt(i);
+            if (c == '"' || c == '\'') { // skip literals
+                i++;
+                while (i < customMethods.length() && customMethods.charAt(i) != c) {
+                    if (customMethods.charAt(i) == '\\') {
+                        i++;
+                    }
+                    i++;
+                }
+            } else if (c == '/' && i + 1 < customMethods.length() && customMethods.charAt(i + 1) == '/') {
+                final int end = customMethods.indexOf('\n', i);
+                if (end < 0) {
+                    break;
+                }
+                i = end;
+            } else if (c == '/' && i + 1 < customMethods.length() && customMethods.charAt(i + 1) == '*') {
+                final int end = customMethods.indexOf("*/", i + 2);
+                if (end < 0) {
+                    break;
+                }
+                i = end + 1;
+            } else if (c == '{') {
+                depth++;
+            } else if (c == '}') {
+                depth--;
+                if (depth == 0) { // end of a method or nested type
+                    member = new StringBuilder();
+                }
+            } else if (depth == 0) {
+                if (c == ';') {
+                    fields.add(member.toString());
+                    member = new StringBuilder();
+                } else {
+                    member.append(c);
+                }
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * @param interfaceName the fully qualified name of the evaluator interface.
+     * @return {@code true} if the interface has a batch flavor.
+     */
+    public static boolean supportsBatch(final String interfaceName) {
+        return PREDICATE.equals(interfaceName) || FUNCTION.equals(interfaceName);
+    }
+
+    /**
+     * @param interfaceName the fully qualified name of the evaluator interface.
+     * @return {@code true} if the interface has a flavor taking the method parameters too.
+     */
+    public static boolean supportsParameters(final String interfaceName) {
+        return supportsBatch(interfaceName);
+    }
+
+    /**
+     * @param returnSimpleType the simple return type of the evaluator.
+     * @return the functional interface used when not configured.
+     */
+    public static String defaultEvaluatorInterface(final String returnSimpleType) {
+        switch (returnSimpleType) {
+            case "boolean":
+                return PREDICATE;
+            case "int":
+                return "java.util.function.ToIntFunction";
+            case "long":
+                return "java.util.function.ToLongFunction";
+            case "double":
+                return "java.util.function.ToDoubleFunction";
+            default:
+                return FUNCTION;
+        }
+    }
+
+    /**
+     * @param type a simple type.
+     * @return the wrapper simple type for primitives, the type itself otherwise.
+     */
+    public static String boxed(final String type) {
+        switch (type) {
+            case "boolean":
+                return "Boolean";
+            case "byte":
+                return "Byte";
+            case "char":
+                return "Character";
+            case "short":
+                return "Short";
+            case "int":
+                return "Integer";
+            case "long":
+                return "Long";
+            case "float":
+                return "Float";
+            case "double":
+                return "Double";
+            default:
+                return type;
+        }
+    }
+
+    /**
+     * @param type a fully qualified type, can be blank.
+     * @return the simple name of the type as used in the evaluator source ({@code Object} if blank).
+     */
+    public static String simpleName(final String type) {
+        return type.isBlank() ? "Object" : type.substring(type.lastIndexOf('.') + 1);
+    }
+}
@@ -0,0 +1,368 @@
+package com.github.rmannibucau.jel.proc;
+
+import com.sun.source.tree.BlockTree;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.MethodInvocationTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.ModifiersTree;
+import com.sun.source.tree.StatementTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.tree.VariableTree;
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.SourcePositions;
+import com.sun.source.util.TreeScanner;
+import com.sun.source.util.Trees;
+
+import javax.lang.model.element.Modifier;
+import javax.tools.Diagnostic;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.IOException;
+import java.net.URI;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+import static java.util.stream.Collectors.toSet;
+
+// parses evaluator sources with the compiler tree API, no attribution so the classpath is not needed
+final class ExpressionTrees {
+    private static final Pattern PRIVATE = Pattern.compile("\\bprivate\\b");
+    private static final ThreadLocal<Parser> PARSER = new ThreadLocal<>();
+
+    private ExpressionTrees() {
+        // no-op
+    }
+
+    /**
+     * @param body the body of a method.
+     * @return the statements of the body or {@code null} if it is invalid or escapes the method.
+     */
+    static List<? extends StatementTree> parse(final String body) {
+        final var parsed = parseClass("" +
+                "    Object value() {\n" +
+                "        " + body + "\n" +
+                "    }\n");
+        if (parsed == null) {
+            return null;
+        }
+        // the body must not close the method to add members
+        final var members = parsed.type.getMembers();
+        if (members.size() != 1 || !MethodTree.class.isInstance(members.get(0))) {
+            return null;
+        }
+        return MethodTree.class.cast(members.get(0)).getBody().getStatements();
+    }
+
+    /**
+     * @param members the members of a class (fields, methods, nested types).
+     * @return the members with the {@code private} modifier of the top level ones replaced by {@code protected},
+     * {@code null} if they can't be parsed or the rewrite is not exhaustive.
+     */
+    static String protectPrivateMembers(final String members) {
+        final var parsed = parseClass(members);
+        if (parsed == null) {
+            return null;
+        }
+        final var offsets = new TreeSet<Integer>(); // declarators of a field share their modifiers
+        for (final var member : parsed.type.getMembers()) {
+            final var modifiers = modifiers(member);
+            if (modifiers == null || !modifiers.getFlags().contains(Modifier.PRIVATE)) {
+                continue;
+            }
+            // the keyword is in the modifiers but not in their annotations (which can contain "private" literals)
+            final var start = (int) parsed.positions.getStartPosition(parsed.unit, modifiers);
+            final var end = (int) parsed.positions.getEndPosition(parsed.unit, modifiers);
+            if (start < 0 || end < start) {
+                return null;
+            }
+            final var text = parsed.source.substring(start, end).toCharArray();
+            for (final var annotation : modifiers.getAnnotations()) {
+                final var annotationStart = (int) parsed.positions.getStartPosition(parsed.unit, annotation);
+                final var annotationEnd = (int) parsed.positions.getEndPosition(parsed.unit, annotation);
+                for (int i = Math.max(annotationStart, start); i < Math.min(annotationEnd, end); i++) {
+                    text[i - start] = ' ';
+                }
+            }
+            final var keyword = PRIVATE.matcher(new String(text));
+            if (!keyword.find()) {
+                return null;
+            }
+            offsets.add(start + keyword.start() - parsed.prefix);
+        }
+        final var out = new StringBuilder(members);
+        for (final int offset : offsets.descendingSet()) {
+            out.replace(offset, offset + "private".length(), "protected");
+        }
+        final var result = out.toString();
+        final var check = parseClass(result);
+        return check != null && check.type.getMembers().stream()
+                .map(ExpressionTrees::modifiers)
+                .noneMatch(it -> it != null && it.getFlags().contains(Modifier.PRIVATE)) ? result : null;
+    }
+
+    /**
+     * @param members the members of a class without instance field.
+     * @return the members with their top level methods made static, {@code null} if one of them needs the instance
+     * ({@code this}, {@code super} or an unqualified call to a method the members do not declare), if there is
+     * a constructor, an instance initializer, an instance field or an inner class or if they can't be parsed.
+     */
+    static String staticMethods(final String members) {
+        final var parsed = parseClass(members);
+        if (parsed == null) {
+            return null;
+        }
+        final var methods = methodNames(parsed.type, false);
+        final var offsets = new TreeMap<Integer, String>();
+        for (final var member : parsed.type.getMembers()) {
+            if (MethodTree.class.isInstance(member)) {
+                final var method = MethodTree.class.cast(member);
+                final var modifiers = method.getModifiers();
+                if (method.getReturnType() == null || usesInstance(method.getBody(), methods)) { // constructor
+                    return null;
+                }
+                if (modifiers.getFlags().contains(Modifier.STATIC)) {
+                    continue;
+                }
+                final var end = (int) parsed.positions.getEndPosition(parsed.unit, modifiers);
+                if (end >= 0) {
+                    offsets.put(end - parsed.prefix, " static");
+                } else if (method.getTypeParameters().isEmpty()) { // no modifier at all, starts with the type
+                    final var start = (int) parsed.positions.getStartPosition(parsed.unit, method.getReturnType());
+                    if (start < 0) {
+                        return null;
+                    }
+                    offsets.put(start - parsed.prefix, "static ");
+                } else {
+                    return null;
+                }
+            } else {
+                final var modifiers = modifiers(member);
+                if (modifiers == null ? !BlockTree.class.cast(member).isStatic() :
+                        member.getKind() == Tree.Kind.CLASS && !modifiers.getFlags().contains(Modifier.STATIC) ||
+                                VariableTree.class.isInstance(member) &&
+                                        !modifiers.getFlags().contains(Modifier.STATIC)) {
+                    return null;
+                }
+            }
+        }
+        final var out = new StringBuilder(members);
+        offsets.descendingMap().forEach(out::insert);
+        return out.toString();
+    }
+
+    /**
+     * @param body    the body of a method.
+     * @param members the members of the class, the body can only call their static methods.
+     * @return {@code true} if the body can be the one of a static method, {@code false} if it needs the instance
+     * or can't be parsed.
+     */
+    static boolean isStatic(final String body, final String members) {
+        final var statements = parse(body);
+        if (statements == null) {
+            return false;
+        }
+        final Set<String> methods;
+        if (members.isBlank()) {
+            methods = Set.of();
+        } else {
+            final var parsed = parseClass(members);
+            if (parsed == null) {
+                return false;
+            }
+            methods = methodNames(parsed.type, true);
+        }
+        return statements.stream().noneMatch(it -> usesInstance(it, methods));
+    }
+
+    private static Set<String> methodNames(final ClassTree type, final boolean staticOnly) {
+        return type.getMembers().stream()
+                .filter(MethodTree.class::isInstance)
+                .map(MethodTree.class::cast)
+                .filter(it -> !staticOnly || it.getModifiers().getFlags().contains(Modifier.STATIC))
+                .map(it -> it.getName().toString())
+                .collect(toSet());
+    }
+
+    // this, super or an unqualified call of a method which is not one of the known ones (can be inherited)
+    private static boolean usesInstance(final Tree tree, final Set<String> methods) {
+        if (tree == null) {
+            return false;
+        }
+        final var instance = new boolean[1];
+        tree.accept(new TreeScanner<Void, Void>() {
+            @Override
+            public Void visitIdentifier(final IdentifierTree node, final Void unused) {
+                final var name = node.getName();
+                instance[0] |= name.contentEquals("this") || name.contentEquals("super");
+                return null;
+            }
+
+            @Override
+            public Void visitMethodInvocation(final MethodInvocationTree node, final Void unused) {
+                final var select = node.getMethodSelect();
+                if (IdentifierTree.class.isInstance(select) &&
+                        !methods.contains(IdentifierTree.class.cast(select).getName().toString())) {
+                    instance[0] = true;
+                }
+                return super.visitMethodInvocation(node, unused);
+            }
+        }, null);
+        return instance[0];
+    }
+
+    private static ModifiersTree modifiers(final Tree member) {
+        if (MethodTree.class.isInstance(member)) {
+            return MethodTree.class.cast(member).getModifiers();
+        }
+        if (VariableTree.class.isInstance(member)) {
+            return VariableTree.class.cast(member).getModifiers();
+        }
+        if (ClassTree.class.isInstance(member)) {
+            return ClassTree.class.cast(member).getModifiers();
+        }
+        return null; // initializer blocks
+    }
+
+    // a single class holding the members, null if it is invalid
+    private static Parsed parseClass(final String members) {
+        final var current = PARSER.get();
+        if (current != null) {
+            return current.parseClass(members);
+        }
+        try (final var parser = new Parser(null)) {
+            return parser.parseClass(members);
+        }
+    }
+
+    /**
+     * Opens a parser used by the parsing methods of the current thread until it is closed so the compiler and its
+     * file manager are created once for a set of parsings (a processing round) instead of once per parsing.
+     *
+     * @return the parser to close once the parsings are done.
+     */
+    static Parser open() {
+        final var parser = new Parser(PARSER.get());
+        PARSER.set(parser);
+        return parser;
+    }
+
+    static final class Parser implements AutoCloseable {
+        private final Parser previous;
+        private final JavaCompiler compiler;
+        private final StandardJavaFileManager fileManager;
+
+        private Parser(final Parser previous) {
+            this.previous = previous;
+            this.compiler = ToolProvider.getSystemJavaCompiler();
+            this.fileManager = compiler == null ? null : compiler.getStandardFileManager(null, null, null);
+        }
+
+        private Parsed parseClass(final String members) {
+            if (compiler == null) { // no tree API
+                return null;
+            }
+            final var prefix = "class SimpleJelExpression {\n";
+            final var code = prefix + members + "\n}\n";
+            final var invalid = new boolean[1];
+            final var source = new SimpleJavaFileObject(
+                    URI.create("string:///SimpleJelExpression.java"), JavaFileObject.Kind.SOURCE) {
+                @Override
+                public CharSequence getCharContent(final boolean ignoreEncodingErrors) {
+                    return code;
+                }
+            };
+            try {
+                final var task = JavacTask.class.cast(compiler.getTask(
+                        null, fileManager, diagnostic -> invalid[0] |= diagnostic.getKind() == Diagnostic.Kind.ERROR,
+                        List.of("-proc:none"), null, List.of(source)));
+                final var units = task.parse().iterator();
+                if (!units.hasNext()) {
+                    return null;
+                }
+                final var unit = units.next();
+                final var types = unit.getTypeDecls();
+                if (invalid[0] || types.size() != 1 || types.get(0).getKind() != Tree.Kind.CLASS) {
+                    return null;
+                }
+                return new Parsed(code, prefix.length(), unit, ClassTree.class.cast(types.get(0)),
+                        Trees.instance(task).getSourcePositions());
+            } catch (final IOException | RuntimeException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public void close() {
+            if (PARSER.get() == this) {
+                if (previous == null) {
+                    PARSER.remove();
+                } else {
+                    PARSER.set(previous);
+                }
+            }
+            if (fileManager != null) {
+                try {
+                    fileManager.close();
+                } catch (final IOException e) {
+                    // no-op: nothing was written
+                }
+            }
+        }
+    }
+
+    /**
+     * @param body the body of a method.
+     * @return the simple names the body uses (variables or unqualified method calls) without the ones it declares
+     * (locals, lambda parameters), {@code null} if it can't be parsed.
+     */
+    static Set<String> identifiers(final String body) {
+        final var statements = parse(body);
+        if (statements == null) {
+            return null;
+        }
+        final var names = new HashSet<String>();
+        final var declared = new HashSet<String>();
+        final var scanner = new TreeScanner<Void, Void>() {
+            @Override
+            public Void visitIdentifier(final IdentifierTree node, final Void unused) {
+                names.add(node.getName().toString());
+                return null;
+            }
+
+            @Override
+            public Void visitVariable(final VariableTree node, final Void unused) {
+                declared.add(node.getName().toString());
+                return super.visitVariable(node, unused);
+            }
+        };
+        statements.forEach(it -> it.accept(scanner, null));
+        names.removeAll(declared);
+        return names;
+    }
+
+    private static class Parsed {
+        private final String source;
+        private final int prefix;
+        private final CompilationUnitTree unit;
+        private final ClassTree type;
+        private final SourcePositions positions;
+
+        private Parsed(final String source, final int prefix, final CompilationUnitTree unit, final ClassTree type,
+                       final SourcePositions positions) {
+            this.source = source;
+            this.prefix = prefix;
+            this.unit = unit;
+            this.type = type;
+            this.positions = positions;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.github.rmannibucau.jel.proc;
+
+import java.util.List;
+import java.util.Map;
+
+// an annotation marked with @MetaJel, parsed once per compilation
+class Marker {
+    final String name;
+    final String binaryName;
+    final String expressionName;
+    final String policyName;
+    final String bindParametersName; // blank if not configurable per element
+    final String contextName;
+    final String contextType;
+    final String returnType;
+    final String customMethods;
+    // compiled once since they are resolved for each element
+    final Substitutor.Template classPattern;
+    final Substitutor.Template methodPattern;
+    final Substitutor.Template aggregatePattern; // null if evaluators are not aggregated
+    final List<String> evaluatorMarkers;
+    final List<String> imports;
+    final boolean deduplicate;
+    final boolean batch;
+    final boolean bindParameters;
+    final boolean recordEvents;
+    final boolean fuseClassExpression;
+    final EvaluatorInterface evaluatorInterface;
+    final EvaluatorTemplate template;
+
+    Marker(final String name, final String binaryName, final String expressionName, final String policyName,
+           final String bindParametersName, final String contextName, final String contextType,
+           final String returnType, final String customMethods, final String classPattern, final String methodPattern,
+           final String aggregatePattern,
+           final List<String> evaluatorMarkers, final List<String> imports,
+           final boolean deduplicate, final boolean batch, final boolean bindParameters,
+           final boolean recordEvents, final boolean fuseClassExpression,
+           final EvaluatorInterface evaluatorInterface) {
+        this.name = name;
+        this.binaryName = binaryName;
+        this.expressionName = expressionName;
+        this.policyName = policyName;
+        this.bindParametersName = bindParametersName;
+        this.contextName = contextName;
+        this.contextType = contextType;
+        this.returnType = returnType;
+        this.customMethods = customMethods;
+        this.classPattern = Substitutor.compile(classPattern);
+        this.methodPattern = Substitutor.compile(methodPattern);
+        this.aggregatePattern = aggregatePattern.isBlank() ? null : Substitutor.compile(aggregatePattern);
+        this.evaluatorMarkers = evaluatorMarkers;
+        this.imports = imports;
+        this.deduplicate = deduplicate;
+        this.batch = batch;
+        this.bindParameters = bindParameters;
+        this.recordEvents = recordEvents;
+        this.fuseClassExpression = fuseClassExpression;
+        this.evaluatorInterface = evaluatorInterface;
+        this.template = new EvaluatorTemplate(
+                evaluatorInterface.name, evaluatorInterface.simpleName, evaluatorInterface.method,
+                evaluatorInterface.returnType, evaluatorInterface.parameterType,
+                contextName, contextType, returnType, customMethods, evaluatorMarkers, imports, batch);
+    }
+
+    // everything which makes the generated evaluator different except its name
+    String evaluatorSignature(final String expression, final String members, final Map<String, String> parameters) {
+        return String.join("\u0000",
+                expression, members, parameters.toString(), contextName, contextType, returnType, customMethods, evaluatorInterface.name,
+                String.join(",", evaluatorMarkers), String.join(",", imports), Boolean.toString(batch));
+    }
+}
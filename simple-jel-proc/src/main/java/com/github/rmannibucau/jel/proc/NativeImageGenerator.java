@@ -0,0 +1,44 @@
+package com.github.rmannibucau.jel.proc;
+
+import java.util.Set;
+import java.util.TreeSet;
+
+import static java.util.stream.Collectors.joining;
+
+// generates the GraalVM native-image metadata of the evaluators:
+// reflection for the ones created by name (registry, loadClass) and build time initialization of the stateless ones
+class NativeImageGenerator {
+    private final Set<String> constructors;
+    private final Set<String> methods;
+    private final Set<String> buildTime;
+
+    NativeImageGenerator(final Set<String> constructors, final Set<String> methods, final Set<String> buildTime) {
+        this.constructors = constructors;
+        this.methods = methods;
+        this.buildTime = buildTime;
+    }
+
+    String reflectConfig() {
+        final var types = new TreeSet<>(constructors);
+        types.addAll(methods);
+        return types.stream()
+                .map(type -> {
+                    final var out = new StringBuilder("  {\n    \"name\": \"").append(type).append('"');
+                    if (methods.contains(type)) { // static entry points looked up with MethodHandles
+                        out.append(",\n    \"allPublicMethods\": true");
+                    }
+                    if (constructors.contains(type)) {
+                        out.append(",\n    \"methods\": [{\"name\": \"<init>\", \"parameterTypes\": []}]");
+                    }
+                    return out.append("\n  }").toString();
+                })
+                .collect(joining(",\n", "[\n", "\n]\n"));
+    }
+
+    String properties() {
+        if (buildTime.isEmpty()) {
+            return "";
+        }
+        return buildTime.stream().collect(joining(",\\\n  ", "Args = --initialize-at-build-time=", "\n"));
+    }
+}
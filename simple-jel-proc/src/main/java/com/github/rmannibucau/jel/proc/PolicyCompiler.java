@@ -0,0 +1,485 @@
+package com.github.rmannibucau.jel.proc;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static java.util.stream.Collectors.joining;
+
+// compiles the policy DSL (claims and groups of a JsonWebToken like context) to the body of an evaluator:
+//
+// policy     := or
+// or         := and ('or' and)*
+// and        := not ('and' not)*
+// not        := 'not' not | '(' policy ')' | comparison
+// comparison := operand ('==' | '!=') literal | operand 'contains' (literal | ('any' | 'all') '(' literal (',' literal)* ')')
+// operand    := 'groups' | 'claim' '(' string ')'
+// literal    := string | number | 'true' | 'false'
+//
+// clauses are side effect free so they are reordered cheapest first, operands are read lazily when a clause needs them
+// (and kept in a local if another clause uses them too), value lists are precomputed static sets
+// and a missing context (no token) is denied
+class PolicyCompiler {
+    private final String contextName;
+
+    PolicyCompiler(final String contextName) {
+        this.contextName = contextName;
+    }
+
+    Policy compile(final String policy) {
+        final var parser = new Parser(policy);
+        final var node = parser.parseOr();
+        if (!parser.isDone()) {
+            throw parser.error("unexpected '" + parser.peek().text + "'");
+        }
+
+        final var generator = new Generator(contextName, parser.uses);
+        final var condition = node.java(generator);
+        final var body = new StringBuilder()
+                .append("if (").append(contextName).append(" == null) {\n")
+                .append("            return false;\n")
+                .append("        }\n");
+        if (generator.groups) {
+            body.append("        java.util.Set<String> policyGroups = null;\n");
+        }
+        for (final var claim : generator.claims.values()) {
+            if (claim.shared) {
+                body.append("        Object ").append(claim.variable).append(" = POLICY_UNREAD;\n");
+            }
+        }
+        body.append("        return ").append(condition).append(";");
+
+        final var members = new StringBuilder();
+        for (int i = 0; i < generator.sets.size(); i++) {
+            members.append("    private static final java.util.Set<String> POLICY_").append(i).append(" = java.util.Set.of(")
+                    .append(generator.sets.get(i).stream().map(PolicyCompiler::quote).collect(joining(", ")))
+                    .append(");\n");
+        }
+        if (generator.claims.values().stream().anyMatch(it -> it.shared)) {
+            members.append("    private static final Object POLICY_UNREAD = new Object();\n");
+        }
+        if (!generator.claims.isEmpty()) {
+            if (members.length() > 0) {
+                members.append('\n');
+            }
+            members.append("" +
+                    "    // claims can be strings, collections or JSON-P values (their toString is the JSON form)\n" +
+                    "    private static String policyText(final Object value) {\n" +
+                    "        if (value == null || value instanceof CharSequence) {\n" +
+                    "            return value == null ? null : value.toString();\n" +
+                    "        }\n" +
+                    "        final String json = String.valueOf(value);\n" +
+                    "        if (json.length() < 2 || json.charAt(0) != '\"' || json.charAt(json.length() - 1) != '\"') {\n" +
+                    "            return json;\n" +
+                    "        }\n" +
+                    "        return json.substring(1, json.length() - 1).replace(\"\\\\\\\"\", \"\\\"\").replace(\"\\\\\\\\\", \"\\\\\");\n" +
+                    "    }\n" +
+                    "\n" +
+                    "    private static java.util.Set<String> policyValues(final Object value) {\n" +
+                    "        if (value == null) {\n" +
+                    "            return java.util.Set.of();\n" +
+                    "        }\n" +
+                    "        if (!(value instanceof java.util.Collection)) {\n" +
+                    "            return java.util.Set.of(policyText(value));\n" +
+                    "        }\n" +
+                    "        final java.util.Set<String> values = new java.util.HashSet<>();\n" +
+                    "        for (final Object item : (java.util.Collection<?>) value) {\n" +
+                    "            values.add(policyText(item));\n" +
+                    "        }\n" +
+                    "        return values;\n" +
+                    "    }\n");
+        }
+        return new Policy(body.toString(), members.toString());
+    }
+
+    private static String quote(final String value) {
+        return '"' + value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n").replace("\r", "\\r") + '"';
+    }
+
+    static class Policy {
+        final String body;
+        final String members;
+
+        Policy(final String body, final String members) {
+            this.body = body;
+            this.members = members;
+        }
+    }
+
+    static class PolicyException extends IllegalArgumentException {
+        PolicyException(final String message) {
+            super(message);
+        }
+    }
+
+    private static class Generator {
+        private final String contextName;
+        private final Map<String, Integer> uses;
+        private final Map<String, Claim> claims = new LinkedHashMap<>();
+        private final List<Set<String>> sets = new ArrayList<>();
+        private boolean groups; // groups are used by several clauses and kept in a local
+
+        private Generator(final String contextName, final Map<String, Integer> uses) {
+            this.contextName = contextName;
+            this.uses = uses;
+        }
+
+        // the operand is read where the clause needs it, the first clause executed stores it if others use it too
+        private String operand(final Operand operand, final boolean values) {
+            if (operand.claim == null) {
+                final var read = "java.util.Objects.requireNonNullElse(" + contextName + ".getGroups(), java.util.Set.of())";
+                if (uses.get(operand.key()) == 1) {
+                    return read;
+                }
+                groups = true;
+                return "(policyGroups != null ? policyGroups : (policyGroups = " + read + "))";
+            }
+            final var claim = claims.computeIfAbsent(operand.claim, k -> new Claim(
+                    "policyClaim" + claims.size(), uses.get(operand.key()) > 1));
+            final var read = contextName + ".getClaim(" + quote(operand.claim) + ")";
+            final var value = !claim.shared ? read :
+                    "(" + claim.variable + " != POLICY_UNREAD ? " + claim.variable + " : (" + claim.variable + " = " + read + "))";
+            return (values ? "policyValues(" : "policyText(") + value + ")";
+        }
+
+        private String set(final Set<String> values) {
+            final var existing = sets.indexOf(values);
+            if (existing >= 0) {
+                return "POLICY_" + existing;
+            }
+            sets.add(values);
+            return "POLICY_" + (sets.size() - 1);
+        }
+    }
+
+    private static class Claim {
+        private final String variable;
+        private final boolean shared; // used by several clauses
+
+        private Claim(final String variable, final boolean shared) {
+            this.variable = variable;
+            this.shared = shared;
+        }
+    }
+
+    private static class Operand {
+        private final String claim; // null for groups
+
+        private Operand(final String claim) {
+            this.claim = claim;
+        }
+
+        private String key() {
+            return claim == null ? "groups" : ("claim:" + claim);
+        }
+    }
+
+    private interface Node {
+        // relative evaluation cost used to evaluate the cheapest clauses first
+        int cost();
+
+        String java(Generator generator);
+    }
+
+    private static class Junction implements Node {
+        private final String operator;
+        private final List<Node> nodes;
+
+        private Junction(final String operator, final List<Node> nodes) {
+            this.operator = operator;
+            this.nodes = nodes;
+            this.nodes.sort(Comparator.comparingInt(Node::cost));
+        }
+
+        @Override
+        public int cost() {
+            return nodes.stream().mapToInt(Node::cost).sum();
+        }
+
+        @Override
+        public String java(final Generator generator) {
+            return nodes.stream().map(it -> it.java(generator)).collect(joining(" " + operator + " ", "(", ")"));
+        }
+    }
+
+    private static class Not implements Node {
+        private final Node node;
+
+        private Not(final Node node) {
+            this.node = node;
+        }
+
+        @Override
+        public int cost() {
+            return node.cost();
+        }
+
+        @Override
+        public String java(final Generator generator) {
+            return "!" + node.java(generator);
+        }
+    }
+
+    private static class Comparison implements Node {
+        private final Operand operand;
+        private final boolean equals;
+        private final String value;
+
+        private Comparison(final Operand operand, final boolean equals, final String value) {
+            this.operand = operand;
+            this.equals = equals;
+            this.value = value;
+        }
+
+        @Override
+        public int cost() {
+            return 1;
+        }
+
+        @Override
+        public String java(final Generator generator) {
+            return (equals ? "" : "!") + quote(value) + ".equals(" + generator.operand(operand, false) + ")";
+        }
+    }
+
+    private static class Contains implements Node {
+        private final Operand operand;
+        private final boolean all;
+        private final Set<String> values;
+
+        private Contains(final Operand operand, final boolean all, final Set<String> values) {
+            this.operand = operand;
+            this.all = all;
+            this.values = values;
+        }
+
+        @Override
+        public int cost() {
+            return values.size() == 1 ? 2 : 2 + values.size();
+        }
+
+        @Override
+        public String java(final Generator generator) {
+            final var variable = generator.operand(operand, true);
+            if (values.size() == 1) {
+                return variable + ".contains(" + quote(values.iterator().next()) + ")";
+            }
+            final var set = generator.set(values);
+            return all ?
+                    variable + ".containsAll(" + set + ")" :
+                    "!java.util.Collections.disjoint(" + variable + ", " + set + ")";
+        }
+    }
+
+    private static class Token {
+        private final Kind kind;
+        private final String text;
+        private final int position;
+
+        private Token(final Kind kind, final String text, final int position) {
+            this.kind = kind;
+            this.text = text;
+            this.position = position;
+        }
+
+        private boolean is(final String word) {
+            return (kind == Kind.WORD || kind == Kind.SYMBOL) && text.equals(word);
+        }
+    }
+
+    private enum Kind {
+        WORD, STRING, NUMBER, SYMBOL, END
+    }
+
+    private static class Parser {
+        private final String policy;
+        private final List<Token> tokens = new ArrayList<>();
+        private final Map<String, Integer> uses = new HashMap<>(); // operand -> number of clauses using it
+        private int index;
+
+        private Parser(final String policy) {
+            this.policy = policy;
+            tokenize();
+        }
+
+        private boolean isDone() {
+            return peek().kind == Kind.END;
+        }
+
+        private Token peek() {
+            return tokens.get(index);
+        }
+
+        private Token next() {
+            final var token = tokens.get(index);
+            if (token.kind != Kind.END) {
+                index++;
+            }
+            return token;
+        }
+
+        private void expect(final String value) {
+            final var token = next();
+            if (!token.is(value)) {
+                throw error("expected '" + value + "' but got " + describe(token), token);
+            }
+        }
+
+        private PolicyException error(final String message) {
+            return error(message, peek());
+        }
+
+        private PolicyException error(final String message, final Token token) {
+            return new PolicyException("Invalid policy '" + policy + "' at position " + token.position + ": " + message);
+        }
+
+        private String describe(final Token token) {
+            return token.kind == Kind.END ? "the end of the policy" : ("'" + token.text + "'");
+        }
+
+        private Node parseOr() {
+            final var nodes = new ArrayList<Node>();
+            nodes.add(parseAnd());
+            while (peek().is("or")) {
+                next();
+                nodes.add(parseAnd());
+            }
+            return nodes.size() == 1 ? nodes.get(0) : new Junction("||", nodes);
+        }
+
+        private Node parseAnd() {
+            final var nodes = new ArrayList<Node>();
+            nodes.add(parseNot());
+            while (peek().is("and")) {
+                next();
+                nodes.add(parseNot());
+            }
+            return nodes.size() == 1 ? nodes.get(0) : new Junction("&&", nodes);
+        }
+
+        private Node parseNot() {
+            if (peek().is("not")) {
+                next();
+                return new Not(parseNot());
+            }
+            if (peek().is("(")) {
+                next();
+                final var node = parseOr();
+                expect(")");
+                return node;
+            }
+            return parseComparison();
+        }
+
+        private Node parseComparison() {
+            final var operandToken = peek();
+            final var operand = parseOperand();
+            final var operator = next();
+            if (operator.is("==") || operator.is("!=")) {
+                if (operand.claim == null) {
+                    throw error("groups can only be used with 'contains'", operandToken);
+                }
+                return new Comparison(operand, operator.is("=="), parseLiteral());
+            }
+            if (!operator.is("contains")) {
+                throw error("expected '==', '!=' or 'contains' but got " + describe(operator), operator);
+            }
+            if (peek().is("any") || peek().is("all")) {
+                final var all = next().is("all");
+                expect("(");
+                final var values = new LinkedHashSet<String>();
+                values.add(parseLiteral());
+                while (peek().is(",")) {
+                    next();
+                    values.add(parseLiteral());
+                }
+                expect(")");
+                return new Contains(operand, all, values);
+            }
+            return new Contains(operand, false, Set.of(parseLiteral()));
+        }
+
+        private Operand parseOperand() {
+            final var operand = readOperand();
+            uses.merge(operand.key(), 1, Integer::sum);
+            return operand;
+        }
+
+        private Operand readOperand() {
+            final var token = next();
+            if (token.is("groups")) {
+                return new Operand(null);
+            }
+            if (token.is("claim")) {
+                expect("(");
+                final var name = next();
+                if (name.kind != Kind.STRING) {
+                    throw error("expected a claim name but got " + describe(name), name);
+                }
+                expect(")");
+                return new Operand(name.text);
+            }
+            throw error("expected 'groups' or 'claim(...)' but got " + describe(token), token);
+        }
+
+        private String parseLiteral() {
+            final var token = next();
+            if (token.kind == Kind.STRING || token.kind == Kind.NUMBER || token.is("true") || token.is("false")) {
+                return token.text;
+            }
+            throw error("expected a string, a number or a boolean but got " + describe(token), token);
+        }
+
+        private void tokenize() {
+            int i = 0;
+            while (i < policy.length()) {
+                final char c = policy.charAt(i);
+                if (Character.isWhitespace(c)) {
+                    i++;
+                } else if (c == '\'' || c == '"') {
+                    final var value = new StringBuilder();
+                    int end = i + 1;
+                    while (end < policy.length() && policy.charAt(end) != c) {
+                        if (policy.charAt(end) == '\\' && end + 1 < policy.length()) {
+                            end++;
+                        }
+                        value.append(policy.charAt(end++));
+                    }
+                    if (end >= policy.length()) {
+                        throw new PolicyException("Invalid policy '" + policy + "' at position " + i + ": unterminated string");
+                    }
+                    tokens.add(new Token(Kind.STRING, value.toString(), i));
+                    i = end + 1;
+                } else if (Character.isDigit(c) || (c == '-' && i + 1 < policy.length() && Character.isDigit(policy.charAt(i + 1)))) {
+                    int end = i + 1;
+                    while (end < policy.length() && (Character.isDigit(policy.charAt(end)) || policy.charAt(end) == '.')) {
+                        end++;
+                    }
+                    tokens.add(new Token(Kind.NUMBER, policy.substring(i, end), i));
+                    i = end;
+                } else if (Character.isJavaIdentifierStart(c)) {
+                    int end = i + 1;
+                    while (end < policy.length() && Character.isJavaIdentifierPart(policy.charAt(end))) {
+                        end++;
+                    }
+                    tokens.add(new Token(Kind.WORD, policy.substring(i, end), i));
+                    i = end;
+                } else if ((c == '=' || c == '!') && i + 1 < policy.length() && policy.charAt(i + 1) == '=') {
+                    tokens.add(new Token(Kind.SYMBOL, policy.substring(i, i + 2), i));
+                    i += 2;
+                } else if (c == '(' || c == ')' || c == ',') {
+                    tokens.add(new Token(Kind.SYMBOL, String.valueOf(c), i));
+                    i++;
+                } else {
+                    throw new PolicyException("Invalid policy '" + policy + "' at position " + i + ": unexpected '" + c + "'");
+                }
+            }
+            tokens.add(new Token(Kind.END, "", policy.length()));
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.github.rmannibucau.jel.proc;
+
+import com.github.rmannibucau.jel.api.registry.EvaluatorRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.toList;
+
+// generates the EvaluatorRegistry of the module, switches are split in chunks to not hit the method size limit
+class RegistryGenerator {
+    private static final int CHUNK_SIZE = 256;
+
+    private final String name;
+    private final Map<String, String> evaluators;
+    private final Map<String, Integer> aggregateIndices;
+    private final Set<String> statelessEvaluators;
+    private final Map<String, EvaluatorTemplate> staticEvaluators;
+    private final Set<String> constantEvaluators;
+
+    RegistryGenerator(final String name, final Map<String, String> evaluators,
+                      final Map<String, Integer> aggregateIndices, final Set<String> statelessEvaluators,
+                      final Map<String, EvaluatorTemplate> staticEvaluators, final Set<String> constantEvaluators) {
+        this.name = name;
+        this.evaluators = evaluators;
+        this.aggregateIndices = aggregateIndices;
+        this.statelessEvaluators = statelessEvaluators;
+        this.staticEvaluators = staticEvaluators;
+        this.constantEvaluators = constantEvaluators;
+    }
+
+    String generate() {
+        final var lastDot = name.lastIndexOf('.');
+        final var packageName = lastDot > 0 ? name.substring(0, lastDot) : "";
+        final var className = lastDot > 0 ? name.substring(lastDot + 1) : name;
+
+        final var keys = new ArrayList<>(evaluators.keySet());
+        final int chunks = Math.max(1, (keys.size() + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        final var byChunk = keys.stream().collect(groupingBy(it -> Math.floorMod(it.hashCode(), chunks), toList()));
+
+        final var out = new StringBuilder();
+        if (!packageName.isBlank()) {
+            out.append("package ").append(packageName).append(";\n\n");
+        }
+        out.append("import ").append(EvaluatorRegistry.class.getName()).append(";\n\n")
+                .append("import java.lang.invoke.MethodHandle;\n")
+                .append("import java.lang.invoke.MethodHandles;\n")
+                .append("import java.util.ArrayList;\n")
+                .append("import java.util.Collection;\n")
+                .append("import java.util.List;\n\n")
+                .append("public final class ").append(className).append(" implements ")
+                .append(EvaluatorRegistry.class.getSimpleName()).append(" {\n")
+                .append("    @Override\n")
+                .append("    public Collection<String> keys() {\n")
+                .append("        final List<String> keys = new ArrayList<>(").append(keys.size()).append(");\n");
+        for (int i = 0; i < keys.size(); i += CHUNK_SIZE) {
+            out.append("        keys").append(i / CHUNK_SIZE).append("(keys);\n");
+        }
+        out.append("        return keys;\n")
+                .append("    }\n\n")
+                .append("    @Override\n")
+                .append("    public Object create(final String key) {\n");
+        if (chunks == 1) {
+            out.append("        return create0(key);\n");
+        } else {
+            out.append("        switch (Math.floorMod(key.hashCode(), ").append(chunks).append(")) {\n");
+            for (int i = 0; i < chunks; i++) {
+                out.append("            case ").append(i).append(": return create").append(i).append("(key);\n");
+            }
+            out.append("            default: return null;\n")
+                    .append("        }\n");
+        }
+        out.append("    }\n");
+
+        // static entry points are only generated for stateless evaluators not binding parameters
+        final var handleKeys = keys.stream()
+                .filter(it -> staticEvaluators.containsKey(evaluators.get(it)))
+                .collect(groupingBy(it -> Math.floorMod(it.hashCode(), chunks), toList()));
+        if (!handleKeys.isEmpty()) {
+            out.append("\n    @Override\n")
+                    .append("    public MethodHandle handle(final String key) {\n")
+                    .append("        try {\n");
+            if (chunks == 1) {
+                out.append("            return handle0(key);\n");
+            } else {
+                out.append("            switch (Math.floorMod(key.hashCode(), ").append(chunks).append(")) {\n");
+                for (int i = 0; i < chunks; i++) {
+                    if (handleKeys.containsKey(i)) {
+                        out.append("                case ").append(i).append(": return handle").append(i).append("(key);\n");
+                    }
+                }
+                out.append("                default: return null;\n")
+                        .append("            }\n");
+            }
+            out.append("        } catch (final NoSuchMethodException | IllegalAccessException e) {\n")
+                    .append("            throw new IllegalStateException(e);\n")
+                    .append("        }\n")
+                    .append("    }\n");
+        }
+
+        // constants are few (feature flags like), a single switch is enough
+        final var constantKeys = keys.stream()
+                .filter(it -> constantEvaluators.contains(evaluators.get(it)))
+                .collect(toList());
+        if (!constantKeys.isEmpty()) {
+            out.append("\n    @Override\n")
+                    .append("    public Object constant(final String key) {\n")
+                    .append("        switch (key) {\n");
+            for (final String key : constantKeys) {
+                out.append("            case \"").append(escape(key)).append("\": return ")
+                        .append(evaluators.get(key)).append(".VALUE;\n");
+            }
+            out.append("            default: return null;\n")
+                    .append("        }\n")
+                    .append("    }\n");
+        }
+
+        for (int i = 0; i < keys.size(); i += CHUNK_SIZE) {
+            out.append("\n    private static void keys").append(i / CHUNK_SIZE).append("(final List<String> keys) {\n");
+            for (final String key : keys.subList(i, Math.min(keys.size(), i + CHUNK_SIZE))) {
+                out.append("        keys.add(\"").append(escape(key)).append("\");\n");
+            }
+            out.append("    }\n");
+        }
+        for (int i = 0; i < chunks; i++) {
+            out.append("\n    private static Object create").append(i).append("(final String key) {\n")
+                    .append("        switch (key) {\n");
+            for (final String key : byChunk.getOrDefault(i, List.of())) {
+                final var evaluator = evaluators.get(key);
+                final var index = aggregateIndices.get(key);
+                out.append("            case \"").append(escape(key)).append("\": return ")
+                        .append(index != null ? evaluator + ".evaluator(" + index + ")" :
+                                statelessEvaluators.contains(evaluator) ?
+                                        evaluator + ".INSTANCE" : "new " + evaluator + "()")
+                        .append(";\n");
+            }
+            out.append("            default: return null;\n")
+                    .append("        }\n")
+                    .append("    }\n");
+        }
+        for (final Map.Entry<Integer, List<String>> chunk : handleKeys.entrySet()) {
+            out.append("\n    private static MethodHandle handle").append(chunk.getKey()).append("(final String key)")
+                    .append(" throws NoSuchMethodException, IllegalAccessException {\n")
+                    .append("        switch (key) {\n");
+            for (final String key : chunk.getValue()) {
+                final var evaluator = evaluators.get(key);
+                final var template = staticEvaluators.get(evaluator);
+                final var index = aggregateIndices.get(key);
+                out.append("            case \"").append(escape(key)).append("\": return MethodHandles.lookup().findStatic(")
+                        .append(evaluator).append(".class, \"").append(template.getStaticMethod())
+                        .append(index != null ? index.toString() : "").append("\", ")
+                        .append(template.getStaticMethodType()).append(");\n");
+            }
+            out.append("            default: return null;\n")
+                    .append("        }\n")
+                    .append("    }\n");
+        }
+        return out.append("}\n").toString();
+    }
+
+    private String escape(final String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
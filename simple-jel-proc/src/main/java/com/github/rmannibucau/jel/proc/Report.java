@@ -0,0 +1,130 @@
+package com.github.rmannibucau.jel.proc;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
+
+// what the processor did during a compilation, written as JSON when the report option is set
+class Report {
+    private static final int LARGEST_EXPRESSIONS = 10;
+
+    private final List<Round> rounds = new ArrayList<>();
+    private final Map<String, Long> sources = new TreeMap<>(); // generated class -> size in chars
+    private final Map<String, List<String>> expressions = new LinkedHashMap<>(); // expression -> element keys
+
+    void startRound() {
+        rounds.add(new Round());
+    }
+
+    void discovery(final long nanos) {
+        current().discovery += nanos;
+    }
+
+    void generation(final long nanos) {
+        current().generation += nanos;
+    }
+
+    void marker(final String name, final int elements) {
+        final var round = current();
+        round.markers.add(name);
+        round.elements += elements;
+    }
+
+    void expression(final String key, final String expression) {
+        expressions.computeIfAbsent(expression.trim(), k -> new ArrayList<>()).add(key);
+    }
+
+    void source(final String name, final long size) {
+        sources.put(name, size);
+    }
+
+    String toJson() {
+        final var duplicates = expressions.entrySet().stream()
+                .filter(it -> it.getValue().size() > 1)
+                .map(it -> "    {\"expression\": " + string(it.getKey()) + ", \"elements\": " +
+                        it.getValue().stream().map(this::string).collect(joining(", ", "[", "]")) + "}")
+                .collect(toList());
+        final var largest = expressions.entrySet().stream()
+                .sorted(Comparator.<Map.Entry<String, List<String>>>comparingInt(it -> it.getKey().length()).reversed())
+                .limit(LARGEST_EXPRESSIONS)
+                .map(it -> "    {\"length\": " + it.getKey().length() + ", \"elements\": " +
+                        it.getValue().stream().map(this::string).collect(joining(", ", "[", "]")) + "}")
+                .collect(toList());
+        final var markers = new TreeSet<String>();
+        rounds.forEach(it -> markers.addAll(it.markers));
+        final var index = new int[1];
+        return "{\n" +
+                "  \"rounds\": " + array(rounds.stream()
+                .map(it -> "    {\"round\": " + (++index[0]) +
+                        ", \"discoveryMs\": " + TimeUnit.NANOSECONDS.toMillis(it.discovery) +
+                        ", \"generationMs\": " + TimeUnit.NANOSECONDS.toMillis(it.generation) +
+                        ", \"elements\": " + it.elements +
+                        ", \"markers\": " + it.markers.stream().map(this::string).collect(joining(", ", "[", "]")) + "}")
+                .collect(toList())) + ",\n" +
+                "  \"markers\": " + array(markers.stream().map(it -> "    " + string(it)).collect(toList())) + ",\n" +
+                "  \"generated\": " + array(sources.entrySet().stream()
+                .map(it -> "    {\"name\": " + string(it.getKey()) + ", \"size\": " + it.getValue() + "}")
+                .collect(toList())) + ",\n" +
+                "  \"totalSize\": " + sources.values().stream().mapToLong(Long::longValue).sum() + ",\n" +
+                "  \"duplicateExpressions\": " + array(duplicates) + ",\n" +
+                "  \"largestExpressions\": " + array(largest) + "\n" +
+                "}\n";
+    }
+
+    private Round current() {
+        if (rounds.isEmpty()) {
+            startRound();
+        }
+        return rounds.get(rounds.size() - 1);
+    }
+
+    private String array(final List<String> items) {
+        return items.isEmpty() ? "[]" : items.stream().collect(joining(",\n", "[\n", "\n  ]"));
+    }
+
+    private String string(final String value) {
+        final var out = new StringBuilder(value.length() + 2).append('"');
+        for (final char c : value.toCharArray()) {
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        return out.append('"').toString();
+    }
+
+    private static class Round {
+        private final Set<String> markers = new TreeSet<>();
+        private long discovery;
+        private long generation;
+        private int elements;
+    }
+}
@@ -1,31 +1,104 @@
 package com.github.rmannibucau.jel.proc;
 
 import com.github.rmannibucau.jel.api.annotation.MetaJel;
+import com.github.rmannibucau.jel.api.registry.EvaluatorRegistry;
+import com.github.rmannibucau.jel.api.registry.Evaluators;
 
 import javax.annotation.processing.AbstractProcessor;
 import javax.annotation.processing.ProcessingEnvironment;
 import javax.annotation.processing.RoundEnvironment;
 import javax.lang.model.SourceVersion;
 import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
 import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
 import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
 import javax.lang.model.element.PackageElement;
 import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.ArrayType;
 import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
 import javax.tools.Diagnostic;
+import java.io.FilterWriter;
 import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.stream.Stream;
 
 import static java.util.Optional.ofNullable;
 import static java.util.stream.Collectors.joining;
 import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toMap;
+import static java.util.stream.Collectors.toSet;
+import static javax.tools.StandardLocation.CLASS_OUTPUT;
+import static javax.tools.StandardLocation.SOURCE_OUTPUT;
 
 public class SimpleJelAnnotationProcessor extends AbstractProcessor {
+    public static final String REGISTRY_NAME = "simplejel.registry.name";
+    public static final String REGISTRY_SKIP = "simplejel.registry.skip";
+    public static final String NATIVE_IMAGE = "simplejel.native.image";
+    public static final String REPORT = "simplejel.report";
+
+    // gradle incremental processing, see META-INF/gradle/incremental.annotation.processors
+    private static final String GRADLE_ISOLATING = "org.gradle.annotation.processing.isolating";
+    private static final String GRADLE_AGGREGATING = "org.gradle.annotation.processing.aggregating";
+
     private ProcessingEnvironment env;
 
+    // null if no report is requested
+    private Report report;
+
+    // types of the sources passed to the compiler (first round)
+    private Set<String> inputTypes;
+
+    // annotation type -> marker if it is marked with @MetaJel, cached for all rounds
+    private final Map<String, Optional<Marker>> markers = new HashMap<>();
+
+    // key -> evaluator class name, accumulated until the registry is written
+    private final Map<String, String> registryEntries = new TreeMap<>();
+    private final List<Element> registryOriginatingElements = new ArrayList<>();
+    private boolean registryWritten;
+
+    // evaluator classes exposing an INSTANCE, the ones with a static entry point and the ones exposing a constant VALUE
+    private final Set<String> statelessEvaluators = new HashSet<>();
+    private final Map<String, EvaluatorTemplate> staticEvaluators = new HashMap<>();
+    private final Set<String> constantEvaluators = new HashSet<>();
+
+    // aggregate class name -> evaluators it holds, and key -> index of the evaluator in its aggregate
+    private final Map<String, Aggregate> aggregates = new TreeMap<>();
+    private final Map<String, Integer> aggregateIndices = new HashMap<>();
+
+    // evaluator signature -> evaluator class name for markers deduplicating their evaluators
+    private final Map<String, String> sharedEvaluators = new HashMap<>();
+
+    // marker -> template of its evaluators, extending the generated class holding the custom methods when they are shared
+    private final Map<String, EvaluatorTemplate> sharedCustomMethods = new HashMap<>();
+
+    // native-image metadata: classes created by name, classes with static entry points and stateless classes
+    private final Set<String> nativeConstructors = new TreeSet<>();
+    private final Set<String> nativeMethods = new TreeSet<>();
+    private final Set<String> nativeBuildTime = new TreeSet<>();
+
     @Override
     public SourceVersion getSupportedSourceVersion() {
         return SourceVersion.latestSupported();
@@ -35,146 +108,722 @@ public class SimpleJelAnnotationProcessor extends AbstractProcessor {
     public synchronized void init(final ProcessingEnvironment processingEnv) {
         super.init(processingEnv);
         this.env = processingEnv;
+        this.report = ofNullable(processingEnv.getOptions().get(REPORT))
+                .filter(it -> !it.isBlank())
+                .map(it -> new Report())
+                .orElse(null);
     }
 
     @Override
     public Set<String> getSupportedAnnotationTypes() {
+        // markers are user annotations only identified by their @MetaJel meta-annotation
         return Set.of("*");
     }
 
+    @Override
+    public Set<String> getSupportedOptions() {
+        // each evaluator only depends on its annotated element, only the registry and native metadata aggregate them
+        return Set.of(REGISTRY_NAME, REGISTRY_SKIP, NATIVE_IMAGE, REPORT,
+                isRegistrySkipped() && nativeImage() == null ? GRADLE_ISOLATING : GRADLE_AGGREGATING);
+    }
+
+    // <groupId>/<artifactId> of the module, null if no native-image metadata is generated
+    private String nativeImage() {
+        return env == null ? null : ofNullable(env.getOptions().get(NATIVE_IMAGE))
+                .filter(it -> !it.isBlank())
+                .orElse(null);
+    }
+
+    private boolean isRegistrySkipped() {
+        return env != null && Boolean.parseBoolean(env.getOptions().get(REGISTRY_SKIP));
+    }
+
     @Override
     public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
-        roundEnv.getRootElements().stream()
-                .flatMap(it -> Stream.concat( // add nested classes too
-                        Stream.of(it),
-                        it.getEnclosedElements().stream()))
-                .filter(TypeElement.class::isInstance)
-                .map(TypeElement.class::cast)
-                .distinct()
-                .flatMap(it -> Stream.concat( // add methods (if annotation is never on a class)
-                        Stream.of(it),
-                        env.getElementUtils().getAllMembers(it).stream()))
-                .flatMap(it -> it.getAnnotationMirrors().stream())
-                .flatMap(this::flatten)
-                .map(AnnotationMirror::getAnnotationType)
-                .distinct()
-                .filter(it -> env.getElementUtils()
-                        .getAllAnnotationMirrors(it.asElement()).stream()
-                        .anyMatch(this::findMeta))
-                .forEach(marker -> generateForMarker(roundEnv, marker));
+        // expressions and custom methods are parsed several times per element, the parser is shared by the round
+        try (final var parser = ExpressionTrees.open()) {
+            return processRound(annotations, roundEnv);
+        }
+    }
+
+    private boolean processRound(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
+        if (inputTypes == null) {
+            inputTypes = ElementFilter.typesIn(roundEnv.getRootElements()).stream()
+                    .map(it -> it.getQualifiedName().toString())
+                    .collect(toSet());
+        }
+        if (report != null) {
+            report.startRound();
+        }
+        final int registrySize = registryEntries.size();
+        // javac already lists the annotation types present in the round,
+        // each of them is checked only once per compilation to know if it is a marker
+        for (final TypeElement annotation : annotations) {
+            final long start = System.nanoTime();
+            final var marker = markers.computeIfAbsent(
+                    annotation.getQualifiedName().toString(), k -> loadMarker(annotation));
+            if (marker.isEmpty()) {
+                if (report != null) {
+                    report.discovery(System.nanoTime() - start);
+                }
+                continue;
+            }
+            final var elements = roundEnv.getElementsAnnotatedWith(annotation);
+            final long discovered = System.nanoTime();
+            elements.forEach(element -> generate(marker.orElseThrow(), element));
+            if (report != null) {
+                report.discovery(discovered - start);
+                report.generation(System.nanoTime() - discovered);
+                report.marker(marker.orElseThrow().name, elements.size());
+            }
+        }
+
+        final long start = System.nanoTime();
+        // write the registry once generated evaluators are compiled (round without new evaluator)
+        // to avoid to create a source in the last round
+        if (registrySize == registryEntries.size() || roundEnv.processingOver()) {
+            generateRegistry();
+        }
+        if (roundEnv.processingOver()) {
+            generateNativeImageMetadata();
+        }
+        if (report != null) {
+            report.generation(System.nanoTime() - start);
+            if (roundEnv.processingOver()) {
+                writeReport();
+            }
+        }
         return false;
     }
 
-    private boolean findMeta(final AnnotationMirror e) {
-        return TypeElement.class.cast(e.getAnnotationType().asElement())
-                .getQualifiedName().contentEquals(MetaJel.class.getName());
+    private void writeReport() {
+        final var path = Paths.get(env.getOptions().get(REPORT));
+        try {
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            Files.writeString(path, report.toJson());
+        } catch (final IOException e) {
+            env.getMessager().printMessage(Diagnostic.Kind.WARNING, "Can't write " + path + ": " + e.getMessage());
+        }
     }
 
-    private Stream<AnnotationMirror> flatten(final AnnotationMirror am) {
-        return Stream.concat(Stream.of(am), am.getAnnotationType().getAnnotationMirrors().stream());
+    private void generateRegistry() {
+        if (registryEntries.isEmpty() || isRegistrySkipped()) {
+            return;
+        }
+        if (registryWritten) {
+            env.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                    "Evaluators generated after the registry was written, they will not be registered: " + registryEntries.keySet());
+            registryEntries.clear();
+            return;
+        }
+        final var name = ofNullable(env.getOptions().get(REGISTRY_NAME)).orElseGet(this::defaultRegistryName);
+        final var originatingElements = registryOriginatingElements.toArray(new Element[0]);
+        try {
+            for (final Map.Entry<String, Aggregate> aggregate : aggregates.entrySet()) {
+                final var marker = aggregate.getValue().marker;
+                final var template = sharedCustomMethods.getOrDefault(marker.name, marker.template);
+                writeSource(aggregate.getKey(),
+                        writer -> template.writeAggregate(aggregate.getKey(), aggregate.getValue().expressions, writer),
+                        aggregate.getValue().elements.toArray(new Element[0]));
+                if (aggregate.getValue().expressions.stream().allMatch(it -> template.isStatic(it, ""))) {
+                    staticEvaluators.put(aggregate.getKey(), template);
+                    nativeMethods.add(aggregate.getKey());
+                }
+                if (template.isStateless()) {
+                    nativeBuildTime.add(aggregate.getKey());
+                }
+            }
+            final var registry = new RegistryGenerator(
+                    name, registryEntries, aggregateIndices, statelessEvaluators, staticEvaluators, constantEvaluators)
+                    .generate();
+            writeSource(name, writer -> writer.write(registry), originatingElements);
+            nativeConstructors.add(name);
+            nativeBuildTime.add(name);
+            final var services = env.getFiler().createResource(
+                    CLASS_OUTPUT, "", "META-INF/services/" + EvaluatorRegistry.class.getName(), originatingElements);
+            try (final var writer = services.openWriter()) {
+                writer.write(name + '\n');
+            }
+        } catch (final IOException e) {
+            env.getMessager().printMessage(Diagnostic.Kind.ERROR, e.getMessage());
+        }
+        registryWritten = true;
+        registryEntries.clear();
+        aggregates.clear();
+        aggregateIndices.clear();
+        registryOriginatingElements.clear();
+    }
+
+    // registries are merged by class name (ServiceLoader) so two modules must not generate the same one,
+    // the name is suffixed with a digest of the registered keys which identify the module evaluators
+    private String defaultRegistryName() {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        registryEntries.keySet().forEach(key -> digest.update((key + '\n').getBytes(StandardCharsets.UTF_8)));
+        final var firstEvaluator = registryEntries.values().iterator().next();
+        final var lastDot = firstEvaluator.lastIndexOf('.');
+        return (lastDot > 0 ? firstEvaluator.substring(0, lastDot + 1) : "") + "SimpleJelRegistry" +
+                String.format("%016x", ByteBuffer.wrap(digest.digest()).getLong());
+    }
+
+    private void generateNativeImageMetadata() {
+        final var coordinates = nativeImage();
+        if (coordinates == null || (nativeConstructors.isEmpty() && nativeMethods.isEmpty())) {
+            return;
+        }
+        if (coordinates.split("/").length != 2) {
+            env.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    NATIVE_IMAGE + " must be <groupId>/<artifactId>, got '" + coordinates + "'");
+            return;
+        }
+        final var generator = new NativeImageGenerator(nativeConstructors, nativeMethods, nativeBuildTime);
+        final var base = "META-INF/native-image/" + coordinates + '/';
+        try {
+            writeResource(base + "reflect-config.json", generator.reflectConfig());
+            final var properties = generator.properties();
+            if (!properties.isEmpty()) {
+                writeResource(base + "native-image.properties", properties);
+            }
+        } catch (final IOException e) {
+            env.getMessager().printMessage(Diagnostic.Kind.ERROR, e.getMessage());
+        }
+        nativeConstructors.clear();
+        nativeMethods.clear();
+        nativeBuildTime.clear();
+    }
+
+    private void writeResource(final String name, final String content) throws IOException {
+        final var resource = env.getFiler().createResource(CLASS_OUTPUT, "", name);
+        try (final var writer = resource.openWriter()) {
+            writer.write(content);
+        }
+    }
+
+    // skip the generation when the previously generated source is an input of the compilation with the exact same
+    // content (incremental builds) to not touch the file and let build tools see it as up to date,
+    // a type only known from the classpath is still generated since build tools can drop stale classes.
+    // Otherwise the source is streamed to the filer without building it in memory first.
+    private void writeSource(final String name, final SourceWriter source,
+                             final Element... originatingElements) throws IOException {
+        var actualSource = source;
+        if (inputTypes.contains(name)) {
+            final var buffer = new StringWriter();
+            source.write(buffer);
+            final var content = buffer.toString();
+            if (report != null) {
+                report.source(name, content.length());
+            }
+            final var lastDot = name.lastIndexOf('.');
+            try {
+                final var existing = env.getFiler().getResource(
+                        SOURCE_OUTPUT, lastDot > 0 ? name.substring(0, lastDot) : "",
+                        name.substring(lastDot + 1) + ".java");
+                if (content.contentEquals(existing.getCharContent(true))) {
+                    return;
+                }
+            } catch (final IOException | IllegalArgumentException e) {
+                // not yet generated, write it
+            }
+            actualSource = writer -> writer.write(content);
+        }
+        final var sourceFile = env.getFiler().createSourceFile(name, originatingElements);
+        try (final var writer = sourceFile.openWriter()) {
+            if (report == null) {
+                actualSource.write(writer);
+            } else {
+                final var counting = new CountingWriter(writer);
+                actualSource.write(counting);
+                report.source(name, counting.count);
+            }
+        }
+    }
+
+    private interface SourceWriter {
+        void write(Writer writer) throws IOException;
+    }
+
+    // the expression or policy of an element, at most one of them is set
+    private static class Definition {
+        private final AnnotationMirror annotation;
+        private final String expression;
+        private final String policy;
+        private final AnnotationValue policyValue;
+        private final boolean bindParameters;
+
+        private Definition(final AnnotationMirror annotation, final String expression, final String policy,
+                           final AnnotationValue policyValue, final boolean bindParameters) {
+            this.annotation = annotation;
+            this.expression = expression;
+            this.policy = policy;
+            this.policyValue = policyValue;
+            this.bindParameters = bindParameters;
+        }
     }
 
-    private void generateForMarker(final RoundEnvironment roundEnv, final DeclaredType markerAnnotation) {
-        final var config = env.getElementUtils()
-                .getAllAnnotationMirrors(markerAnnotation.asElement()).stream()
+    // measures the generated sources for the report without buffering them
+    private static class CountingWriter extends FilterWriter {
+        private long count;
+
+        private CountingWriter(final Writer delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public void write(final int c) throws IOException {
+            super.write(c);
+            count++;
+        }
+
+        @Override
+        public void write(final char[] buffer, final int offset, final int length) throws IOException {
+            super.write(buffer, offset, length);
+            count += length;
+        }
+
+        @Override
+        public void write(final String value, final int offset, final int length) throws IOException {
+            super.write(value, offset, length);
+            count += length;
+        }
+    }
+
+    private Optional<Marker> loadMarker(final TypeElement annotation) {
+        final var config = annotation.getAnnotationMirrors().stream()
                 .filter(this::findMeta)
-                .findFirst()
-                .orElseThrow(IllegalStateException::new);
-        final var configs = config.getElementValues().entrySet().stream()
+                .findFirst();
+        if (config.isEmpty()) {
+            return Optional.empty();
+        }
+        final var configs = config.orElseThrow(IllegalStateException::new).getElementValues().entrySet().stream()
                 .collect(toMap(e -> e.getKey().getSimpleName().toString(), e -> e.getValue().getValue()));
         final var expressionName = ofNullable(configs.get("expressionElementName"))
                 .map(String::valueOf).orElse("value");
+        final var policyName = ofNullable(configs.get("policyElementName")).map(String::valueOf).orElse("");
+        final var bindParametersName = ofNullable(configs.get("bindParametersElementName"))
+                .map(String::valueOf).orElse("");
         final var customMethods = ofNullable(configs.get("customMethods"))
                 .map(String::valueOf).orElse("");
         final var contextName = ofNullable(configs.get("contextVariableName"))
                 .map(String::valueOf).orElse("context");
         final var contextType = ofNullable(configs.get("contextType")).map(String::valueOf).orElse("");
         final var returnType = ofNullable(configs.get("returnType")).map(String::valueOf).orElse("");
+        final var evaluatorInterfaceName = ofNullable(configs.get("evaluatorInterface")).map(String::valueOf).orElse("");
         final var evaluatorClassNamePattern = ofNullable(configs.get("evaluatorClassNamePattern"))
                 .map(String::valueOf).orElse("${class}$SimpleJelEvaluator");
         final var evaluatorMethodNamePattern = ofNullable(configs.get("evaluatorMethodNamePattern"))
                 .map(String::valueOf).orElse("${class}$${method}$SimpleJelEvaluator");
-        final var evaluatorMarkers = ofNullable(configs.get("evaluatorMarkers"))
-                .map(String[].class::cast).orElseGet(() -> new String[0]);
-        final var imports = ofNullable(configs.get("imports")).map(String[].class::cast).orElseGet(() -> new String[0]);
+        final var aggregateClassNamePattern = ofNullable(configs.get("aggregateClassNamePattern"))
+                .map(String::valueOf).orElse("");
+        final var evaluatorMarkers = stringList(configs.get("evaluatorMarkers"));
+        final var imports = stringList(configs.get("imports"));
+        final var deduplicate = Boolean.TRUE.equals(configs.get("deduplicate"));
+        final var batch = Boolean.TRUE.equals(configs.get("batch"));
+        final var bindParameters = Boolean.TRUE.equals(configs.get("bindParameters"));
+        final var recordEvents = Boolean.TRUE.equals(configs.get("recordEvents"));
+        final var fuseClassExpression = Boolean.TRUE.equals(configs.get("fuseClassExpression"));
 
-        final var annotation = TypeElement.class.cast(markerAnnotation.asElement());
-        final var expressionMarker = env.getElementUtils().getAllMembers(annotation).stream()
-                .filter(it -> it.getSimpleName().contentEquals(expressionName))
-                .findFirst()
-                .map(ExecutableElement.class::cast);
-        if (expressionMarker.isEmpty()) {
+        if (ElementFilter.methodsIn(annotation.getEnclosedElements()).stream()
+                .noneMatch(it -> it.getSimpleName().contentEquals(expressionName))) {
             env.getMessager().printMessage(
-                    Diagnostic.Kind.ERROR, "no @MetaJel.Expression found for " + markerAnnotation);
-            return;
+                    Diagnostic.Kind.ERROR, "no @MetaJel.Expression found for " + annotation, annotation);
+            return Optional.empty();
+        }
+        if (!policyName.isBlank() && ElementFilter.methodsIn(annotation.getEnclosedElements()).stream()
+                .noneMatch(it -> it.getSimpleName().contentEquals(policyName))) {
+            env.getMessager().printMessage(
+                    Diagnostic.Kind.ERROR, "no policy member '" + policyName + "' found for " + annotation, annotation);
+            return Optional.empty();
+        }
+        if (!bindParametersName.isBlank() && ElementFilter.methodsIn(annotation.getEnclosedElements()).stream()
+                .noneMatch(it -> it.getSimpleName().contentEquals(bindParametersName) &&
+                        it.getReturnType().getKind() == TypeKind.BOOLEAN)) {
+            env.getMessager().printMessage(
+                    Diagnostic.Kind.ERROR, "no boolean member '" + bindParametersName + "' found for " + annotation,
+                    annotation);
+            return Optional.empty();
         }
 
-        roundEnv.getElementsAnnotatedWith(annotation)
-                .forEach(element -> generate(
-                        annotation, expressionMarker.orElseThrow(IllegalStateException::new),
-                        contextType, returnType, evaluatorMarkers, imports, element,
-                        evaluatorClassNamePattern, evaluatorMethodNamePattern, contextName, customMethods));
+        return findEvaluatorInterface(
+                annotation, evaluatorInterfaceName,
+                EvaluatorTemplate.simpleName(contextType), EvaluatorTemplate.simpleName(returnType))
+                .filter(evaluatorInterface -> {
+                    if (batch && !EvaluatorTemplate.supportsBatch(evaluatorInterface.name)) {
+                        env.getMessager().printMessage(
+                                Diagnostic.Kind.ERROR, "batch is only supported with " +
+                                        "java.util.function.Predicate and java.util.function.Function " +
+                                        "evaluators, got " + evaluatorInterface.name, annotation);
+                        return false;
+                    }
+                    if ((bindParameters || !bindParametersName.isBlank()) &&
+                            (batch || !EvaluatorTemplate.supportsParameters(evaluatorInterface.name))) {
+                        env.getMessager().printMessage(
+                                Diagnostic.Kind.ERROR, "bindParameters is only supported without batch and with " +
+                                        "java.util.function.Predicate and java.util.function.Function " +
+                                        "evaluators, got " + evaluatorInterface.name +
+                                        (batch ? " with batch" : ""), annotation);
+                        return false;
+                    }
+                    if (fuseClassExpression && !"boolean".equals(evaluatorInterface.returnType)) {
+                        env.getMessager().printMessage(
+                                Diagnostic.Kind.ERROR, "fuseClassExpression is only supported with boolean " +
+                                        "evaluators, got " + evaluatorInterface.name, annotation);
+                        return false;
+                    }
+                    return true;
+                })
+                .map(evaluatorInterface -> new Marker(
+                        annotation.getQualifiedName().toString(),
+                        env.getElementUtils().getBinaryName(annotation).toString(),
+                        expressionName, policyName, bindParametersName, contextName, contextType, returnType,
+                        customMethods,
+                        evaluatorClassNamePattern, evaluatorMethodNamePattern,
+                        batch || bindParameters || recordEvents ? "" : aggregateClassNamePattern,
+                        evaluatorMarkers, imports, deduplicate && !recordEvents, batch, bindParameters, recordEvents,
+                        fuseClassExpression, evaluatorInterface));
     }
 
-    private void generate(final TypeElement marker, final ExecutableElement expressionMarker,
-                          final String contextType, final String returnType, final String[] evaluatorMarkers,
-                          final String[] customImports, final Element element,
-                          final String classPatternName, final String methodPatternName,
-                          final String contextName, final String customMethods) {
-        final var config = element.getAnnotationMirrors().stream()
-                .filter(it -> it.getAnnotationType().asElement() == marker)
-                .findFirst()
-                .orElseThrow(() -> new IllegalStateException("Didn't find " + marker + " on " + element));
-        final var expression = String.valueOf(config.getElementValues().get(expressionMarker).getValue());
-        final var name = TypeElement.class.isInstance(element) ?
-                new Substitutor(key -> {
+    private boolean findMeta(final AnnotationMirror e) {
+        return TypeElement.class.cast(e.getAnnotationType().asElement())
+                .getQualifiedName().contentEquals(MetaJel.class.getName());
+    }
+
+    private List<String> stringList(final Object value) {
+        if (value == null) {
+            return List.of();
+        }
+        return ((List<?>) value).stream()
+                .map(it -> String.valueOf(AnnotationValue.class.cast(it).getValue()))
+                .collect(toList());
+    }
+
+    // the functional interface must have a single abstract method taking the context,
+    // type variables are bound to the context and return types depending where they are used
+    private Optional<EvaluatorInterface> findEvaluatorInterface(final TypeElement markerAnnotation,
+                                                                final String configuredName,
+                                                                final String contextSimpleType,
+                                                                final String returnSimpleType) {
+        final var name = !configuredName.isBlank() ?
+                configuredName : EvaluatorTemplate.defaultEvaluatorInterface(returnSimpleType);
+        final var type = env.getElementUtils().getTypeElement(name);
+        if (type == null || type.getKind() != ElementKind.INTERFACE) {
+            env.getMessager().printMessage(
+                    Diagnostic.Kind.ERROR, "Evaluator interface '" + name + "' not found for " + markerAnnotation);
+            return Optional.empty();
+        }
+        final var methods = ElementFilter.methodsIn(env.getElementUtils().getAllMembers(type)).stream()
+                .filter(it -> it.getModifiers().contains(Modifier.ABSTRACT))
+                .filter(it -> !isObjectMethod(it))
+                .collect(toList());
+        if (methods.size() != 1 || methods.get(0).getParameters().size() != 1) {
+            env.getMessager().printMessage(
+                    Diagnostic.Kind.ERROR, "'" + name + "' is not a functional interface taking a single parameter " +
+                            "(used by " + markerAnnotation + ")");
+            return Optional.empty();
+        }
+        final var method = methods.get(0);
+        final var parameterType = method.getParameters().get(0).asType();
+        final var methodReturnType = method.getReturnType();
+        final var boxedReturnType = EvaluatorTemplate.boxed(returnSimpleType);
+        final var generics = type.getTypeParameters().isEmpty() ? "" : type.getTypeParameters().stream()
+                .map(it -> {
+                    if (isTypeVariable(parameterType, it.getSimpleName().toString())) {
+                        return contextSimpleType;
+                    }
+                    if (isTypeVariable(methodReturnType, it.getSimpleName().toString())) {
+                        return boxedReturnType;
+                    }
+                    return "Object";
+                })
+                .collect(joining(", ", "<", ">"));
+        return Optional.of(new EvaluatorInterface(
+                type.getQualifiedName().toString(), type.getSimpleName() + generics, method.getSimpleName().toString(),
+                methodReturnType.getKind() == TypeKind.TYPEVAR ? boxedReturnType : methodReturnType.toString(),
+                parameterType.getKind() == TypeKind.TYPEVAR ? contextSimpleType : parameterType.toString()));
+    }
+
+    private boolean isTypeVariable(final TypeMirror type, final String name) {
+        return type.getKind() == TypeKind.TYPEVAR && type.toString().equals(name);
+    }
+
+    private boolean isObjectMethod(final ExecutableElement method) {
+        final var name = method.getSimpleName().toString();
+        final var parameters = method.getParameters().size();
+        return ("equals".equals(name) && parameters == 1) ||
+                (("hashCode".equals(name) || "toString".equals(name)) && parameters == 0);
+    }
+
+    private void generate(final Marker marker, final Element element) {
+        final var definition = definition(marker, element)
+                .orElseThrow(() -> new IllegalStateException("Didn't find " + marker.name + " on " + element));
+        if (!definition.expression.isBlank() && !definition.policy.isBlank()) {
+            env.getMessager().printMessage(
+                    Diagnostic.Kind.ERROR, "Either " + marker.expressionName + " or " + marker.policyName +
+                            " can be set on " + marker.name, element, definition.annotation);
+            return;
+        }
+        final var isClass = TypeElement.class.isInstance(element);
+        final var typeDefinition = marker.fuseClassExpression && !isClass ?
+                fusedDefinition(marker, element.getEnclosingElement()) : null;
+        final PolicyCompiler.Policy compiled;
+        try {
+            compiled = typeDefinition == null ?
+                    compile(marker, definition) : fuse(marker, typeDefinition, definition);
+        } catch (final PolicyCompiler.PolicyException e) {
+            env.getMessager().printMessage(
+                    Diagnostic.Kind.ERROR, e.getMessage(), element, definition.annotation, definition.policyValue);
+            return;
+        }
+        final var expression = compiled.body;
+        final var members = compiled.members;
+        final var name = isClass ?
+                marker.classPattern.replace(key -> {
                     if ("class" .equals(key)) {
                         return className(element);
                     }
                     throw new IllegalArgumentException(key);
-                }).replace(classPatternName) :
-                new Substitutor(key -> {
+                }) :
+                marker.methodPattern.replace(key -> {
                     switch (key) {
                         case "class":
                             return className(ExecutableElement.class.cast(element).getEnclosingElement());
                         case "method":
-                            return ExecutableElement.class.cast(element).getSimpleName().toString();
+                            return methodName(marker, ExecutableElement.class.cast(element));
                         default:
                             throw new IllegalArgumentException(key);
                     }
-                }).replace(methodPatternName);
-        final var lastDot = name.lastIndexOf('.');
-        final var packageName = lastDot > 0 ? name.substring(0, lastDot) : "";
-        final var className = lastDot > 0 ? name.substring(lastDot + 1) : name;
-        final var returnSimpleType = returnType.isBlank() ? "Object" : returnType.substring(returnType.lastIndexOf('.') + 1);
-        final var contextSimpleType = contextType.isBlank() ? "Object" : contextType.substring(contextType.lastIndexOf('.') + 1);
-        final var annotations = Stream.of(evaluatorMarkers)
-                .map(it -> '@' + it.substring(it.lastIndexOf('.') + 1))
-                .collect(joining("\n", "\n", "\n")).trim();
-        final var imports = Stream.concat(
-                Stream.of("java.util.function.Function", contextType, returnType),
-                Stream.concat(Stream.of(customImports), Stream.of(evaluatorMarkers)))
-                .filter(it -> !it.isBlank() && it.contains("."))
-                .sorted()
-                .map(it -> "import " + it + ";\n")
-                .collect(joining("\n"));
+                });
+        // the template only binds the parameters the expression uses, without any the evaluator is a plain one
+        final var parameters = new LinkedHashMap<String, String>();
+        if (definition.bindParameters && !isClass) {
+            for (final var parameter : ExecutableElement.class.cast(element).getParameters()) {
+                parameters.put(parameter.getSimpleName().toString(),
+                        env.getTypeUtils().erasure(parameter.asType()).toString());
+            }
+        }
+        final var bound = !parameters.isEmpty() && marker.template.bindsParameters(expression, parameters);
+        if (!bound) {
+            parameters.clear();
+        }
+        final var registryKey = isClass ?
+                Evaluators.key(marker.binaryName, className(element), null) :
+                Evaluators.key(
+                        marker.binaryName, className(element.getEnclosingElement()), element.getSimpleName().toString(),
+                        ExecutableElement.class.cast(element).getParameters().stream()
+                                .map(it -> binaryName(it.asType()))
+                                .toArray(String[]::new));
+        if (registryEntries.containsKey(registryKey)) {
+            env.getMessager().printMessage(
+                    Diagnostic.Kind.ERROR, "Duplicated evaluator key '" + registryKey + "'", element, definition.annotation);
+            return;
+        }
+        if (report != null) {
+            report.expression(registryKey, expression);
+        }
+
+        // aggregated evaluators are only reachable through the registry so they need it
+        final var template = template(marker, element);
+        if (marker.aggregatePattern != null && members.isBlank() && !bound && !isRegistrySkipped() && !registryWritten) {
+            final var aggregateName = aggregateName(marker, element);
+            final int index = aggregates.computeIfAbsent(aggregateName, k -> new Aggregate(marker))
+                    .add(expression, element);
+            registryEntries.put(registryKey, aggregateName);
+            aggregateIndices.put(registryKey, index);
+            registryOriginatingElements.add(element);
+            return;
+        }
+
+        // identical evaluators are generated once and only reachable through the registry
+        if (marker.deduplicate && !isRegistrySkipped()) {
+            final var existing = sharedEvaluators.putIfAbsent(marker.evaluatorSignature(expression, members, parameters), name);
+            if (existing != null) {
+                registryEntries.put(registryKey, existing);
+                registryOriginatingElements.add(element);
+                return;
+            }
+        }
+
         try {
-            final var sourceFile = env.getFiler().createSourceFile(name);
-            try (final var writer = sourceFile.openWriter()) {
-                writer.write("" +
-                        (!packageName.isBlank() ? "package " + packageName + ";\n\n" : "") +
-                        (imports.isBlank() ? "" : (imports + "\n\n")) +
-                        (annotations.isBlank() ? "" : (annotations + "\n")) +
-                        "public class " + className + " implements Function<" + contextSimpleType + ", " + returnSimpleType + "> {\n" +
-                        "    @Override\n" +
-                        "    public " + returnSimpleType + " apply(final " + contextSimpleType + " " + contextName + ") {\n" +
-                        "        " + expression + (expression.endsWith(";") ? "" : ";") + "\n" +
-                        "    }\n" +
-                        (customMethods.isBlank() ? "" : ("\n" + customMethods + "\n")) +
-                        "}\n");
+            final var source = expression;
+            final var evaluatorMembers = members;
+            final var eventKey = marker.recordEvents ? registryKey : null;
+            writeSource(name, writer -> template.write(
+                    name, source, evaluatorMembers, parameters, eventKey, writer), element);
+        } catch (final IOException e) {
+            env.getMessager().printMessage(Diagnostic.Kind.ERROR, e.getMessage());
+            return;
+        }
+
+        nativeConstructors.add(name);
+        if (marker.template.isStateless()) {
+            statelessEvaluators.add(name);
+            nativeBuildTime.add(name);
+            if (!bound) {
+                staticEvaluators.put(name, marker.template);
+                nativeMethods.add(name);
             }
+        }
+        if (marker.template.isConstant(expression)) {
+            constantEvaluators.add(name);
+        }
+        registryEntries.put(registryKey, name);
+        registryOriginatingElements.add(element);
+    }
+
+    // the custom methods of a marker are generated once, in the package of the marker, and evaluators extend this
+    // class to share a single copy of their bytecode; isolated builds (registry skipped) keep them in each evaluator
+    private EvaluatorTemplate template(final Marker marker, final Element element) {
+        if (isRegistrySkipped()) {
+            return marker.template;
+        }
+        final var existing = sharedCustomMethods.get(marker.name);
+        if (existing != null) {
+            return existing;
+        }
+        if (!marker.template.canShareCustomMethods()) { // checked once per marker, it parses the custom methods
+            sharedCustomMethods.put(marker.name, marker.template);
+            return marker.template;
+        }
+        // the binary name keeps nested markers unique and the base only depends on the marker so it is deterministic
+        final var baseName = marker.binaryName + "$SimpleJelBase";
+        final var template = marker.template.extending(baseName);
+        try {
+            writeSource(baseName, writer -> template.writeBase(baseName, writer), element);
         } catch (final IOException e) {
             env.getMessager().printMessage(Diagnostic.Kind.ERROR, e.getMessage());
+            return marker.template;
+        }
+        if (marker.template.isStateless()) { // build time initialized evaluators need their parent initialized too
+            nativeBuildTime.add(baseName);
+        }
+        sharedCustomMethods.put(marker.name, template);
+        return template;
+    }
+
+    // the marker of the element, for types it can be inherited from a parent if the marker is @Inherited
+    private Optional<Definition> definition(final Marker marker, final Element element) {
+        return env.getElementUtils().getAllAnnotationMirrors(element).stream()
+                .filter(it -> TypeElement.class.cast(it.getAnnotationType().asElement())
+                        .getQualifiedName().contentEquals(marker.name))
+                .findFirst()
+                .map(config -> {
+                    final var values = env.getElementUtils().getElementValuesWithDefaults(config);
+                    final var expression = values.entrySet().stream()
+                            .filter(it -> it.getKey().getSimpleName().contentEquals(marker.expressionName))
+                            .map(it -> String.valueOf(it.getValue().getValue()))
+                            .findFirst()
+                            .orElseThrow(() -> new IllegalStateException("No " + marker.expressionName + " on " + config));
+                    final var bindParameters = marker.bindParameters || (!marker.bindParametersName.isBlank() &&
+                            values.entrySet().stream()
+                                    .anyMatch(it -> it.getKey().getSimpleName().contentEquals(marker.bindParametersName) &&
+                                            Boolean.TRUE.equals(it.getValue().getValue())));
+                    if (marker.policyName.isBlank()) {
+                        return new Definition(config, expression, "", null, bindParameters);
+                    }
+                    final var policy = values.entrySet().stream()
+                            .filter(it -> it.getKey().getSimpleName().contentEquals(marker.policyName))
+                            .findFirst()
+                            .orElseThrow(() -> new IllegalStateException("No " + marker.policyName + " on " + config));
+                    return new Definition(
+                            config, expression, String.valueOf(policy.getValue().getValue()), policy.getValue(),
+                            bindParameters);
+                });
+    }
+
+    // the definition of the type to evaluate before the method one, null if there is none or it is invalid
+    // (the generation of the type evaluator reports the error)
+    private Definition fusedDefinition(final Marker marker, final Element type) {
+        final var definition = definition(marker, type)
+                .filter(it -> it.expression.isBlank() != it.policy.isBlank())
+                .orElse(null);
+        if (definition == null) {
+            return null;
+        }
+        try {
+            compile(marker, definition);
+            return definition;
+        } catch (final PolicyCompiler.PolicyException e) {
+            return null;
+        }
+    }
+
+    private PolicyCompiler.Policy compile(final Marker marker, final Definition definition) {
+        return definition.policy.isBlank() ?
+                new PolicyCompiler.Policy(definition.expression, "") :
+                new PolicyCompiler(marker.contextName).compile(definition.policy);
+    }
+
+    // a single short-circuiting evaluator for the type and method expressions, the type one is evaluated first
+    private PolicyCompiler.Policy fuse(final Marker marker, final Definition type, final Definition method) {
+        if (!type.policy.isBlank() && !method.policy.isBlank()) { // a single policy shares its locals and helpers
+            final var compiler = new PolicyCompiler(marker.contextName);
+            compiler.compile(method.policy); // errors are reported on the method policy
+            return compiler.compile("(" + type.policy + ") and (" + method.policy + ")");
+        }
+        final var typePart = compile(marker, type);
+        final var methodPart = compile(marker, method);
+        final var helper = "" +
+                "    private " + (marker.template.isStatic(typePart.body, typePart.members) ? "static " : "") +
+                "boolean classExpression(final " + marker.evaluatorInterface.parameterType + " " +
+                marker.contextName + ") {\n" +
+                "        " + statement(typePart.body) + "\n" +
+                "    }\n";
+        return new PolicyCompiler.Policy(
+                "if (!classExpression(" + marker.contextName + ")) {\n" +
+                        "            return false;\n" +
+                        "        }\n" +
+                        "        " + statement(methodPart.body),
+                Stream.of(typePart.members, methodPart.members, helper)
+                        .filter(it -> !it.isBlank())
+                        .collect(joining("\n")));
+    }
+
+    private String statement(final String body) {
+        return body.endsWith(";") || body.endsWith("}") ? body : body + ";";
+    }
+
+    private String aggregateName(final Marker marker, final Element element) {
+        final var name = marker.aggregatePattern.replace(key -> {
+            switch (key) {
+                case "package":
+                    return env.getElementUtils().getPackageOf(element).getQualifiedName().toString();
+                case "marker":
+                    return marker.name.substring(marker.name.lastIndexOf('.') + 1);
+                default:
+                    throw new IllegalArgumentException(key);
+            }
+        });
+        return name.startsWith(".") ? name.substring(1) : name; // default package
+    }
+
+    // annotated overloads get their position among them to not generate the same evaluator class twice
+    private String methodName(final Marker marker, final ExecutableElement method) {
+        final var name = method.getSimpleName().toString();
+        final var overloads = ElementFilter.methodsIn(method.getEnclosingElement().getEnclosedElements()).stream()
+                .filter(it -> it.getSimpleName().contentEquals(name))
+                .filter(it -> it.getAnnotationMirrors().stream()
+                        .anyMatch(a -> TypeElement.class.cast(a.getAnnotationType().asElement())
+                                .getQualifiedName().contentEquals(marker.name)))
+                .collect(toList());
+        return overloads.size() > 1 ? name + '$' + overloads.indexOf(method) : name;
+    }
+
+    // same naming as Class#getTypeName() for the erased type, keys are computed from the reflection at runtime
+    private String binaryName(final TypeMirror type) {
+        final var erased = env.getTypeUtils().erasure(type);
+        switch (erased.getKind()) {
+            case ARRAY:
+                return binaryName(ArrayType.class.cast(erased).getComponentType()) + "[]";
+            case DECLARED:
+                return env.getElementUtils().getBinaryName(
+                        TypeElement.class.cast(DeclaredType.class.cast(erased).asElement())).toString();
+            default:
+                return erased.toString();
         }
     }
 
@@ -19,6 +19,43 @@ public class Substitutor {
         this.placeholders = placeholders;
     }
 
+    /**
+     * @param pattern the pattern to parse once, for example {@code ${class}$SimpleJelEvaluator}.
+     * @return a template resolving the placeholders of the pattern without parsing it again.
+     */
+    public static Template compile(final String pattern) {
+        final var literals = new ArrayList<String>();
+        final var names = new ArrayList<String>();
+        final var defaults = new ArrayList<String>();
+        final var literal = new StringBuilder();
+        int pos = 0;
+        while (pos < pattern.length()) {
+            final int start = pattern.indexOf("${", pos);
+            if (start < 0) {
+                literal.append(pattern, pos, pattern.length());
+                break;
+            }
+            final int end = pattern.indexOf('}', start + 2);
+            final int nested = pattern.indexOf("${", start + 2);
+            if (end < 0 || (nested >= 0 && nested < end) // unusual pattern, keep the generic resolution
+                    || (start > 0 && pattern.charAt(start - 1) == ESCAPE)) {
+                return new Template(pattern, null, null, null);
+            }
+            literal.append(pattern, pos, start);
+            literals.add(literal.toString());
+            literal.setLength(0);
+
+            final var expression = pattern.substring(start + 2, end);
+            final int delimiter = expression.indexOf(":-");
+            names.add(delimiter < 0 ? expression : expression.substring(0, delimiter));
+            defaults.add(delimiter < 0 ? null : expression.substring(delimiter + 2));
+            pos = end + 1;
+        }
+        literals.add(literal.toString());
+        return new Template(
+                pattern, literals.toArray(new String[0]), names.toArray(new String[0]), defaults.toArray(new String[0]));
+    }
+
     public String replace(final String source) {
         if (source == null) {
             return null;
@@ -131,6 +168,56 @@ public class Substitutor {
         return len;
     }
 
+    /**
+     * A pattern parsed once, resolving it only concatenates its literals and placeholder values.
+     */
+    public static final class Template {
+        private final String pattern;
+        private final String[] literals; // one more than names, null if the pattern needs the generic resolution
+        private final String[] names;
+        private final String[] defaults;
+        private final int literalsLength;
+
+        private Template(final String pattern, final String[] literals, final String[] names, final String[] defaults) {
+            this.pattern = pattern;
+            this.literals = literals;
+            this.names = names;
+            this.defaults = defaults;
+            this.literalsLength = literals == null ? 0 : String.join("", literals).length();
+        }
+
+        /**
+         * @param placeholders the placeholder values, {@code null} for unknown ones.
+         * @return the resolved pattern.
+         */
+        public String replace(final Function<String, String> placeholders) {
+            if (literals == null) {
+                return new Substitutor(placeholders).replace(pattern);
+            }
+            if (names.length == 0) {
+                return literals[0];
+            }
+            final var out = new StringBuilder(literalsLength + 64 * names.length).append(literals[0]);
+            boolean recursive = false;
+            for (int i = 0; i < names.length; i++) {
+                final var value = ofNullable(placeholders.apply(names[i])).orElse(defaults[i]);
+                if (value == null) { // unresolved placeholders are kept
+                    out.append("${").append(names[i]);
+                    if (defaults[i] != null) {
+                        out.append(":-").append(defaults[i]);
+                    }
+                    out.append('}');
+                } else {
+                    recursive |= value.contains("${");
+                    out.append(value);
+                }
+                out.append(literals[i + 1]);
+            }
+            // values referencing other placeholders are resolved as the substitutor does
+            return recursive ? new Substitutor(placeholders).replace(out.toString()) : out.toString();
+        }
+    }
+
     private void checkCyclicSubstitution(final String varName, final List<String> priorVariables) {
         if (!priorVariables.contains(varName)) {
             return;
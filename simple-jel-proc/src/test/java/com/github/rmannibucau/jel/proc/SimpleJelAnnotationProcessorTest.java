@@ -1,11 +1,19 @@
 package com.github.rmannibucau.jel.proc;
 
 import com.github.rmannibucau.jel.api.annotation.MetaJel;
+import com.github.rmannibucau.jel.api.batch.BatchEvaluation;
+import com.github.rmannibucau.jel.api.batch.BatchPredicate;
+import com.github.rmannibucau.jel.api.event.EvaluationEvent;
+import com.github.rmannibucau.jel.api.parameters.ParametersPredicate;
+import com.github.rmannibucau.jel.api.registry.EvaluatorRegistry;
 import com.google.testing.compile.Compilation;
 import com.google.testing.compile.JavaFileObjects;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordingFile;
 import org.junit.jupiter.api.Test;
 
 import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
 import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -13,11 +21,21 @@ import java.io.InputStream;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
 import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
+import static com.google.testing.compile.Compilation.Status.FAILURE;
 import static com.google.testing.compile.Compilation.Status.SUCCESS;
 import static com.google.testing.compile.Compiler.javac;
 import static java.lang.annotation.ElementType.METHOD;
@@ -28,12 +46,19 @@ import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toMap;
 import static javax.tools.JavaFileObject.Kind.CLASS;
 import static javax.tools.JavaFileObject.Kind.SOURCE;
+import static javax.tools.StandardLocation.CLASS_OUTPUT;
+import static javax.tools.StandardLocation.SOURCE_OUTPUT;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class SimpleJelAnnotationProcessorTest {
     @Test
-    void generate() throws Exception {
-        validateGeneration(javac()
+    void generate() throws Throwable {
+        validateGeneration("com.github.rmannibucau.jel.proc.Evaluable", javac()
                 .withProcessors(new SimpleJelAnnotationProcessor())
                 .compile(List.of(
                         JavaFileObjects.forSourceLines(
@@ -65,8 +90,8 @@ class SimpleJelAnnotationProcessorTest {
     }
 
     @Test
-    void apiDefinedOutsideCompilationUnit() throws Exception {
-        validateGeneration(javac()
+    void apiDefinedOutsideCompilationUnit() throws Throwable {
+        validateGeneration(Evaluable.class.getName(), javac()
                 .withClasspath(List.of(
                         Paths.get("target/test-classes").toFile(),
                         Paths.get("../simple-jel-api/target/classes").toFile()))
@@ -85,7 +110,1279 @@ class SimpleJelAnnotationProcessorTest {
                                         "}\n"))));
     }
 
-    private void validateGeneration(final Compilation compilation) throws Exception {
+    @Test
+    void evaluatorInterfaceFromReturnType() throws Exception {
+        final var compilation = javac()
+                .withProcessors(new SimpleJelAnnotationProcessor())
+                .compile(List.of(
+                        JavaFileObjects.forSourceLines(
+                                "Dummy",
+                                "package com.github.rmannibucau.jel.proc;\n" +
+                                        "\n" +
+                                        "public class Dummy {\n" +
+                                        "  @Check(\"return context.isEmpty()\")\n" +
+                                        "  public void check() {}\n" +
+                                        "  @Count(\"return context.length()\")\n" +
+                                        "  public void count() {}\n" +
+                                        "}\n"),
+                        JavaFileObjects.forSourceLines(
+                                "Check",
+                                "package com.github.rmannibucau.jel.proc;\n" +
+                                        "\n" +
+                                        "import com.github.rmannibucau.jel.api.annotation.MetaJel;\n" +
+                                        "\n" +
+                                        "@MetaJel(contextType = \"java.lang.String\", returnType = \"boolean\")\n" +
+                                        "public @interface Check {\n" +
+                                        "    String value();\n" +
+                                        "}\n"),
+                        JavaFileObjects.forSourceLines(
+                                "Count",
+                                "package com.github.rmannibucau.jel.proc;\n" +
+                                        "\n" +
+                                        "import com.github.rmannibucau.jel.api.annotation.MetaJel;\n" +
+                                        "\n" +
+                                        "@MetaJel(contextType = \"java.lang.String\", returnType = \"int\"," +
+                                        " evaluatorMethodNamePattern = \"${class}$${method}$Counter\")\n" +
+                                        "public @interface Count {\n" +
+                                        "    String value();\n" +
+                                        "}\n")));
+        assertEquals(SUCCESS, compilation.status(), () -> compilation.errors().toString());
+
+        final var contents = compilation.generatedFiles().stream()
+                .filter(it -> it.getKind() == SOURCE)
+                .collect(toMap(FileObject::getName, it -> {
+                    try {
+                        return it.getCharContent(true).toString();
+                    } catch (final IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }));
+        assertEquals("package com.github.rmannibucau.jel.proc;\n" +
+                "\n" +
+                "import java.lang.String;\n" +
+                "\n" +
+                "import java.util.function.Predicate;\n" +
+                "\n" +
+                "\n" +
+                "public class Dummy$check$SimpleJelEvaluator implements Predicate<String> {\n" +
+                "    public static final Dummy$check$SimpleJelEvaluator INSTANCE = new Dummy$check$SimpleJelEvaluator();\n" +
+                "\n" +
+                "    public static boolean evaluate(final String context) {\n" +
+                "        return context.isEmpty();\n" +
+                "    }\n" +
+                "\n" +
+                "    @Override\n" +
+                "    public boolean test(final String context) {\n" +
+                "        return evaluate(context);\n" +
+                "    }\n" +
+                "}\n", contents.get("/SOURCE_OUTPUT/com/github/rmannibucau/jel/proc/Dummy$check$SimpleJelEvaluator.java"),
+                contents::toString);
+        assertEquals("package com.github.rmannibucau.jel.proc;\n" +
+                "\n" +
+                "import java.lang.String;\n" +
+                "\n" +
+                "import java.util.function.ToIntFunction;\n" +
+                "\n" +
+                "\n" +
+                "public class Dummy$count$Counter implements ToIntFunction<String> {\n" +
+                "    public static final Dummy$count$Counter INSTANCE = new Dummy$count$Counter();\n" +
+                "\n" +
+                "    public static int evaluate(final String context) {\n" +
+                "        return context.length();\n" +
+                "    }\n" +
+                "\n" +
+                "    @Override\n" +
+                "    public int applyAsInt(final String context) {\n" +
+                "        return evaluate(context);\n" +
+                "    }\n" +
+                "}\n", contents.get("/SOURCE_OUTPUT/com/github/rmannibucau/jel/proc/Dummy$count$Counter.java"),
+                contents::toString);
+    }
+
+    @Test
+    void customEvaluatorInterface() {
+        final var compilation = javac()
+                .withProcessors(new SimpleJelAnnotationProcessor())
+                .compile(List.of(
+                        JavaFileObjects.forSourceLines(
+                                "Dummy",
+                                "package com.github.rmannibucau.jel.proc;\n" +
+                                        "\n" +
+                                        "public class Dummy {\n" +
+                                        "  @Rule(\"return context.length() > 2\")\n" +
+                                        "  public void check() {}\n" +
+                                        "}\n"),
+                        JavaFileObjects.forSourceLines(
+                                "StringRule",
+                                "package com.github.rmannibucau.jel.proc;\n" +
+                                        "\n" +
+                                        "public interface StringRule {\n" +
+                                        "    boolean matches(String value);\n" +
+                                        "}\n"),
+                        JavaFileObjects.forSourceLines(
+                                "Rule",
+                                "package com.github.rmannibucau.jel.proc;\n" +
+                                        "\n" +
+                                        "import com.github.rmannibucau.jel.api.annotation.MetaJel;\n" +
+                                        "\n" +
+                                        "@MetaJel(evaluatorInterface = \"com.github.rmannibucau.jel.proc.StringRule\")\n" +
+                                        "public @interface Rule {\n" +
+                                        "    String value();\n" +
+                                        "}\n")));
+        assertEquals(SUCCESS, compilation.status(), () -> compilation.errors().toString());
+        assertTrue(compilation.generatedFile(SOURCE_OUTPUT, "com/github/rmannibucau/jel/proc/Dummy$check$SimpleJelEvaluator.java")
+                .map(it -> {
+                    try {
+                        return it.getCharContent(true).toString();
+                    } catch (final IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                })
+                .orElseThrow()
+                .contains("public class Dummy$check$SimpleJelEvaluator implements StringRule {\n" +
+                        "    public static final Dummy$check$SimpleJelEvaluator INSTANCE = new Dummy$check$SimpleJelEvaluator();\n" +
+                        "\n" +
+                        "    public static boolean evaluate(final java.lang.String context) {\n" +
+                        "        return context.length() > 2;\n" +
+                        "    }\n" +
+                        "\n" +
+                        "    @Override\n" +
+                        "    public boolean matches(final java.lang.String context) {\n" +
+                        "        return evaluate(context);\n"));
+    }
+
+    @Test
+    void evaluatorMarkersAndImports() throws IOException {
+        final var compilation = javac()
+                .withProcessors(new SimpleJelAnnotationProcessor())
+                .compile(List.of(
+                        JavaFileObjects.forSourceLines(
+                                "Dummy",
+                                "package com.github.rmannibucau.jel.proc;\n" +
+                                        "\n" +
+                                        "public class Dummy {\n" +
+                                        "  @Marked(\"return List.of(1)\")\n" +
+                                        "  public void marked() {}\n" +
+                                        "}\n"),
+                        JavaFileObjects.forSourceLines(
+                                "Marked",
+                                "package com.github.rmannibucau.jel.proc;\n" +
+                                        "\n" +
+                                        "import com.github.rmannibucau.jel.api.annotation.MetaJel;\n" +
+                                        "\n" +
+                                        "@MetaJel(evaluatorMarkers = \"java.lang.Deprecated\", imports = \"java.util.List\")\n" +
+                                        "public @interface Marked {\n" +
+                                        "    String value();\n" +
+                                        "}\n")));
+        assertEquals(SUCCESS, compilation.status(), () -> compilation.errors().toString());
+        assertEquals("package com.github.rmannibucau.jel.proc;\n" +
+                "\n" +
+                "import java.lang.Deprecated;\n" +
+                "\n" +
+                "import java.util.List;\n" +
+                "\n" +
+                "import java.util.function.Function;\n" +
+                "\n" +
+                "\n" +
+                "@Deprecated\n" +
+                "public class Dummy$marked$SimpleJelEvaluator implements Function<Object, Object> {\n" +
+                "    public static final Dummy$marked$SimpleJelEvaluator INSTANCE = new Dummy$marked$SimpleJelEvaluator();\n" +
+                "\n" +
+                "    public static Object evaluate(final Object context) {\n" +
+                "        return List.of(1);\n" +
+                "    }\n" +
+                "\n" +
+                "    @Override\n" +
+                "    public Object apply(final Object context) {\n" +
+                "        return evaluate(context);\n" +
+                "    }\n" +
+                "}\n", compilation
+                .generatedFile(SOURCE_OUTPUT, "com/github/rmannibucau/jel/proc/Dummy$marked$SimpleJelEvaluator.java")
+                .orElseThrow()
+                .getCharContent(true)
+                .toString());
+    }
+
+    @Test
+    void deduplicate() throws Exception {
+        final var compilation = javac()
+                .withProcessors(new SimpleJelAnnotationProcessor())
+                .compile(List.of(
+                        JavaFileObjects.forSourceLines(
+                                "Dummy",
+                                "package com.github.rmannibucau.jel.proc;\n" +
+                                        "\n" +
+                                        "public class Dummy {\n" +
+                                        "  @Shared(\"return 1\")\n" +
+                                        "  public void first() {}\n" +
+                                        "  @Shared(\"return 1\")\n" +
+                                        "  public void second() {}\n" +
+                                        "  @Shared(\"return 2\")\n" +
+                                        "  public void third() {}\n" +
+                                        "  @Shared(\"return 3\")\n" +
+                                        "  public void overloaded() {}\n" +
+                                        "  @Shared(\"return 2\")\n" +
+                                        "  public void overloaded(String value) {}\n" +
+                                        "}\n"),
+                        JavaFileObjects.forSourceLines(
+                                "Shared",
+                                "package com.github.rmannibucau.jel.proc;\n" +
+                                        "\n" +
+                                        "import com.github.rmannibucau.jel.api.annotation.MetaJel;\n" +
+                                        "\n" +
+                                        "@MetaJel(deduplicate = true)\n" +
+                                        "public @interface Shared {\n" +
+                                        "    String value();\n" +
+                                        "}\n")));
+        assertEquals(SUCCESS, compilation.status(), () -> compilation.errors().toString());
+        assertEquals(3, compilation.generatedFiles().stream()
+                .filter(it -> it.getKind() == SOURCE && it.getName().endsWith("$SimpleJelEvaluator.java"))
+                .count());
+
+        final var registry = registrySource(compilation);
+        final var prefix = "com.github.rmannibucau.jel.proc.Shared:com.github.rmannibucau.jel.proc.Dummy#";
+        final var evaluator = "return com.github.rmannibucau.jel.proc.Dummy$";
+        assertTrue(registry.contains("case \"" + prefix + "first()\": " + evaluator + "first$SimpleJelEvaluator.INSTANCE;"), registry);
+        assertTrue(registry.contains("case \"" + prefix + "second()\": " + evaluator + "first$SimpleJelEvaluator.INSTANCE;"), registry);
+        assertTrue(registry.contains("case \"" + prefix + "third()\": " + evaluator + "third$SimpleJelEvaluator.INSTANCE;"), registry);
+        // overloads have their own key and class, sharing an evaluator does not replace the other overload one
+        assertTrue(registry.contains("case \"" + prefix + "overloaded()\": " +
+                evaluator + "overloaded$0$SimpleJelEvaluator.INSTANCE;"), registry);
+        assertTrue(registry.contains("case \"" + prefix + "overloaded(java.lang.String)\": " +
+                evaluator + "third$SimpleJelEvaluator.INSTANCE;"), registry);
+    }
+
+    @Test
+    void constantAndStatefulEvaluators() throws IOException {
+        final var compilation = javac()
+                .withProcessors(new SimpleJelAnnotationProcessor())
+                .compile(List.of(
+                        JavaFileObjects.forSourceLines(
+                                "Dummy",
+                                "package com.github.rmannibucau.jel.proc;\n" +
+                                        "\n" +
+                                        "public class Dummy {\n" +
+                                        "  @Counted(\"return true\")\n" +
+                                        "  public void constant() {}\n" +
+                                        "  @Counted(\"return count(\\\"return true\\\")\")\n" +
+                                        "  public void counted() {}\n" +
+                                        "  @Counted(\"return (1 + 2) > 2\")\n" +
+                                        "  public void folded() {}\n" +
+                                        "  @Counted(\"return 1 / 0 == 0\")\n" +
+                                        "  public void throwing() {}\n" +
+                                        "  @Counted(\"return Boolean.getBoolean(\\\"x\\\")\")\n" +
+                                        "  public void property() {}\n" +
+                                        "}\n"),
+                        JavaFileObjects.forSourceLines(
+                                "Counted",
+                                "package com.github.rmannibucau.jel.proc;\n" +
+                                        "\n" +
+                                        "import com.github.rmannibucau.jel.api.annotation.MetaJel;\n" +
+                                        "\n" +
+                                        "@MetaJel(returnType = \"boolean\", customMethods = \"" +
+                                        "  private static final String PREFIX = \\\"count;\\\";\\n" +
+                                        "  private int counter; // not thread safe, just for the test\\n" +
+                                        "  private boolean count(final String value) { return ++counter > 0; }\")\n" +
+                                        "public @interface Counted {\n" +
+                                        "    String value();\n" +
+                                        "}\n")));
+        assertEquals(SUCCESS, compilation.status(), () -> compilation.errors().toString());
+
+        final var constant = compilation
+                .generatedFile(SOURCE_OUTPUT, "com/github/rmannibucau/jel/proc/Dummy$constant$SimpleJelEvaluator.java")
+                .orElseThrow()
+                .getCharContent(true)
+                .toString();
+        assertTrue(constant.contains("    public static final boolean VALUE = true;\n"), constant);
+        assertTrue(constant.contains("        return VALUE;\n"), constant);
+        assertFalse(constant.contains("INSTANCE"), constant);
+
+        final var counted = compilation
+                .generatedFile(SOURCE_OUTPUT, "com/github/rmannibucau/jel/proc/Dummy$counted$SimpleJelEvaluator.java")
+                .orElseThrow()
+                .getCharContent(true)
+                .toString();
+        assertTrue(counted.contains("        return count(\"return true\");\n"), counted);
+        assertFalse(counted.contains("VALUE"), counted);
+
+        // only literals checked by the parser are folded, the others are evaluated at call time
+        for (final var method : List.of("folded", "throwing", "property")) {
+            final var evaluator = compilation
+                    .generatedFile(SOURCE_OUTPUT, "com/github/rmannibucau/jel/proc/Dummy$" + method + "$SimpleJelEvaluator.java")
+                    .orElseThrow()
+                    .getCharContent(true)
+                    .toString();
+            assertEquals("folded".equals(method), evaluator.contains("VALUE"), evaluator);
+        }
+
+        final var registry = registrySource(compilation);
+        assertTrue(registry.contains("return new com.github.rmannibucau.jel.proc.Dummy$counted$SimpleJelEvaluator();"), registry);
+        assertTrue(registry.contains("return com.github.rmannibucau.jel.proc.Dummy$constant$SimpleJelEvaluator.VALUE;"), registry);
+        assertFalse(registry.contains("MethodHandle handle("), registry);
+    }
+
+    @Test
+    void sharedCustomMethods() throws Throwable {
+        final var compilation = javac()
+                .withProcessors(new SimpleJelAnnotationProcessor())
+                .compile(List.of(
+                        JavaFileObjects.forSourceLines(
+                                "Dummy",
+                                "package com.github.rmannibucau.jel.proc;\n" +
+                                        "\n" +
+                                        "public class Dummy {\n" +
+                                        "  @Helped(\"return isShort(context)\")\n" +
+                                        "  public void first() {}\n" +
+                                        "  @Helped(\"return !isShort(context)\")\n" +
+                                        "  public void second() {}\n" +
+                                        "  @Helped(\"return this != null && isShort(context)\")\n" +
+                                        "  public void instance() {}\n" +
+                                        "  @Helped(\"final boolean result = isShort(context);\\nreturn result;\")\n" +
+                                        "  public void multiline() {}\n" +
+                                        "  @Counting(\"return ++calls > 0\")\n" +
+                                        "  public void counting() {}\n" +
+                                        "}\n"),
+                        JavaFileObjects.forSourceLines(
+                                "Helped",
+                                "package com.github.rmannibucau.jel.proc;\n" +
+                                        "\n" +
+                                        "import com.github.rmannibucau.jel.api.annotation.MetaJel;\n" +
+                                        "\n" +
+                                        "@MetaJel(contextType = \"java.lang.String\", returnType = \"boolean\", customMethods = \"" +
+                                        "    private static final int MAX = 3;\\n" +
+                                        "\\n" +
+                                        "    private boolean isShort(final String value) {\\n" +
+                                        "        return value.length() < MAX;\\n" +
+                                        "    }\")\n" +
+                                        "public @interface Helped {\n" +
+                                        "    String value();\n" +
+                                        "}\n"),
+                        JavaFileObjects.forSourceLines(
+                                "Counting",
+                                "package com.github.rmannibucau.jel.proc;\n" +
+                                        "\n" +
+                                        "import com.github.rmannibucau.jel.api.annotation.MetaJel;\n" +
+                                        "\n" +
+                                        "@MetaJel(returnType = \"boolean\", customMethods = \"" +
+                                        "    private static int calls;\")\n" +
+                                        "public @interface Counting {\n" +
+                                        "    String value();\n" +
+                                        "}\n")));
+        assertEquals(SUCCESS, compilation.status(), () -> compilation.errors().toString());
+
+        final var base = compilation
+                .generatedFile(SOURCE_OUTPUT, "com/github/rmannibucau/jel/proc/Helped$SimpleJelBase.java")
+                .orElseThrow()
+                .getCharContent(true)
+                .toString();
+        assertEquals("" +
+                "package com.github.rmannibucau.jel.proc;\n" +
+                "\n" +
+                "import java.lang.String;\n" +
+                "\n" +
+                "import java.util.function.Predicate;\n" +
+                "\n" +
+                "\n" +
+                "public abstract class Helped$SimpleJelBase {\n" +
+                "    protected static final int MAX = 3;\n" +
+                "\n" +
+                "    protected static boolean isShort(final String value) {\n" +
+                "        return value.length() < MAX;\n" +
+                "    }\n" +
+                "}\n", base);
+        for (final String method : List.of("first", "second")) {
+            final var evaluator = compilation
+                    .generatedFile(SOURCE_OUTPUT, "com/github/rmannibucau/jel/proc/Dummy$" + method + "$SimpleJelEvaluator.java")
+                    .orElseThrow()
+                    .getCharContent(true)
+                    .toString();
+            assertTrue(evaluator.contains("public class Dummy$" + method + "$SimpleJelEvaluator " +
+                    "extends com.github.rmannibucau.jel.proc.Helped$SimpleJelBase implements Predicate<String> {\n"), evaluator);
+            assertFalse(evaluator.contains("isShort(final String value)"), evaluator);
+            // the custom methods are static so the static entry point holds the expression
+            assertTrue(evaluator.contains("" +
+                    "    public static boolean evaluate(final String context) {\n" +
+                    "        return " + ("first".equals(method) ? "" : "!") + "isShort(context);\n" +
+                    "    }\n"), evaluator);
+        }
+        // the lines of a multi-line expression are aligned
+        final var multiline = compilation
+                .generatedFile(SOURCE_OUTPUT, "com/github/rmannibucau/jel/proc/Dummy$multiline$SimpleJelEvaluator.java")
+                .orElseThrow()
+                .getCharContent(true)
+                .toString();
+        assertTrue(multiline.contains("" +
+                "    public static boolean evaluate(final String context) {\n" +
+                "        final boolean result = isShort(context);\n" +
+                "        return result;\n" +
+                "    }\n"), multiline);
+        // an expression using the instance keeps it
+        final var instance = compilation
+                .generatedFile(SOURCE_OUTPUT, "com/github/rmannibucau/jel/proc/Dummy$instance$SimpleJelEvaluator.java")
+                .orElseThrow()
+                .getCharContent(true)
+                .toString();
+        assertTrue(instance.contains("" +
+                "    public static boolean evaluate(final String context) {\n" +
+                "        return INSTANCE.test(context);\n" +
+                "    }\n"), instance);
+
+        // a mutable static field would be shared by all the evaluators so it stays in each of them
+        assertTrue(compilation.generatedFile(SOURCE_OUTPUT, "com/github/rmannibucau/jel/proc/Counting$SimpleJelBase.java")
+                .isEmpty());
+        assertTrue(compilation
+                .generatedFile(SOURCE_OUTPUT, "com/github/rmannibucau/jel/proc/Dummy$counting$SimpleJelEvaluator.java")
+                .orElseThrow()
+                .getCharContent(true)
+                .toString()
+                .contains("    private static int calls;\n"));
+
+        final var loader = classLoader(compilation);
+        final Predicate<String> first = Predicate.class.cast(loader
+                .loadClass("com.github.rmannibucau.jel.proc.Dummy$first$SimpleJelEvaluator")
+                .getField("INSTANCE").get(null));
+        final Predicate<String> second = Predicate.class.cast(loader
+                .loadClass("com.github.rmannibucau.jel.proc.Dummy$second$SimpleJelEvaluator")
+                .getField("INSTANCE").get(null));
+        assertTrue(first.test("ab"));
+        assertFalse(first.test("abcd"));
+        assertFalse(second.test("ab"));
+        assertTrue(second.test("abcd"));
+
+        final var registry = EvaluatorRegistry.class.cast(loader.loadClass(registryName(compilation))
+                .getConstructor().newInstance());
+        final var prefix = "com.github.rmannibucau.jel.proc.Helped:com.github.rmannibucau.jel.proc.Dummy#";
+        assertTrue((boolean) registry.handle(prefix + "first()").invokeExact("ab"));
+        assertTrue((boolean) registry.handle(prefix + "instance()").invokeExact("ab"));
+    }
+
+    @Test
+    void sharedCustomMethodsModifiers() throws Exception {
+        final var compilation = javac()
+                .withProcessors(new SimpleJelAnnotationProcessor())
+                .compile(List.of(
+                        JavaFileObjects.forSourceLines(
+                                "Dummy",
+                                "package com.github.rmannibucau.jel.proc;\n" +
+                                        "\n" +
+                                        "import com.github.rmannibucau.jel.proc.api.Modifiers;\n" +
+                                        "\n" +
+                                        "public class Dummy {\n" +
+                                        "  @Modifiers(\"return min(context) && annotated() && sum() == 3\")\n" +
+                                        "  public void check() {}\n" +
+                                        "}\n"),
+                        JavaFileObjects.forSourceLines(
+                                "Modifiers",
+                                "package com.github.rmannibucau.jel.proc.api;\n" +
+                                        "\n" +
+                                        "import com.github.rmannibucau.jel.api.annotation.MetaJel;\n" +
+                                        "\n" +
+                                        "@MetaJel(contextType = \"java.lang.String\", returnType = \"boolean\", customMethods = \"" +
+                                        "    static private final int MIN = 1;\\n" +
+                                        "    private final int x = 1; private final int y = 2;\\n" +
+                                        "    @SuppressWarnings(\\\"private\\\") private boolean annotated() { return true; }\\n" +
+                                        "    private boolean min(final String value) { return value.length() >= MIN; }\\n" +
+                                        "    private int sum() { return x + y; }\")\n" +
+                                        "public @interface Modifiers {\n" +
+                                        "    String value();\n" +
+                                        "}\n")));
+        assertEquals(SUCCESS, compilation.status(), () -> compilation.errors().toString());
+
+        // in the package of the marker whatever the elements using it
+        final var base = compilation
+                .generatedFile(SOURCE_OUTPUT, "com/github/rmannibucau/jel/proc/api/Modifiers$SimpleJelBase.java")
+                .orElseThrow()
+                .getCharContent(true)
+                .toString();
+        assertTrue(base.contains("" +
+                "public abstract class Modifiers$SimpleJelBase {\n" +
+                "    static protected final int MIN = 1;\n" +
+                "    protected final int x = 1; protected final int y = 2;\n" +
+                "    @SuppressWarnings(\"private\") protected boolean annotated() { return true; }\n" +
+                "    protected boolean min(final String value) { return value.length() >= MIN; }\n" +
+                "    protected int sum() { return x + y; }\n" +
+                "}\n"), base);
+
+        final Predicate<String> evaluator = Predicate.class.cast(classLoader(compilation)
+                .loadClass("com.github.rmannibucau.jel.proc.Dummy$check$SimpleJelEvaluator")
+                .getConstructor().newInstance());
+        assertTrue(evaluator.test("a"));
+        assertFalse(evaluator.test(""));
+    }
+
+    @Test
+    void policy() throws Exception {
+        final var compilation = javac()
+                .withProcessors(new SimpleJelAnnotationProcessor())
+                .compile(List.of(
+                        JavaFileObjects.forSourceLines(
+                                "Dummy",
+                                "package com.github.rmannibucau.jel.proc;\n" +
+                                        "\n" +
+                                        "public class Dummy {\n" +
+                                        "  @Guarded(policy = \"groups contains any('admin', 'ops') and claim('tenant') == 'x' " +
+                                        "and not groups contains 'banned'\")\n" +
+                                        "  public void guarded() {}\n" +
+                                        "}\n"),
+                        policyToken(),
+                        policyMarker()));
+        assertEquals(SUCCESS, compilation.status(), () -> compilation.errors().toString());
+
+        final var evaluator = compilation
+                .generatedFile(SOURCE_OUTPUT, "com/github/rmannibucau/jel/proc/Dummy$guarded$SimpleJelEvaluator.java")
+                .orElseThrow()
+                .getCharContent(true)
+                .toString();
+        assertTrue(evaluator.contains("" +
+                "    private static final java.util.Set<String> POLICY_0 = java.util.Set.of(\"admin\", \"ops\");\n"), evaluator);
+        // the cheapest clauses are evaluated first and operands are only read when a clause needs them,
+        // the groups are used twice so the first clause executed keeps them in a local
+        final var groups = "(policyGroups != null ? policyGroups : (policyGroups = " +
+                "java.util.Objects.requireNonNullElse(token.getGroups(), java.util.Set.of())))";
+        assertTrue(evaluator.contains("" +
+                "        if (token == null) {\n" +
+                "            return false;\n" +
+                "        }\n" +
+                "        java.util.Set<String> policyGroups = null;\n" +
+                "        return (\"x\".equals(policyText(token.getClaim(\"tenant\"))) && " +
+                "!" + groups + ".contains(\"banned\") && " +
+                "!java.util.Collections.disjoint(" + groups + ", POLICY_0));\n"), evaluator);
+        assertFalse(evaluator.contains("catch"), evaluator);
+
+        final var loader = classLoader(compilation);
+        final var tokenType = loader.loadClass("com.github.rmannibucau.jel.proc.Token");
+        final Predicate<Object> predicate = Predicate.class.cast(
+                loader.loadClass("com.github.rmannibucau.jel.proc.Dummy$guarded$SimpleJelEvaluator").getField("INSTANCE").get(null));
+        assertTrue(predicate.test(token(tokenType, Set.of("ops"), "x")));
+        assertTrue(predicate.test(token(tokenType, Set.of("admin", "user"), new Object() { // a JSON-P string
+            @Override
+            public String toString() {
+                return "\"x\"";
+            }
+        })));
+        assertFalse(predicate.test(token(tokenType, Set.of("ops", "banned"), "x")));
+        assertFalse(predicate.test(token(tokenType, Set.of("user"), "x")));
+        assertFalse(predicate.test(token(tokenType, Set.of("ops"), "y")));
+        assertFalse(predicate.test(token(tokenType, null, null)));
+        assertFalse(predicate.test(null));
+
+        final var reads = new ArrayList<String>();
+        final var tracked = Proxy.newProxyInstance(tokenType.getClassLoader(), new Class<?>[]{tokenType}, (proxy, method, args) -> {
+            reads.add(method.getName());
+            return "getGroups".equals(method.getName()) ? Set.of("ops") : "y";
+        });
+        assertFalse(predicate.test(tracked));
+        assertEquals(List.of("getClaim"), reads); // the first clause fails, groups are not read
+
+        reads.clear();
+        assertTrue(predicate.test(token(tokenType, Set.of("ops"), "x")) &&
+                predicate.test(Proxy.newProxyInstance(tokenType.getClassLoader(), new Class<?>[]{tokenType}, (proxy, method, args) -> {
+                    reads.add(method.getName());
+                    return "getGroups".equals(method.getName()) ? Set.of("ops") : "x";
+                })));
+        assertEquals(List.of("getClaim", "getGroups"), reads); // read once for both groups clauses
+    }
+
+    @Test
+    void invalidPolicy() {
+        final var compilation = javac()
+                .withProcessors(new SimpleJelAnnotationProcessor())
+                .compile(List.of(
+                        JavaFileObjects.forSourceLines(
+                                "Dummy",
+                                "package com.github.rmannibucau.jel.proc;\n" +
+                                        "\n" +
+                                        "public class Dummy {\n" +
+                                        "  @Guarded(policy = \"groups contains any('admin'\")\n" +
+                                        "  public void unclosed() {}\n" +
+                                        "  @Guarded(policy = \"groups == 'admin'\")\n" +
+                                        "  public void groupsEquals() {}\n" +
+                                        "  @Guarded(value = \"return true\", policy = \"groups contains 'admin'\")\n" +
+                                        "  public void both() {}\n" +
+                                        "}\n"),
+                        policyToken(),
+                        policyMarker()));
+        assertEquals(FAILURE, compilation.status());
+        final var errors = compilation.errors().stream()
+                .map(it -> it.getMessage(Locale.ROOT))
+                .collect(toList());
+        assertTrue(errors.contains("Invalid policy 'groups contains any('admin'' at position 27: " +
+                "expected ')' but got the end of the policy"), errors::toString);
+        assertTrue(errors.contains("Invalid policy 'groups == 'admin'' at position 0: " +
+                "groups can only be used with 'contains'"), errors::toString);
+        assertTrue(errors.contains("Either value or policy can be set on com.github.rmannibucau.jel.proc.Guarded"),
+                errors::toString);
+    }
+
+    private Object token(final Class<?> type, final Set<String> groups, final Object tenant) {
+        return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) ->
+                "getGroups".equals(method.getName()) ? groups : ("tenant".equals(args[0]) ? tenant : null));
+    }
+
+    private JavaFileObject policyToken() {
+        return JavaFileObjects.forSourceLines(
+                "Token",
+                "package com.github.rmannibucau.jel.proc;\n" +
+                        "\n" +
+                        "public interface Token {\n" +
+                        "    java.util.Set<String> getGroups();\n" +
+                        "\n" +
+                        "    Object getClaim(String name);\n" +
+                        "}\n");
+    }
+
+    private JavaFileObject policyMarker() {
+        return JavaFileObjects.forSourceLines(
+                "Guarded",
+                "package com.github.rmannibucau.jel.proc;\n" +
+                        "\n" +
+                        "import com.github.rmannibucau.jel.api.annotation.MetaJel;\n" +
+                        "\n" +
+                        "@MetaJel(contextVariableName = \"token\", contextType = \"com.github.rmannibucau.jel.proc.Token\", " +
+                        "returnType = \"boolean\", policyElementName = \"policy\")\n" +
+                        "public @interface Guarded {\n" +
+                        "    String value() default \"\";\n" +
+                        "\n" +
+                        "    String policy() default \"\";\n" +
+                        "}\n");
+    }
+
+    @Test
+    void batch() throws Exception {
+        final var compilation = javac()
+                .withProcessors(new SimpleJelAnnotationProcessor())
+                .compile(List.of(
+                        JavaFileObjects.forSourceLines(
+                                "Dummy",
+                                "package com.github.rmannibucau.jel.proc;\n" +
+                                        "\n" +
+                                        "public class Dummy {\n" +
+                                        "  @Filter(\"return context.length() > 2\")\n" +
+                                        "  public void filter() {}\n" +
+                                        "}\n"),
+                        JavaFileObjects.forSourceLines(
+                                "Filter",
+                                "package com.github.rmannibucau.jel.proc;\n" +
+                                        "\n" +
+                                        "import com.github.rmannibucau.jel.api.annotation.MetaJel;\n" +
+                                        "\n" +
+                                        "@MetaJel(contextType = \"java.lang.String\", returnType = \"boolean\", batch = true)\n" +
+                                        "public @interface Filter {\n" +
+                                        "    String value();\n" +
+                                        "}\n")));
+        assertEquals(SUCCESS, compilation.status(), () -> compilation.errors().toString());
+
+        final var evaluator = compilation
+                .generatedFile(SOURCE_OUTPUT, "com/github/rmannibucau/jel/proc/Dummy$filter$SimpleJelEvaluator.java")
+                .orElseThrow()
+                .getCharContent(true)
+                .toString();
+        assertTrue(evaluator.contains("import com.github.rmannibucau.jel.api.batch.BatchPredicate;\n"), evaluator);
+        assertTrue(evaluator.contains("public class Dummy$filter$SimpleJelEvaluator implements BatchPredicate<String> {\n"), evaluator);
+        assertTrue(evaluator.contains("" +
+                "    @Override\n" +
+                "    public void testAll(final String[] in, final int from, final int to, final boolean[] out) {\n" +
+                "        for (int i = from; i < to; i++) {\n" +
+                "            out[i] = evaluate(in[i]);\n" +
+                "        }\n" +
+                "    }\n"), evaluator);
+
+        final BatchPredicate<String> predicate = BatchPredicate.class.cast(classLoader(compilation)
+                .loadClass("com.github.rmannibucau.jel.proc.Dummy$filter$SimpleJelEvaluator")
+                .getField("INSTANCE").get(null));
+        final var values = IntStream.range(0, 1000).mapToObj(it -> it % 3 == 0 ? "long" : "s").toArray(String[]::new);
+        final var results = BatchEvaluation.testAll(predicate, values, 64); // forces the split
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(i % 3 == 0, results[i]);
+        }
+        assertEquals(334, BatchEvaluation.filter(predicate, values).size());
+        assertEquals(334, BatchEvaluation.matches(predicate, values, 100).cardinality());
+    }
+
+    @Test
+    void batchNotSupported() {
+        final var compilation = javac()
+                .withProcessors(new SimpleJelAnnotationProcessor())
+                .compile(List.of(
+                        JavaFileObjects.forSourceLines(
+                                "Dummy",
+                                "package com.github.rmannibucau.jel.proc;\n" +
+                                        "\n" +
+                                        "public class Dummy {\n" +
+                                        "  @Length(\"return context.length()\")\n" +
+                                        "  public void length() {}\n" +
+                                        "}\n"),
+                        JavaFileObjects.forSourceLines(
+                                "Length",
+                                "package com.github.rmannibucau.jel.proc;\n" +
+                                        "\n" +
+                                        "import com.github.rmannibucau.jel.api.annotation.MetaJel;\n" +
+                                        "\n" +
+                                        "@MetaJel(contextType = \"java.lang.String\", returnType = \"int\", batch = true)\n" +
+                                        "public @interface Length {\n" +
+                                        "    String value();\n" +
+                                        "}\n")));
+        assertEquals(FAILURE, compilation.status());
+        assertEquals(List.of("batch is only supported with java.util.function.Predicate and java.util.function.Function " +
+                        "evaluators, got java.util.function.ToIntFunction"),
+                compilation.errors().stream().map(it -> it.getMessage(Locale.ROOT)).collect(toList()));
+    }
+
+    @Test
+    void bindParameters() throws Exception {
+        final var compilation = javac()
+                .withProcessors(new SimpleJelAnnotationProcessor())
+                .compile(List.of(
+                        JavaFileObjects.forSourceLines(
+                                "Dummy",
+                                "package com.github.rmannibucau.jel.proc;\n" +
+                                        "\n" +
+                                        "public class Dummy {\n" +
+                                        "  @Owned(\"return context.equals(owner) && amount < 100\")\n" +
+                                        "  public void transfer(String reason, String owner, long amount) {}\n" +
+                                        "  @Owned(\"return context.isEmpty()\")\n" +
+                                        "  public void anonymous() {}\n" +
+                                        "  @Owned(\"return context.isEmpty()\")\n" +
+                                        "  public void unused(String owner) {}\n" +
+                                        "  @Owned(\"return context.isEmpty()\")\n" +
+                                        "  public void hiding(String context) {}\n" +
+                                        "  @TracedOwned(\"return context.equals(event) == result\")\n" +
+                                        "  public void traced(String event, boolean result) {}\n" +
+                                        "}\n"),
+                        JavaFileObjects.forSourceLines(
+                                "Owned",
+                                "package com.github.rmannibucau.jel.proc;\n" +
+                                        "\n" +
+                                        "import com.github.rmannibucau.jel.api.annotation.MetaJel;\n" +
+                                        "\n" +
+                                        "@MetaJel(contextType = \"java.lang.String\", returnType = \"boolean\", bindParameters = true)\n" +
+                                        "public @interface Owned {\n" +
+                                        "    String value();\n" +
+                                        "}\n"),
+                        JavaFileObjects.forSourceLines(
+                                "TracedOwned",
+                                "package com.github.rmannibucau.jel.proc;\n" +
+                                        "\n" +
+                                        "import com.github.rmannibucau.jel.api.annotation.MetaJel;\n" +
+                                        "\n" +
+                                        "@MetaJel(contextType = \"java.lang.String\", returnType = \"boolean\", " +
+                                        "bindParameters = true, recordEvents = true)\n" +
+                                        "public @interface TracedOwned {\n" +
+                                        "    String value();\n" +
+                                        "}\n")));
+        assertEquals(SUCCESS, compilation.status(), () -> compilation.errors().toString());
+
+        final var evaluator = compilation
+                .generatedFile(SOURCE_OUTPUT, "com/github/rmannibucau/jel/proc/Dummy$transfer$SimpleJelEvaluator.java")
+                .orElseThrow()
+                .getCharContent(true)
+                .toString();
+        assertTrue(evaluator.contains("" +
+                "public class Dummy$transfer$SimpleJelEvaluator implements " +
+                "com.github.rmannibucau.jel.api.parameters.ParametersPredicate<String> {\n"), evaluator);
+        assertTrue(evaluator.contains("" +
+                "    public static boolean evaluate(final String context, final java.lang.String owner, final long amount) {\n" +
+                "        return context.equals(owner) && amount < 100;\n" +
+                "    }\n" +
+                "\n" +
+                "    @Override\n" +
+                "    public boolean test(final String context, final Object[] parameters) {\n" +
+                "        return evaluate(context, (java.lang.String) parameters[1], (long) parameters[2]);\n" +
+                "    }\n"), evaluator);
+
+        final var loader = classLoader(compilation);
+        final var transfer = loader.loadClass("com.github.rmannibucau.jel.proc.Dummy$transfer$SimpleJelEvaluator");
+        assertFalse(Predicate.class.isAssignableFrom(transfer)); // can't be evaluated without the parameters
+        final ParametersPredicate<String> predicate = ParametersPredicate.class.cast(transfer.getField("INSTANCE").get(null));
+        assertTrue(predicate.test("me", new Object[]{"why", "me", 10L}));
+        assertFalse(predicate.test("me", new Object[]{"why", "you", 10L}));
+        assertFalse(predicate.test("me", new Object[]{"why", "me", 1000L}));
+
+        // without parameters used by the expression the evaluator is a plain predicate with a static entry point,
+        // a parameter named like the context does not hide it
+        final var registry = EvaluatorRegistry.class.cast(loader.loadClass(registryName(compilation))
+                .getConstructor().newInstance());
+        for (final var method : List.of("anonymous", "unused", "hiding")) {
+            final var type = loader.loadClass("com.github.rmannibucau.jel.proc.Dummy$" + method + "$SimpleJelEvaluator");
+            assertFalse(ParametersPredicate.class.isAssignableFrom(type), method);
+            final Predicate<String> plain = Predicate.class.cast(type.getField("INSTANCE").get(null));
+            assertTrue(plain.test(""), method);
+            assertNotNull(registry.handle("com.github.rmannibucau.jel.proc.Owned:com.github.rmannibucau.jel.proc.Dummy#" +
+                    method + ("anonymous".equals(method) ? "()" : "(java.lang.String)")), method);
+        }
+
+        // the recorded event does not clash with the parameter names
+        final ParametersPredicate<String> traced = ParametersPredicate.class.cast(loader
+                .loadClass("com.github.rmannibucau.jel.proc.Dummy$traced$SimpleJelEvaluator")
+                .getField("INSTANCE").get(null));
+        assertTrue(traced.test("me", new Object[]{"me", true}));
+        assertFalse(traced.test("me", new Object[]{"me", false}));
+    }
+
+    @Test
+    void recordEvents() throws Exception {
+        final var compilation = javac()
+                .withProcessors(new SimpleJelAnnotationProcessor())
+                .compile(List.of(
+                        JavaFileObjects.forSourceLines(
+                                "Dummy",
+                                "package com.github.rmannibucau.jel.proc;\n" +
+                                        "\n" +
+                                        "public class Dummy {\n" +
+                                        "  @Traced(\"return context.isEmpty()\")\n" +
+                                        "  public void empty() {}\n" +
+                                        "}\n"),
+                        JavaFileObjects.forSourceLines(
+                                "Traced",
+                                "package com.github.rmannibucau.jel.proc;\n" +
+                                        "\n" +
+                                        "import com.github.rmannibucau.jel.api.annotation.MetaJel;\n" +
+                                        "\n" +
+                                        "@MetaJel(contextType = \"java.lang.String\", returnType = \"boolean\", recordEvents = true)\n" +
+                                        "public @interface Traced {\n" +
+                                        "    String value();\n" +
+                                        "}\n")));
+        assertEquals(SUCCESS, compilation.status(), () -> compilation.errors().toString());
+
+        final var key = "com.github.rmannibucau.jel.proc.Traced:com.github.rmannibucau.jel.proc.Dummy#empty()";
+        final var evaluator = compilation
+                .generatedFile(SOURCE_OUTPUT, "com/github/rmannibucau/jel/proc/Dummy$empty$SimpleJelEvaluator.java")
+                .orElseThrow()
+                .getCharContent(true)
+                .toString();
+        assertTrue(evaluator.contains("" +
+                "    public static boolean evaluate(final String context) {\n" +
+                "        final com.github.rmannibucau.jel.api.event.EvaluationEvent event = " +
+                "new com.github.rmannibucau.jel.api.event.EvaluationEvent();\n" +
+                "        if (!event.isEnabled()) {\n" +
+                "            return evaluateExpression(context);\n" +
+                "        }\n" +
+                "        event.begin();\n" +
+                "        final boolean result = evaluateExpression(context);\n" +
+                "        event.complete(\"" + key + "\", result);\n" +
+                "        return result;\n" +
+                "    }\n"), evaluator);
+        assertTrue(evaluator.contains("" +
+                "    private static boolean evaluateExpression(final String context) {\n" +
+                "        return context.isEmpty();\n" +
+                "    }\n"), evaluator);
+
+        final Predicate<String> predicate = Predicate.class.cast(classLoader(compilation)
+                .loadClass("com.github.rmannibucau.jel.proc.Dummy$empty$SimpleJelEvaluator")
+                .getField("INSTANCE").get(null));
+        assertFalse(predicate.test("disabled"));
+
+        final var dump = Files.createTempFile("simplejel", ".jfr");
+        try {
+            try (final var recording = new Recording()) {
+                recording.enable(EvaluationEvent.NAME);
+                recording.start();
+                assertTrue(predicate.test(""));
+                recording.stop();
+                recording.dump(dump);
+            }
+            final var events = RecordingFile.readAllEvents(dump);
+            assertEquals(1, events.size());
+            assertEquals(key, events.get(0).getString("key"));
+            assertEquals("true", events.get(0).getString("result"));
+        } finally {
+            Files.delete(dump);
+        }
+    }
+
+    @Test
+    void fuseClassExpression() throws Exception {
+        final var compilation = javac()
+                .withProcessors(new SimpleJelAnnotationProcessor())
+                .compile(List.of(
+                        JavaFileObjects.forSourceLines(
+                                "Base",
+                                "package com.github.rmannibucau.jel.proc;\n" +
+                                        "\n" +
+                                        "@Guard(policy = \"groups contains 'user'\")\n" +
+                                        "public abstract class Base {\n" +
+                                        "}\n"),
+                        JavaFileObjects.forSourceLines(
+                                "Service",
+                                "package com.github.rmannibucau.jel.proc;\n" +
+                                        "\n" +
+                                        "public class Service extends Base {\n" +
+                                        "  @Guard(\"return context.getClaim(\\\"tenant\\\") != null\")\n" +
+                                        "  public void expression() {}\n" +
+                                        "  @Guard(policy = \"groups contains 'admin'\")\n" +
+                                        "  public void policy() {}\n" +
+                                        "}\n"),
+                        policyToken(),
+                        JavaFileObjects.forSourceLines(
+                                "Guard",
+                                "package com.github.rmannibucau.jel.proc;\n" +
+                                        "\n" +
+                                        "import com.github.rmannibucau.jel.api.annotation.MetaJel;\n" +
+                                        "\n" +
+                                        "@java.lang.annotation.Inherited\n" +
+                                        "@MetaJel(contextType = \"com.github.rmannibucau.jel.proc.Token\", returnType = \"boolean\",\n" +
+                                        "         policyElementName = \"policy\", fuseClassExpression = true)\n" +
+                                        "public @interface Guard {\n" +
+                                        "    String value() default \"\";\n" +
+                                        "    String policy() default \"\";\n" +
+                                        "}\n")));
+        assertEquals(SUCCESS, compilation.status(), () -> compilation.errors().toString());
+
+        final var expression = compilation
+                .generatedFile(SOURCE_OUTPUT, "com/github/rmannibucau/jel/proc/Service$expression$SimpleJelEvaluator.java")
+                .orElseThrow()
+                .getCharContent(true)
+                .toString();
+        assertTrue(expression.contains("" +
+                "    public static boolean evaluate(final Token context) {\n" +
+                "        if (!classExpression(context)) {\n" +
+                "            return false;\n" +
+                "        }\n" +
+                "        return context.getClaim(\"tenant\") != null;\n" +
+                "    }\n"), expression);
+        assertTrue(expression.contains("    private static boolean classExpression(final Token context) {\n"), expression);
+
+        // two policies are compiled as a single one
+        final var policy = compilation
+                .generatedFile(SOURCE_OUTPUT, "com/github/rmannibucau/jel/proc/Service$policy$SimpleJelEvaluator.java")
+                .orElseThrow()
+                .getCharContent(true)
+                .toString();
+        assertFalse(policy.contains("classExpression"), policy);
+
+        // the class policy is inherited
+        assertTrue(compilation
+                .generatedFile(SOURCE_OUTPUT, "com/github/rmannibucau/jel/proc/Service$SimpleJelEvaluator.java")
+                .isPresent());
+
+        final var loader = classLoader(compilation);
+        final var tokenType = loader.loadClass("com.github.rmannibucau.jel.proc.Token");
+        final var registry = EvaluatorRegistry.class.cast(loader.loadClass(registryName(compilation))
+                .getConstructor()
+                .newInstance());
+        final var prefix = "com.github.rmannibucau.jel.proc.Guard:com.github.rmannibucau.jel.proc.Service";
+        final Predicate<Object> fusedExpression = Predicate.class.cast(registry.create(prefix + "#expression()"));
+        final Predicate<Object> fusedPolicy = Predicate.class.cast(registry.create(prefix + "#policy()"));
+        final Predicate<Object> inherited = Predicate.class.cast(registry.create(prefix));
+
+        final var user = token(tokenType, Set.of("user"), "x");
+        final var admin = token(tokenType, Set.of("admin"), "x");
+        final var userAdmin = token(tokenType, Set.of("user", "admin"), null);
+        assertTrue(fusedExpression.test(user));
+        assertFalse(fusedExpression.test(admin));
+        assertFalse(fusedExpression.test(userAdmin));
+        assertFalse(fusedPolicy.test(user));
+        assertFalse(fusedPolicy.test(admin));
+        assertTrue(fusedPolicy.test(userAdmin));
+        assertTrue(inherited.test(user));
+        assertFalse(inherited.test(admin));
+    }
+
+    @Test
+    void bindParametersPerElement() throws Exception {
+        final var compilation = javac()
+                .withProcessors(new SimpleJelAnnotationProcessor())
+                .compile(List.of(
+                        JavaFileObjects.forSourceLines(
+                                "Dummy",
+                                "package com.github.rmannibucau.jel.proc;\n" +
+                                        "\n" +
+                                        "public class Dummy {\n" +
+                                        "  @Owned(value = \"return context.equals(owner)\", bindParameters = true)\n" +
+                                        "  public void bound(String owner) {}\n" +
+                                        "  @Owned(\"return owner()\")\n" +
+                                        "  public void unbound(String owner) {}\n" +
+                                        "}\n"),
+                        JavaFileObjects.forSourceLines(
+                                "Owned",
+                                "package com.github.rmannibucau.jel.proc;\n" +
+                                        "\n" +
+                                        "import com.github.rmannibucau.jel.api.annotation.MetaJel;\n" +
+                                        "\n" +
+                                        "@MetaJel(contextType = \"java.lang.String\", returnType = \"boolean\", " +
+                                        "bindParametersElementName = \"bindParameters\", " +
+                                        "customMethods = \"private boolean owner() { return true; }\")\n" +
+                                        "public @interface Owned {\n" +
+                                        "    String value();\n" +
+                                        "    boolean bindParameters() default false;\n" +
+                                        "}\n")));
+        assertEquals(SUCCESS, compilation.status(), () -> compilation.errors().toString());
+
+        final var loader = classLoader(compilation);
+        final var bound = loader.loadClass("com.github.rmannibucau.jel.proc.Dummy$bound$SimpleJelEvaluator");
+        assertTrue(ParametersPredicate.class.cast(bound.getConstructor().newInstance()).test("me", new Object[]{"me"}));
+        final var unbound = loader.loadClass("com.github.rmannibucau.jel.proc.Dummy$unbound$SimpleJelEvaluator");
+        assertTrue(Predicate.class.cast(unbound.getConstructor().newInstance()).test("me"));
+    }
+
+    @Test
+    void aggregate() throws Throwable {
+        final var compilation = javac()
+                .withProcessors(new SimpleJelAnnotationProcessor())
+                .compile(List.of(
+                        JavaFileObjects.forSourceLines(
+                                "Dummy",
+                                "package com.github.rmannibucau.jel.proc;\n" +
+                                        "\n" +
+                                        "public class Dummy {\n" +
+                                        IntStream.range(0, 300)
+                                                .mapToObj(i -> "  @Length(\"return context.length() + " + i + "\")\n" +
+                                                        "  public void m" + i + "() {}\n")
+                                                .collect(joining()) +
+                                        "  @Length(\"return context.length() + 1\")\n" +
+                                        "  public void same() {}\n" +
+                                        "}\n"),
+                        JavaFileObjects.forSourceLines(
+                                "Length",
+                                "package com.github.rmannibucau.jel.proc;\n" +
+                                        "\n" +
+                                        "import com.github.rmannibucau.jel.api.annotation.MetaJel;\n" +
+                                        "\n" +
+                                        "@MetaJel(contextType = \"java.lang.String\", returnType = \"int\", deduplicate = true,\n" +
+                                        "         aggregateClassNamePattern = \"${package}.${marker}Evaluators\")\n" +
+                                        "public @interface Length {\n" +
+                                        "    String value();\n" +
+                                        "}\n")));
+        assertEquals(SUCCESS, compilation.status(), () -> compilation.errors().toString());
+        assertEquals(List.of("/SOURCE_OUTPUT/com/github/rmannibucau/jel/proc/LengthEvaluators.java",
+                        "/SOURCE_OUTPUT/" + registryName(compilation).replace('.', '/') + ".java"),
+                compilation.generatedFiles().stream()
+                        .filter(it -> it.getKind() == SOURCE)
+                        .map(FileObject::getName)
+                        .sorted()
+                        .collect(toList()));
+
+        final var aggregate = compilation
+                .generatedFile(SOURCE_OUTPUT, "com/github/rmannibucau/jel/proc/LengthEvaluators.java")
+                .orElseThrow()
+                .getCharContent(true)
+                .toString();
+        assertTrue(aggregate.contains("" +
+                "    @Override\n" +
+                "    public int applyAsInt(final String context) {\n" +
+                "        switch (index / 256) {\n" +
+                "            case 0: return applyAsIntChunk0(context);\n" +
+                "            case 1: return applyAsIntChunk1(context);\n" +
+                "            default: throw new IllegalStateException(\"Unknown evaluator: \" + index);\n" +
+                "        }\n" +
+                "    }\n"), aggregate);
+        assertTrue(aggregate.contains("" +
+                "    public static int evaluate299(final String context) {\n" +
+                "        return context.length() + 299;\n" +
+                "    }\n"), aggregate);
+        assertFalse(aggregate.contains("evaluate300"), aggregate);
+
+        final var registry = EvaluatorRegistry.class.cast(classLoader(compilation)
+                .loadClass(registryName(compilation))
+                .getConstructor()
+                .newInstance());
+        final var prefix = "com.github.rmannibucau.jel.proc.Length:com.github.rmannibucau.jel.proc.Dummy#";
+        assertEquals(301, registry.keys().size());
+        for (final int i : new int[]{0, 1, 255, 256, 299}) {
+            final var evaluator = ToIntFunction.class.cast(registry.create(prefix + "m" + i + "()"));
+            assertEquals(3 + i, evaluator.applyAsInt("foo"));
+            assertEquals(3 + i, (int) registry.handle(prefix + "m" + i + "()").invokeExact("foo"));
+        }
+        assertSame(registry.create(prefix + "m1()"), registry.create(prefix + "same()"));
+    }
+
+    @Test
+    void compiledPatterns() {
+        final Function<String, String> placeholders = key -> {
+            switch (key) {
+                case "class":
+                    return "com.company.Service";
+                case "method":
+                    return "check";
+                case "alias":
+                    return "${method}Alias";
+                default:
+                    return null;
+            }
+        };
+        for (final String pattern : List.of(
+                "${class}$SimpleJelEvaluator", "${class}$${method}$SimpleJelEvaluator", "Constant",
+                "${missing:-Default}_${method}", "${missing}", "${class}_${alias}", "${class}_\\${method}")) {
+            assertEquals(new Substitutor(placeholders).replace(pattern),
+                    Substitutor.compile(pattern).replace(placeholders), pattern);
+        }
+    }
+
+    @Test
+    void gradleIncrementalMode() {
+        final var aggregating = new SimpleJelAnnotationProcessor();
+        assertEquals(SUCCESS, javac().withProcessors(aggregating).compile(dummySource()).status());
+        assertTrue(aggregating.getSupportedOptions().contains("org.gradle.annotation.processing.aggregating"));
+
+        final var isolating = new SimpleJelAnnotationProcessor();
+        final var compilation = javac()
+                .withProcessors(isolating)
+                .withOptions("-Asimplejel.registry.skip=true")
+                .compile(dummySource());
+        assertEquals(SUCCESS, compilation.status());
+        assertTrue(isolating.getSupportedOptions().contains("org.gradle.annotation.processing.isolating"));
+        assertTrue(compilation.generatedFiles().stream().noneMatch(it -> it.getName().contains("SimpleJelRegistry")));
+    }
+
+    @Test
+    void nativeImage() throws IOException {
+        final var processor = new SimpleJelAnnotationProcessor();
+        final var compilation = javac()
+                .withProcessors(processor)
+                .withOptions("-Asimplejel.native.image=com.company/app")
+                .compile(dummySource());
+        assertEquals(SUCCESS, compilation.status(), () -> compilation.errors().toString());
+        assertTrue(processor.getSupportedOptions().contains("org.gradle.annotation.processing.aggregating"));
+        final var registryName = registryName(compilation);
+
+        final var reflectConfig = compilation
+                .generatedFile(CLASS_OUTPUT, "META-INF/native-image/com.company/app/reflect-config.json")
+                .orElseThrow()
+                .getCharContent(true)
+                .toString();
+        assertEquals("[\n" +
+                "  {\n" +
+                "    \"name\": \"com.github.rmannibucau.jel.proc.Dummy$evalMethod$SimpleJelEvaluator\",\n" +
+                "    \"allPublicMethods\": true,\n" +
+                "    \"methods\": [{\"name\": \"<init>\", \"parameterTypes\": []}]\n" +
+                "  },\n" +
+                "  {\n" +
+                "    \"name\": \"" + registryName + "\",\n" +
+                "    \"methods\": [{\"name\": \"<init>\", \"parameterTypes\": []}]\n" +
+                "  }\n" +
+                "]\n", reflectConfig);
+
+        final var properties = compilation
+                .generatedFile(CLASS_OUTPUT, "META-INF/native-image/com.company/app/native-image.properties")
+                .orElseThrow()
+                .getCharContent(true)
+                .toString();
+        assertEquals("Args = --initialize-at-build-time=" +
+                "com.github.rmannibucau.jel.proc.Dummy$evalMethod$SimpleJelEvaluator,\\\n" +
+                "  " + registryName + "\n", properties);
+
+        final var invalid = javac()
+                .withProcessors(new SimpleJelAnnotationProcessor())
+                .withOptions("-Asimplejel.native.image=app")
+                .compile(dummySource());
+        assertEquals(FAILURE, invalid.status());
+        assertTrue(invalid.errors().stream()
+                .anyMatch(it -> it.getMessage(null).equals("simplejel.native.image must be <groupId>/<artifactId>, got 'app'")),
+                () -> invalid.errors().toString());
+    }
+
+    @Test
+    void report() throws IOException {
+        final var report = Files.createTempDirectory("simplejel").resolve("target/simplejel/report.json");
+        try {
+            final var compilation = javac()
+                    .withProcessors(new SimpleJelAnnotationProcessor())
+                    .withOptions("-Asimplejel.report=" + report)
+                    .compile(JavaFileObjects.forSourceLines(
+                            "Dummy",
+                            "package com.github.rmannibucau.jel.proc;\n" +
+                                    "\n" +
+                                    "import com.github.rmannibucau.jel.api.annotation.MetaJel;\n" +
+                                    "\n" +
+                                    "public class Dummy {\n" +
+                                    "  @Evaluable(\"return 1\")\n" +
+                                    "  public void first() {}\n" +
+                                    "  @Evaluable(\"return 1\")\n" +
+                                    "  public void second() {}\n" +
+                                    "  @Evaluable(\"return \\\"a longer expression\\\"\")\n" +
+                                    "  public void third() {}\n" +
+                                    "\n" +
+                                    "  @MetaJel\n" +
+                                    "  public @interface Evaluable {\n" +
+                                    "    String value();\n" +
+                                    "  }\n" +
+                                    "}\n"));
+            assertEquals(SUCCESS, compilation.status(), () -> compilation.errors().toString());
+
+            final var json = Files.readString(report);
+            final var key = "com.github.rmannibucau.jel.proc.Dummy$Evaluable:com.github.rmannibucau.jel.proc.Dummy#";
+            assertTrue(json.contains(", \"elements\": 3, \"markers\": [\"com.github.rmannibucau.jel.proc.Dummy.Evaluable\"]}"), json);
+            assertTrue(json.contains("" +
+                    "  \"markers\": [\n" +
+                    "    \"com.github.rmannibucau.jel.proc.Dummy.Evaluable\"\n" +
+                    "  ],\n"), json);
+            final var registrySize = registrySource(compilation).length();
+            assertTrue(json.contains("{\"name\": \"" + registryName(compilation) + "\", " +
+                    "\"size\": " + registrySize + "}"), json);
+            assertTrue(json.contains("{\"name\": \"com.github.rmannibucau.jel.proc.Dummy$third$SimpleJelEvaluator\""), json);
+            assertTrue(json.contains("" +
+                    "  \"duplicateExpressions\": [\n" +
+                    "    {\"expression\": \"return 1\", \"elements\": [\"" + key + "first()\", \"" + key + "second()\"]}\n" +
+                    "  ],\n"), json);
+            assertTrue(json.contains("" +
+                    "  \"largestExpressions\": [\n" +
+                    "    {\"length\": 28, \"elements\": [\"" + key + "third()\"]},\n"), json);
+        } finally {
+            Files.walk(report.getParent().getParent().getParent())
+                    .sorted(Comparator.reverseOrder())
+                    .forEach(it -> it.toFile().delete());
+        }
+    }
+
+    @Test
+    void registryName() throws IOException {
+        final var dummy = registryName(javac().withProcessors(new SimpleJelAnnotationProcessor()).compile(dummySource()));
+        assertEquals(dummy, registryName(javac().withProcessors(new SimpleJelAnnotationProcessor()).compile(dummySource())));
+
+        // another module with evaluators in the same package must not hide the registry of the first one
+        final var other = registryName(javac()
+                .withProcessors(new SimpleJelAnnotationProcessor())
+                .compile(JavaFileObjects.forSourceLines(
+                        "Other",
+                        "package com.github.rmannibucau.jel.proc;\n" +
+                                "\n" +
+                                "public class Other {\n" +
+                                "  @Dummy.Evaluable(\"return 1\")\n" +
+                                "  public void evalMethod() {}\n" +
+                                "}\n"), dummySource()));
+        assertTrue(other.startsWith("com.github.rmannibucau.jel.proc.SimpleJelRegistry"), other);
+        assertFalse(dummy.equals(other), other);
+
+        assertEquals("com.company.Registry", registryName(javac()
+                .withProcessors(new SimpleJelAnnotationProcessor())
+                .withOptions("-Asimplejel.registry.name=com.company.Registry")
+                .compile(dummySource())));
+    }
+
+    private String registryName(final Compilation compilation) throws IOException {
+        return compilation.generatedFile(CLASS_OUTPUT, "META-INF/services/" + EvaluatorRegistry.class.getName())
+                .orElseThrow()
+                .getCharContent(true)
+                .toString()
+                .trim();
+    }
+
+    private String registrySource(final Compilation compilation) throws IOException {
+        return compilation.generatedFile(SOURCE_OUTPUT, registryName(compilation).replace('.', '/') + ".java")
+                .orElseThrow()
+                .getCharContent(true)
+                .toString();
+    }
+
+    private JavaFileObject dummySource() {
+        return JavaFileObjects.forSourceLines(
+                "Dummy",
+                "package com.github.rmannibucau.jel.proc;\n" +
+                        "\n" +
+                        "import com.github.rmannibucau.jel.api.annotation.MetaJel;\n" +
+                        "\n" +
+                        "public class Dummy {\n" +
+                        "  @Evaluable(\"return 1\")\n" +
+                        "  public void evalMethod() {}\n" +
+                        "\n" +
+                        "  @MetaJel\n" +
+                        "  public @interface Evaluable {\n" +
+                        "    String value();\n" +
+                        "  }\n" +
+                        "}\n");
+    }
+
+    private void validateGeneration(final String marker, final Compilation compilation) throws Throwable {
         assertEquals(SUCCESS, compilation.status(), () ->
                 Stream.of(
                         compilation.notes().stream(),
@@ -95,7 +1392,7 @@ class SimpleJelAnnotationProcessorTest {
                 ).flatMap(identity()).map(Object::toString).distinct().collect(joining("\n")));
 
         final var generatedFiles = compilation.generatedFiles().stream()
-                .filter(it -> it.getKind() == SOURCE)
+                .filter(it -> it.getKind() == SOURCE && it.getName().endsWith("$SimpleJelEvaluator.java"))
                 .collect(toList());
         assertEquals(2, generatedFiles.size());
 
@@ -112,9 +1409,16 @@ class SimpleJelAnnotationProcessorTest {
                 "\n" +
                 "\n" +
                 "public class Dummy$evalMethod$SimpleJelEvaluator implements Function<Object, Object> {\n" +
+                "    public static final Dummy$evalMethod$SimpleJelEvaluator INSTANCE = new Dummy$evalMethod$SimpleJelEvaluator();\n" +
+                "    public static final Object VALUE = 1 + 2;\n" +
+                "\n" +
+                "    public static Object evaluate(final Object context) {\n" +
+                "        return VALUE;\n" +
+                "    }\n" +
+                "\n" +
                 "    @Override\n" +
                 "    public Object apply(final Object context) {\n" +
-                "        return 1 + 2;\n" +
+                "        return evaluate(context);\n" +
                 "    }\n" +
                 "}", contents.get("/SOURCE_OUTPUT/com/github/rmannibucau/jel/proc/Dummy$evalMethod$SimpleJelEvaluator.java"),
                 contents::toString);
@@ -124,21 +1428,58 @@ class SimpleJelAnnotationProcessorTest {
                 "\n" +
                 "\n" +
                 "public class Dummy$SimpleJelEvaluator implements Function<Object, Object> {\n" +
+                "    public static final Dummy$SimpleJelEvaluator INSTANCE = new Dummy$SimpleJelEvaluator();\n" +
+                "    public static final Object VALUE = 1 + 1;\n" +
+                "\n" +
+                "    public static Object evaluate(final Object context) {\n" +
+                "        return VALUE;\n" +
+                "    }\n" +
+                "\n" +
                 "    @Override\n" +
                 "    public Object apply(final Object context) {\n" +
-                "        return 1 + 1;\n" +
+                "        return evaluate(context);\n" +
                 "    }\n" +
                 "}", contents.get("/SOURCE_OUTPUT/com/github/rmannibucau/jel/proc/Dummy$SimpleJelEvaluator.java"),
                 contents::toString);
-        final ClassLoader loader = new ClassLoader() {
+        final var loader = classLoader(compilation);
+        final Function<Object, Object> e1 = Function.class.cast(loader.loadClass("com.github.rmannibucau.jel.proc.Dummy$SimpleJelEvaluator")
+                .getConstructor()
+                .newInstance());
+        assertEquals(2, e1.apply(null));
+        final Function<Object, Object> e2 = Function.class.cast(loader.loadClass("com.github.rmannibucau.jel.proc.Dummy$evalMethod$SimpleJelEvaluator")
+                .getConstructor()
+                .newInstance());
+        assertEquals(3, e2.apply(null));
+
+        final var registryName = registryName(compilation);
+        assertTrue(registryName.matches("com\\.github\\.rmannibucau\\.jel\\.proc\\.SimpleJelRegistry[0-9a-f]{16}"), registryName);
+        final var registry = EvaluatorRegistry.class.cast(loader.loadClass(registryName)
+                .getConstructor()
+                .newInstance());
+        final var classKey = marker + ":com.github.rmannibucau.jel.proc.Dummy";
+        final var methodKey = classKey + "#evalMethod(java.lang.String)";
+        assertEquals(Set.of(classKey, methodKey), Set.copyOf(registry.keys()));
+        assertEquals(2, Function.class.cast(registry.create(classKey)).apply(null));
+        assertEquals(3, Function.class.cast(registry.create(methodKey)).apply(null));
+        assertSame(registry.create(methodKey), registry.create(methodKey));
+        assertEquals(2, registry.constant(classKey));
+        assertEquals(3, registry.constant(methodKey));
+        assertEquals(3, (Object) registry.handle(methodKey).invokeExact((Object) null));
+        assertNull(registry.create("missing"));
+        assertNull(registry.constant("missing"));
+        assertNull(registry.handle("missing"));
+    }
+
+    private ClassLoader classLoader(final Compilation compilation) {
+        return new ClassLoader() {
             @Override
             protected Class<?> loadClass(final String name, final boolean resolve) throws ClassNotFoundException {
                 final Class<?> loadedClass = findLoadedClass(name);
                 if (loadedClass != null) {
                     if (resolve) {
                         resolveClass(loadedClass);
-                        return loadedClass;
                     }
+                    return loadedClass;
                 }
                 synchronized (this) {
                     final var found = compilation.generatedFiles().stream()
@@ -167,14 +1508,6 @@ class SimpleJelAnnotationProcessorTest {
                 return super.loadClass(name, resolve);
             }
         };
-        final Function<Object, Object> e1 = Function.class.cast(loader.loadClass("com.github.rmannibucau.jel.proc.Dummy$SimpleJelEvaluator")
-                .getConstructor()
-                .newInstance());
-        assertEquals(2, e1.apply(null));
-        final Function<Object, Object> e2 = Function.class.cast(loader.loadClass("com.github.rmannibucau.jel.proc.Dummy$evalMethod$SimpleJelEvaluator")
-                .getConstructor()
-                .newInstance());
-        assertEquals(3, e2.apply(null));
     }
 
     @MetaJel
@@ -0,0 +1,25 @@
+package com.github.rmannibucau.jel.runtime;
+
+import java.util.Map;
+
+// one loader per compilation, it is unloaded with the evaluators it defined
+class EvaluatorClassLoader extends ClassLoader {
+    private final Map<String, byte[]> classes;
+
+    EvaluatorClassLoader(final ClassLoader parent, final Map<String, byte[]> classes) {
+        super(parent);
+        this.classes = classes;
+    }
+
+    @Override
+    protected Class<?> findClass(final String name) throws ClassNotFoundException {
+        final byte[] bytecode;
+        synchronized (classes) { // defined once, the bytecode is no more needed after
+            bytecode = classes.remove(name);
+        }
+        if (bytecode == null) {
+            throw new ClassNotFoundException(name);
+        }
+        return defineClass(name, bytecode, 0, bytecode.length);
+    }
+}
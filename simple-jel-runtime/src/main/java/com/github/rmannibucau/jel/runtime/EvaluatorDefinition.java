@@ -0,0 +1,97 @@
+package com.github.rmannibucau.jel.runtime;
+
+import java.util.Objects;
+
+/**
+ * An expression to compile at runtime, it is the equivalent of a marker annotation ({@code @MetaJel}) and its value.
+ */
+public final class EvaluatorDefinition {
+    private final String expression;
+    private final String contextName;
+    private final String contextType;
+    private final String returnType;
+    private final String evaluatorInterface;
+    private final String customMethods;
+    private final int hash;
+
+    public EvaluatorDefinition(final String expression, final String contextName,
+                               final String contextType, final String returnType) {
+        this(expression, contextName, contextType, returnType, "", "");
+    }
+
+    /**
+     * @param expression         the expression (body of the evaluator method).
+     * @param contextName        the name of the context variable.
+     * @param contextType        the fully qualified type of the context.
+     * @param returnType         the fully qualified return type.
+     * @param evaluatorInterface the implemented functional interface, deduced from the return type if blank.
+     * @param customMethods      additional methods of the evaluator.
+     */
+    public EvaluatorDefinition(final String expression, final String contextName,
+                               final String contextType, final String returnType,
+                               final String evaluatorInterface, final String customMethods) {
+        this.expression = expression;
+        this.contextName = contextName;
+        this.contextType = contextType;
+        this.returnType = returnType;
+        this.evaluatorInterface = evaluatorInterface;
+        this.customMethods = customMethods;
+        this.hash = Objects.hash(expression, contextName, contextType, returnType, evaluatorInterface, customMethods);
+    }
+
+    public String getExpression() {
+        return expression;
+    }
+
+    public String getContextName() {
+        return contextName;
+    }
+
+    public String getContextType() {
+        return contextType;
+    }
+
+    public String getReturnType() {
+        return returnType;
+    }
+
+    public String getEvaluatorInterface() {
+        return evaluatorInterface;
+    }
+
+    public String getCustomMethods() {
+        return customMethods;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final EvaluatorDefinition that = EvaluatorDefinition.class.cast(o);
+        return hash == that.hash &&
+                expression.equals(that.expression) &&
+                contextName.equals(that.contextName) &&
+                contextType.equals(that.contextType) &&
+                returnType.equals(that.returnType) &&
+                evaluatorInterface.equals(that.evaluatorInterface) &&
+                customMethods.equals(that.customMethods);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return "EvaluatorDefinition{" +
+                "expression='" + expression + '\'' +
+                ", contextType='" + contextType + '\'' +
+                ", returnType='" + returnType + '\'' +
+                '}';
+    }
+}
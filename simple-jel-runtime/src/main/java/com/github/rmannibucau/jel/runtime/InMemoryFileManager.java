@@ -0,0 +1,53 @@
+package com.github.rmannibucau.jel.runtime;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.util.stream.Collectors.toMap;
+
+// keeps the bytecode in memory instead of writing class files
+class InMemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+    private final Map<String, ByteArrayOutputStream> classes = new HashMap<>();
+
+    InMemoryFileManager(final StandardJavaFileManager delegate) {
+        super(delegate);
+    }
+
+    @Override
+    public JavaFileObject getJavaFileForOutput(final Location location, final String className,
+                                               final JavaFileObject.Kind kind, final FileObject sibling) {
+        return new SimpleJavaFileObject(
+                URI.create("mem:///" + className.replace('.', '/') + kind.extension), kind) {
+            @Override
+            public OutputStream openOutputStream() {
+                return classes.computeIfAbsent(className, k -> new ByteArrayOutputStream());
+            }
+        };
+    }
+
+    Map<String, byte[]> getClasses() {
+        return classes.entrySet().stream().collect(toMap(Map.Entry::getKey, e -> e.getValue().toByteArray()));
+    }
+
+    static class Source extends SimpleJavaFileObject {
+        private final String content;
+
+        Source(final String className, final String content) {
+            super(URI.create("string:///" + className.replace('.', '/') + Kind.SOURCE.extension), Kind.SOURCE);
+            this.content = content;
+        }
+
+        @Override
+        public CharSequence getCharContent(final boolean ignoreEncodingErrors) {
+            return content;
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.github.rmannibucau.jel.runtime;
+
+import com.github.rmannibucau.jel.proc.EvaluatorTemplate;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaFileObject;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.net.URISyntaxException;
+import java.net.URLClassLoader;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Compiles expressions only known at runtime (configuration for example) with the same template
+ * than the annotation processor, classes are compiled in memory and defined in a dedicated child classloader.
+ * Evaluators are kept in a bounded LRU cache, an evicted evaluator does not reference its classloader anymore
+ * so it is unloaded once all the evaluators of the same compilation are evicted.
+ *
+ * Context and return types must be visible from the parent classloader and from the compilation classpath
+ * ({@code java.class.path} and the URL classloaders of the parent hierarchy).
+ */
+public class RuntimeCompiler {
+    private static final String PACKAGE = RuntimeCompiler.class.getPackageName() + ".generated";
+
+    private final AtomicLong counter = new AtomicLong();
+    private final ClassLoader parent;
+    private final String classpath;
+    private final Map<EvaluatorDefinition, Object> cache;
+
+    /**
+     * @param parent        the classloader used to resolve context and return types.
+     * @param maxEvaluators the maximum number of cached evaluators.
+     */
+    public RuntimeCompiler(final ClassLoader parent, final int maxEvaluators) {
+        this.parent = parent;
+        this.classpath = classpath(parent);
+        this.cache = new LinkedHashMap<>(16, .75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<EvaluatorDefinition, Object> eldest) {
+                return size() > maxEvaluators;
+            }
+        };
+    }
+
+    /**
+     * @param definition the expression to compile.
+     * @param <T>        the evaluator type (the functional interface).
+     * @return the evaluator, from the cache if the same definition was already compiled.
+     */
+    public <T> T compile(final EvaluatorDefinition definition) {
+        return (T) compile(List.of(definition)).get(definition);
+    }
+
+    /**
+     * Compiles all the definitions not yet in the cache in a single compiler invocation.
+     *
+     * @param definitions the expressions to compile.
+     * @return the evaluator of each definition.
+     */
+    public Map<EvaluatorDefinition, Object> compile(final Collection<EvaluatorDefinition> definitions) {
+        final var evaluators = new HashMap<EvaluatorDefinition, Object>(definitions.size());
+        final var missing = new LinkedHashSet<EvaluatorDefinition>();
+        synchronized (cache) {
+            for (final EvaluatorDefinition definition : definitions) {
+                final var evaluator = cache.get(definition);
+                if (evaluator != null) {
+                    evaluators.put(definition, evaluator);
+                } else {
+                    missing.add(definition);
+                }
+            }
+        }
+        if (missing.isEmpty()) {
+            return evaluators;
+        }
+
+        // compiled without holding the lock, if two threads compile the same definition the first cached one wins
+        final var compiled = doCompile(missing);
+        synchronized (cache) {
+            compiled.forEach((definition, evaluator) -> {
+                final var existing = cache.putIfAbsent(definition, evaluator);
+                evaluators.put(definition, existing != null ? existing : evaluator);
+            });
+        }
+        return evaluators;
+    }
+
+    private Map<EvaluatorDefinition, Object> doCompile(final Collection<EvaluatorDefinition> definitions) {
+        final var compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new IllegalStateException("No java compiler available, ensure to run on a JDK");
+        }
+
+        final var names = new LinkedHashMap<String, EvaluatorDefinition>(definitions.size());
+        final var sources = new ArrayList<JavaFileObject>(definitions.size());
+        for (final EvaluatorDefinition definition : definitions) {
+            final var name = PACKAGE + ".Evaluator" + counter.incrementAndGet();
+            names.put(name, definition);
+            sources.add(new InMemoryFileManager.Source(name, template(definition).generate(name, definition.getExpression())));
+        }
+
+        final var diagnostics = new DiagnosticCollector<JavaFileObject>();
+        final Map<String, byte[]> classes;
+        try (final var fileManager = new InMemoryFileManager(compiler.getStandardFileManager(diagnostics, null, UTF_8))) {
+            final var options = List.of("-classpath", classpath, "-proc:none");
+            if (!compiler.getTask(null, fileManager, diagnostics, options, null, sources).call()) {
+                throw new IllegalStateException("Can't compile " + definitions + ":\n" + diagnostics.getDiagnostics().stream()
+                        .filter(it -> it.getKind() == Diagnostic.Kind.ERROR)
+                        .map(it -> it.getMessage(null))
+                        .collect(joining("\n")));
+            }
+            classes = fileManager.getClasses();
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        final var loader = new EvaluatorClassLoader(parent, classes);
+        final var evaluators = new HashMap<EvaluatorDefinition, Object>(names.size());
+        for (final Map.Entry<String, EvaluatorDefinition> evaluator : names.entrySet()) {
+            try {
+                evaluators.put(evaluator.getValue(), loader.loadClass(evaluator.getKey()).getConstructor().newInstance());
+            } catch (final ReflectiveOperationException e) {
+                throw new IllegalStateException("Can't instantiate " + evaluator.getValue(), e);
+            }
+        }
+        return evaluators;
+    }
+
+    // same rules than the annotation processor but resolved with reflection
+    private EvaluatorTemplate template(final EvaluatorDefinition definition) {
+        final var contextSimpleType = EvaluatorTemplate.simpleName(definition.getContextType());
+        final var returnSimpleType = EvaluatorTemplate.simpleName(definition.getReturnType());
+        final var name = !definition.getEvaluatorInterface().isBlank() ?
+                definition.getEvaluatorInterface() : EvaluatorTemplate.defaultEvaluatorInterface(returnSimpleType);
+        final Class<?> type;
+        try {
+            type = parent.loadClass(name);
+        } catch (final ClassNotFoundException e) {
+            throw new IllegalArgumentException("Evaluator interface '" + name + "' not found");
+        }
+        final var methods = Stream.of(type.getMethods())
+                .filter(it -> Modifier.isAbstract(it.getModifiers()))
+                .filter(it -> !isObjectMethod(it))
+                .collect(toList());
+        if (!type.isInterface() || methods.size() != 1 || methods.get(0).getParameterCount() != 1) {
+            throw new IllegalArgumentException("'" + name + "' is not a functional interface taking a single parameter");
+        }
+        final var method = methods.get(0);
+        final var parameterType = method.getGenericParameterTypes()[0];
+        final var methodReturnType = method.getGenericReturnType();
+        final var boxedReturnType = EvaluatorTemplate.boxed(returnSimpleType);
+        final var generics = type.getTypeParameters().length == 0 ? "" : Stream.of(type.getTypeParameters())
+                .map(it -> {
+                    if (isTypeVariable(parameterType, it.getName())) {
+                        return contextSimpleType;
+                    }
+                    if (isTypeVariable(methodReturnType, it.getName())) {
+                        return boxedReturnType;
+                    }
+                    return "Object";
+                })
+                .collect(joining(", ", "<", ">"));
+        return new EvaluatorTemplate(
+                type.getName(), type.getSimpleName() + generics, method.getName(),
+                methodReturnType instanceof TypeVariable ? boxedReturnType : methodReturnType.getTypeName(),
+                parameterType instanceof TypeVariable ? contextSimpleType : parameterType.getTypeName(),
+                definition.getContextName(), definition.getContextType(), definition.getReturnType(),
+                definition.getCustomMethods(), List.of(), List.of());
+    }
+
+    private boolean isTypeVariable(final Type type, final String name) {
+        return type instanceof TypeVariable && TypeVariable.class.cast(type).getName().equals(name);
+    }
+
+    private boolean isObjectMethod(final Method method) {
+        final var name = method.getName();
+        final var parameters = method.getParameterCount();
+        return ("equals".equals(name) && parameters == 1) ||
+                (("hashCode".equals(name) || "toString".equals(name)) && parameters == 0);
+    }
+
+    private static String classpath(final ClassLoader loader) {
+        final var entries = new LinkedHashSet<String>();
+        ClassLoader current = loader;
+        while (current != null) {
+            if (URLClassLoader.class.isInstance(current)) {
+                Stream.of(URLClassLoader.class.cast(current).getURLs())
+                        .filter(it -> "file".equals(it.getProtocol()))
+                        .forEach(it -> {
+                            try {
+                                entries.add(Paths.get(it.toURI()).toString());
+                            } catch (final URISyntaxException e) {
+                                // ignore this entry
+                            }
+                        });
+            }
+            current = current.getParent();
+        }
+        entries.addAll(List.of(System.getProperty("java.class.path", "").split(File.pathSeparator)));
+        return String.join(File.pathSeparator, entries);
+    }
+}
@@ -0,0 +1,63 @@
+package com.github.rmannibucau.jel.runtime;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RuntimeCompilerTest {
+    private final RuntimeCompiler compiler = new RuntimeCompiler(Thread.currentThread().getContextClassLoader(), 2);
+
+    @Test
+    void compile() {
+        final var definition = new EvaluatorDefinition(
+                "return order.getAmount() > 100 && \"FR\".equals(order.getCountry());", "order",
+                Order.class.getName(), "boolean");
+        final Predicate<Order> evaluator = compiler.compile(definition);
+        assertTrue(evaluator.test(new Order(150, "FR")));
+        assertFalse(evaluator.test(new Order(50, "FR")));
+        assertFalse(evaluator.test(new Order(150, "US")));
+        assertSame(evaluator, compiler.compile(new EvaluatorDefinition(
+                definition.getExpression(), "order", Order.class.getName(), "boolean")));
+    }
+
+    @Test
+    void batch() {
+        final var length = new EvaluatorDefinition("return context.length()", "context", "java.lang.String", "int");
+        final var empty = new EvaluatorDefinition(
+                "return isEmpty(context)", "context", "java.lang.String", "boolean", "",
+                "private boolean isEmpty(final String value) { return value.isEmpty(); }");
+        final var evaluators = compiler.compile(List.of(length, empty));
+        assertEquals(5, ToIntFunction.class.cast(evaluators.get(length)).applyAsInt("hello"));
+        assertTrue(Predicate.class.cast(evaluators.get(empty)).test(""));
+        assertSame(
+                evaluators.get(length).getClass().getClassLoader(),
+                evaluators.get(empty).getClass().getClassLoader());
+    }
+
+    @Test
+    void eviction() {
+        final var first = new EvaluatorDefinition("return context.isEmpty()", "context", "java.lang.String", "boolean");
+        final Object evaluator = compiler.compile(first);
+        compiler.compile(new EvaluatorDefinition("return context.isBlank()", "context", "java.lang.String", "boolean"));
+        assertSame(evaluator, compiler.compile(first));
+        compiler.compile(new EvaluatorDefinition("return context.isBlank()", "context", "java.lang.String", "boolean"));
+        compiler.compile(new EvaluatorDefinition("return !context.isBlank()", "context", "java.lang.String", "boolean"));
+        assertNotSame(evaluator, compiler.compile(first));
+    }
+
+    @Test
+    void compilationError() {
+        final var error = assertThrows(IllegalStateException.class, () -> compiler.compile(
+                new EvaluatorDefinition("return context.missing()", "context", "java.lang.String", "boolean")));
+        assertTrue(error.getMessage().contains("missing()"), error.getMessage());
+    }
+}